@@ -0,0 +1,91 @@
+package cache;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single accesses to one cache, across associativities, block sizes and data
+ * modes. Addresses are drawn from a range four times the cache's capacity, so
+ * reads and writes see a mix of hits and misses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CacheBenchmark {
+	private static final int ROWS = 1024;			// # of rows in the cache
+	private static final int ADDRESSES = 1 << 16;	// # of addresses cycled through, a power of 2
+	
+	@Param({"1", "4", "16"})
+	private int ways;				// # of sets in the cache
+	
+	@Param({"1", "4", "16"})
+	private int blocksize;			// Number of data locations within block
+	
+	@Param({"true", "false"})
+	private boolean storeData;		// False for a tag-only cache
+	
+	private Cache cache;
+	private int[] addresses;		// Addresses to access, in order
+	private int[] block;			// Block data handed to evictRow
+	private int next;				// Next address to access
+	
+	
+	@Setup
+	public void setup() {
+		EventLog.setLevel(LogLevel.OFF);
+		this.cache = new Cache(ROWS, this.ways, 1, this.blocksize, null, this.storeData);
+		
+		Random random = new Random(1541);
+		this.addresses = new int[ADDRESSES];
+		for(int i = 0; i < ADDRESSES; i++)
+			this.addresses[i] = random.nextInt(ROWS * this.blocksize * 4);
+		this.block = new int[this.blocksize];
+		
+		// Start from a full cache
+		for(int i = 0; i < ROWS * 4; i++)
+			this.cache.evictRow(nextAddress(), this.block);
+	}
+	
+	
+	@Benchmark
+	public ValidData readDataFromCache() {
+		return this.cache.readDataFromCache(nextAddress());
+	}
+	
+	@Benchmark
+	public CacheRow writeBackData() {
+		return this.cache.writeBackData(nextAddress(), 7);
+	}
+	
+	@Benchmark
+	public void writeThroughData() {
+		this.cache.writeThroughData(nextAddress(), 7);
+	}
+	
+	@Benchmark
+	public CacheRow evictRow() {
+		return this.cache.evictRow(nextAddress(), this.block);
+	}
+	
+	
+	private int nextAddress() {
+		int address = this.addresses[this.next];
+		this.next = (this.next + 1) & (ADDRESSES - 1);
+		return address;
+	}
+}
@@ -0,0 +1,76 @@
+package cache;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole reads and writes through a two level hierarchy, in both write
+ * policies and data modes. Most addresses fall in a range the second cache
+ * holds, the rest go out to memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryHierarchyBenchmark {
+	private static final int BLOCKSIZE = 4;			// Number of data locations within block
+	private static final int ADDRESSES = 1 << 16;	// # of addresses cycled through, a power of 2
+	
+	@Param({"0", "1"})
+	private int policy;				// 0 for write-back and write-allocate, 1 for write-through and non-write-allocate
+	
+	@Param({"true", "false"})
+	private boolean storeData;		// False for tag-only caches
+	
+	private MemoryHierarchy mh;
+	private int[] addresses;		// Addresses to access, in order
+	private int next;				// Next address to access
+	
+	
+	@Setup
+	public void setup() {
+		EventLog.setLevel(LogLevel.OFF);
+		this.mh = new MemoryHierarchy(2, this.policy, BLOCKSIZE, 4, new int[]{64, 512}, new int[]{4, 8}, new int[]{1, 10}, null, null, this.storeData);
+		
+		Random random = new Random(1541);
+		this.addresses = new int[ADDRESSES];
+		for(int i = 0; i < ADDRESSES; i++) {
+			if(random.nextInt(10) < 8)
+				this.addresses[i] = random.nextInt(512 * BLOCKSIZE);
+			else
+				this.addresses[i] = random.nextInt(1 << 20);
+		}
+	}
+	
+	
+	@Benchmark
+	public void readData() {
+		this.mh.readData(nextAddress());
+	}
+	
+	@Benchmark
+	public void writeData() {
+		this.mh.writeData(nextAddress(), 7);
+	}
+	
+	
+	private int nextAddress() {
+		int address = this.addresses[this.next];
+		this.next = (this.next + 1) & (ADDRESSES - 1);
+		return address;
+	}
+}
@@ -0,0 +1,141 @@
+package cache;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+public class Throughput {
+	private static final String HIERARCHY = "0 4 8 256:4:1 4096:8:10";	// Hierarchy every workload runs on
+	private static final int BATCH = 1 << 16;	// # of accesses generated ahead of the simulation at once
+	private static final int WARMUP = 1 << 18;	// # of accesses run before each workload is measured
+	
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Throughput Harness
+	 *
+	 * 	Runs MemoryHierarchy through each synthetic workload and
+	 * 	reports how fast the simulator goes: simulated accesses per
+	 * 	second, peak heap, and time spent in GC. Only the simulation is
+	 * 	timed: the hierarchy is built before the clock starts, and the
+	 * 	clock only runs while a batch of accesses is being simulated,
+	 * 	not while the next batch is made. Each workload is warmed up
+	 * 	first so the JIT has settled.
+	 *
+	 * 	Usage: java cache.Throughput <accesses> <result file> [workload ...]
+	 *
+	 * 	Every workload in WorkloadType runs unless some are named.
+	 * 	The result file is CSV with one row per workload, so runs
+	 * 	of different releases can be compared. -Dcache.tagOnly and
+	 * 	-Dcache.replacement work as in Main.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+	
+	public static final String HEADER = "simulator,workload,accesses,seconds,accessesPerSecond,missRate,peakHeapBytes,gcCount,gcMillis";
+	
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.out.println("Usage: java cache.Throughput <accesses> <result file> [workload ...]");
+			return;
+		}
+		
+		long accesses = Long.parseLong(args[0]);
+		List<WorkloadType> workloads = new ArrayList<>();
+		for(int i = 2; i < args.length; i++)
+			workloads.add(WorkloadType.valueOf(args[i].toUpperCase()));
+		if(workloads.isEmpty())
+			workloads.addAll(Arrays.asList(WorkloadType.values()));
+		
+		HierarchyConfig config = new HierarchyConfig(HIERARCHY);
+		boolean storeData = !Boolean.getBoolean("cache.tagOnly");
+		ReplacementType replacement = ReplacementType.valueOf(System.getProperty("cache.replacement", "LRU"));
+		EventLog.setLevel(LogLevel.OFF);
+		
+		StringBuilder csv = new StringBuilder(HEADER).append("\n");
+		System.out.println(String.format("%-14s %12s %10s %16s %10s %12s %8s", "workload", "accesses", "seconds", "accesses/sec", "miss rate", "peak heap MB", "gc ms"));
+		for(WorkloadType type : workloads) {
+			run(config.build(replacement, storeData), type.create(config.getBlocksize(), 1541), Math.min(accesses, WARMUP));
+			
+			System.gc();
+			for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+				pool.resetPeakUsage();
+			long gcCount = gcCount();
+			long gcMillis = gcMillis();
+			
+			MemoryHierarchy mh = config.build(replacement, storeData);
+			long elapsed = run(mh, type.create(config.getBlocksize(), 1541), accesses);
+			
+			double seconds = elapsed / 1e9;
+			double missRate = mh.getCaches()[0].getMissRate();
+			long peakHeap = peakHeap();
+			gcCount = gcCount() - gcCount;
+			gcMillis = gcMillis() - gcMillis;
+			System.out.println(String.format("%-14s %12d %10.3f %16.0f %10.4f %12.1f %8d", type, accesses, seconds, accesses / seconds, missRate, peakHeap / 1e6, gcMillis));
+			csv.append(String.format(Locale.ROOT, "sequential,%s,%d,%.6f,%.1f,%.6f,%d,%d,%d\n", type, accesses, seconds, accesses / seconds, missRate, peakHeap, gcCount, gcMillis));
+		}
+		
+		try(Writer out = new FileWriter(args[1])) {
+			out.write(csv.toString());
+		}
+	}
+	
+	
+	/**
+	 * Run a hierarchy through a workload.
+	 * 
+	 * @return Time spent simulating in ns, leaving out making the accesses
+	 */
+	public static long run(MemoryHierarchy mh, Workload workload, long accesses) {
+		long elapsed = 0;
+		int[] addresses = new int[BATCH];
+		boolean[] writes = new boolean[BATCH];
+		
+		for(long done = 0; done < accesses; ) {
+			int n = (int) Math.min(BATCH, accesses - done);
+			for(int i = 0; i < n; i++) {
+				workload.next();
+				addresses[i] = workload.getAddress();
+				writes[i] = workload.isWrite();
+			}
+			long start = System.nanoTime();
+			for(int i = 0; i < n; i++) {
+				if(writes[i])
+					mh.writeData(addresses[i], (int) (done + i));
+				else
+					mh.readData(addresses[i]);
+			}
+			elapsed += System.nanoTime() - start;
+			done += n;
+		}
+		return elapsed;
+	}
+	
+	
+	/**
+	 * Get the sum of the peak usage of every heap pool since they were reset
+	 */
+	private static long peakHeap() {
+		long peak = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if(pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+	
+	/**
+	 * Get # of collections so far, across every collector
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(gc.getCollectionCount(), 0);
+		return count;
+	}
+	
+	/**
+	 * Get time spent collecting so far in ms, across every collector
+	 */
+	private static long gcMillis() {
+		long millis = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += Math.max(gc.getCollectionTime(), 0);
+		return millis;
+	}
+}
@@ -0,0 +1,18 @@
+package cache;
+
+/**
+ * The synthetic workloads Throughput drives a hierarchy with.
+ */
+public enum WorkloadType {
+	SEQUENTIAL, STRIDED, UNIFORM, ZIPF, POINTER_CHASE;
+
+	/**
+	 * Start a workload of this type.
+	 * 
+	 * @param blocksize -> Number of data locations within block
+	 * @param seed      -> Seed of the workload's random choices
+	 */
+	public Workload create(int blocksize, long seed) {
+		return new Workload(this, blocksize, seed);
+	}
+}
@@ -0,0 +1,94 @@
+package cache;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes events to a file from a background thread. The simulation only pays
+ * for putting the text on a bounded queue, and blocks only when the writer
+ * falls a full queue behind. Once the writer fails, later events are dropped
+ * and the error is reported on close.
+ */
+public class AsyncFileSink implements EventSink {
+	private static final String END = new String("END"); // Marks the end of the queue, compared by identity
+	private static final int QUEUE_SIZE = 1 << 16; // # of events that can wait for the writer
+
+	private BlockingQueue<String> queue; // Events waiting to be written
+	private Writer out; // Buffered file writer, only used by the writer thread
+	private Thread writer; // Background thread draining the queue
+	private volatile IOException failure; // First write error, reported on close
+
+	/**
+	 * Open the file and start the writer thread.
+	 * 
+	 * @param filename
+	 * @throws IOException if the file cannot be opened
+	 */
+	public AsyncFileSink(String filename) throws IOException {
+		this.queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+		this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8),
+				1 << 16);
+		this.writer = new Thread(this::drain, "cache-event-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	public void write(String text) {
+		if(this.failure != null)
+			return;
+		try {
+			// A writer that stopped on an error never empties the queue again
+			while(!this.queue.offer(text, 100, TimeUnit.MILLISECONDS))
+				if(!this.writer.isAlive())
+					return;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void close() {
+		if(this.writer.isAlive())
+			write(END);
+		try {
+			this.writer.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(this.failure != null)
+			this.failure.printStackTrace();
+	}
+
+	/**
+	 * Writer thread, moves events from the queue to the file in batches.
+	 */
+	private void drain() {
+		ArrayList<String> batch = new ArrayList<>();
+		try {
+			while(true) {
+				batch.add(this.queue.take());
+				this.queue.drainTo(batch);
+				for(String text : batch) {
+					if(text == END)
+						return;
+					this.out.write(text);
+				}
+				batch.clear();
+			}
+		} catch(IOException e) {
+			this.failure = e;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				this.out.close();
+			} catch(IOException e) {
+				if(this.failure == null)
+					this.failure = e;
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package cache;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.Set;
 
 public class Cache {
 	private int size;			// Total Size of Cache
@@ -10,9 +11,20 @@ public class Cache {
 	private int currMisses;		// Current Number of Misses
 	private double accesses;	// Number of accesses
 	private double misses;		// Number of misses
-	private CacheRow[] rows;	// Contains the content of the Cache
+	private CacheMetrics metrics;	// Counts of reads, writes, hits, misses and evictions
+	private CacheStorage storage;	// Contains the content of the Cache
+	private ReplacementPolicy replacement;	// Picks the row to evict
+	private MissClassifier classifier;	// Sorts misses into compulsory, capacity and conflict, null when off
+	private VictimCache victimCache;	// Keeps rows this cache evicts, null when off
+	private int[] swapBlock;	// Block being swapped in from the victim cache, null when tag-only
+	private CacheRow invalidated;	// Reused copy of the row last invalidated
 	
 	private int indexSize;		// # of index locations in one set.
+	private AddressDecoder decoder;	// Splits addresses into tag, index, and block
+	
+	private boolean storeData;	// False for tag-only caches, which keep no block data
+	private ValidData tagOnlyResult;	// Reused read result of a tag-only cache
+	private CacheRow tagOnlyEvicted;	// Reused evicted row of a tag-only cache
 
 	/** - - - - - - - - - - - - - - - - - - - - - - 
 	 * 		Cache Format
@@ -35,6 +47,49 @@ public class Cache {
 	 * @param latency
 	 */
 	public Cache(int size, int numSets, int latency, int blocksize) {
+		this(size, numSets, latency, blocksize, null, true);
+	}
+	
+	
+	/**
+	 * Initialize Blank Cache with a custom index function
+	 * 
+	 * @param size
+	 * @param numSets
+	 * @param latency
+	 * @param blocksize
+	 * @param indexFunction		->		Maps addresses to an index, null for modulo indexing
+	 * @param storeData			->		False for a tag-only cache that tracks hits, misses, and dirty
+	 * 									bits without block data. Its read results and evicted rows are
+	 * 									reused objects, only valid until the next access.
+	 */
+	public Cache(int size, int numSets, int latency, int blocksize, IndexFunction indexFunction, boolean storeData) {
+		this(size, numSets, latency, blocksize, indexFunction, null, storeData);
+	}
+	
+	
+	/**
+	 * Initialize Blank Cache with a custom index function and replacement policy
+	 * 
+	 * @param replacement		->		Picks the row to evict, null for LRU. Must be built for this
+	 * 									cache's index size and number of sets.
+	 */
+	public Cache(int size, int numSets, int latency, int blocksize, IndexFunction indexFunction, ReplacementPolicy replacement, boolean storeData) {
+		this(size, numSets, latency, blocksize, indexFunction, replacement, storeData, true);
+	}
+	
+	
+	/**
+	 * Initialize a tag-only Cache that keeps the shape and counters of a cache
+	 * but no rows or replacement state, for a ShardedCache whose rows live in
+	 * its shards. Anything that reads or changes rows must be overridden.
+	 */
+	Cache(int size, int numSets, int latency, int blocksize, IndexFunction indexFunction) {
+		this(size, numSets, latency, blocksize, indexFunction, null, false, false);
+	}
+	
+	
+	private Cache(int size, int numSets, int latency, int blocksize, IndexFunction indexFunction, ReplacementPolicy replacement, boolean storeData, boolean allocate) {
 		this.size = size;
 		this.numSets = numSets;
 		this.latency = latency;
@@ -42,21 +97,25 @@ public class Cache {
 		this.currMisses = 0;
 		this.accesses = 0;
 		this.misses = 0;
-		this.rows = new CacheRow[this.size];
+		this.metrics = new CacheMetrics();
 		
-		// Creating each row of the cache
+		// Record the number of index addresses needed
 		int setSize = size/numSets;
-		int set = 0;
+		this.indexSize = setSize;
 		
-		int i;
-		for(i = 0; i < this.size;  i++) {
-			this.rows[i] = new CacheRow(set, i % setSize, this.blocksize);
-			if(i % setSize == setSize - 1)
-				set++;
-		}
+		// Creating the rows of the cache
+		if(allocate)
+			this.storage = new CacheStorage(this.size, this.indexSize, this.blocksize, storeData);
+		this.decoder = new AddressDecoder(this.indexSize, this.blocksize, indexFunction);
+		if(replacement == null && allocate)
+			replacement = new LRUPolicy(this.indexSize, this.numSets);
+		this.replacement = replacement;
 		
-		// Record the number of index addresses needed
-		this.indexSize = setSize;
+		this.storeData = storeData;
+		this.tagOnlyResult = new ValidData(false, null);
+		this.tagOnlyEvicted = new CacheRow(0, 0, 0);
+		this.swapBlock = storeData ? new int[blocksize] : null;
+		this.invalidated = new CacheRow(0, 0, storeData ? blocksize : 0);
 	}
 	
 	
@@ -68,49 +127,44 @@ public class Cache {
 	 * @return 
 	 */
 	public CacheRow writeBackData(int address, int data) {
-		int indexMask = (int) Math.pow(2, log2(this.indexSize)) - 1;
-		int blockMask = (int) Math.pow(2, log2(this.blocksize)) - 1;
-		int tag = (address >> (int) (log2(this.blocksize))) >> (int) (log2(this.indexSize));
-		int index = ((address >> (int) (log2(this.blocksize))) & indexMask);
-		int block = (address & blockMask);
+		int tag = this.decoder.getTag(address);
+		int block = this.decoder.getBlock(address);
 		this.accesses++;
 		
-		// Needed for LRU updates
-		CacheRow[] set = new CacheRow[this.numSets];
-		int oldLRU = -1;
-		
 		boolean hit = false;
 		for(int i = 0; i < this.numSets; i++) {
-			CacheRow currRow = this.rows[index + i*this.indexSize];
-			set[i] = currRow;
-			if(currRow.getValid() && currRow.getTag() == tag) {
+			int index = this.decoder.getIndex(address, i);
+			int row = this.storage.getRow(index, i);
+			if(this.storage.getValid(row) && this.storage.getTag(row) == tag) {
 				hit = true;
-				System.out.println("WRITE HIT!");
-				oldLRU = currRow.getLRU();
-				currRow.setLRU(0);
-				currRow.setDirty(true);
-				currRow.setData(data, block);
-				set[i] = null;
+				EventLog.log(LogLevel.ACCESS, "WRITE HIT!");
+				this.replacement.touch(index, i);
+				this.storage.setDirty(row, true);
+				this.storage.setData(row, block, data);
 			}
 		}
+		this.metrics.countWrite(hit);
+		classify(address, hit);
 
-		// Update all LRUs due to write hit
-		if(hit) {
-			for(CacheRow s: set) {
-				if(s != null && s.getLRU() < oldLRU)
-					s.setLRU(s.getLRU() + 1);
-			}
-		}
 		// Invalid location or Tag was not found
-		else {
-			this.currMisses++;
-			int[] dataArray = new int[this.blocksize];
-			for(int i = 0; i < this.blocksize;i++) {
-				dataArray[i] = data;
+		if(!hit) {
+			int victim = selectVictim(address);
+			CacheRow evictedRow = evictedView(victim);
+			replaceRow(address, victim);
+			this.storage.fillBlockData(victim, data);
+			// The rest of a block found in the victim cache comes back with it
+			int entry = this.victimCache == null ? -1 : this.victimCache.lookUp(address >> this.decoder.getBlockBits());
+			if(entry >= 0) {
+				EventLog.log(LogLevel.ACCESS, "VICTIM CACHE HIT!");
+				this.victimCache.getBlockData(entry, this.swapBlock);
+				this.storage.setBlockData(victim, this.swapBlock);
+				this.storage.setData(victim, block, data);
+				this.storage.setDirty(victim, this.victimCache.getDirty(entry));
+				this.victimCache.remove(entry);
 			}
-			CacheRow evictedRow = evictRow(address, dataArray);
 			this.misses++;
-			return evictedRow;
+			this.metrics.countEviction(evictedRow.getValid(), evictedRow.getDirty());
+			return retire(evictedRow);
 		}
 		
 		return null;
@@ -125,42 +179,29 @@ public class Cache {
 	 * @return 
 	 */
 	public void writeThroughData(int address, int data) {
-		int indexMask = (int) Math.pow(2, log2(this.indexSize)) - 1;
-		int blockMask = (int) Math.pow(2, log2(this.blocksize)) - 1;
-		int tag = (address >> (int) (log2(this.blocksize))) >> (int) (log2(this.indexSize));
-		int index = ((address >> (int) (log2(this.blocksize))) & indexMask);
-		int block = (address & blockMask);
+		int tag = this.decoder.getTag(address);
+		int block = this.decoder.getBlock(address);
 		this.accesses++;
 		
-		// Needed for LRU updates
-		CacheRow[] set = new CacheRow[this.numSets];
-		int oldLRU = -1;
-		
 		boolean hit = false;
 		for(int i = 0; i < this.numSets; i++) {
-			CacheRow currRow = this.rows[index + i*this.indexSize];
-			set[i] = currRow;
-			if(currRow.getValid() && currRow.getTag() == tag) {
+			int index = this.decoder.getIndex(address, i);
+			int row = this.storage.getRow(index, i);
+			if(this.storage.getValid(row) && this.storage.getTag(row) == tag) {
 				hit = true;
-				System.out.println("WRITE HIT!");
-				oldLRU = currRow.getLRU();
-				currRow.setLRU(0);
-				currRow.setDirty(true);
-				currRow.setData(data, block);
-				set[i] = null;
-			}
-		}
-		
-		// Update all LRUs due to write hit
-		if(hit) {
-			for(CacheRow s: set) {
-				if(s != null && s.getLRU() < oldLRU)
-					s.setLRU(s.getLRU() + 1);
+				EventLog.log(LogLevel.ACCESS, "WRITE HIT!");
+				this.replacement.touch(index, i);
+				this.storage.setDirty(row, true);
+				this.storage.setData(row, block, data);
 			}
 		}
+		this.metrics.countWrite(hit);
 		
 		// Invalid location or Tag was not found
-		// Do Nothing
+		// Nothing is allocated, but a copy in the victim cache is kept up to date
+		int entry = hit || this.victimCache == null ? -1 : this.victimCache.find(address >> this.decoder.getBlockBits());
+		if(entry >= 0)
+			this.victimCache.write(entry, block, data);
 	}
 
 	
@@ -171,77 +212,395 @@ public class Cache {
 	 * @return A object with a boolean of hit/miss, and the data.
 	 */
 	public ValidData readDataFromCache(int address) {
-		int indexMask = (int) Math.pow(2, log2(this.indexSize)) - 1;
-		int blockMask = (int) Math.pow(2, log2(this.blocksize)) - 1;
-		int tag = (address >> (int) (log2(this.blocksize))) >> (int) (log2(this.indexSize));
-		int index = ((address >> (int) (log2(this.blocksize))) & indexMask);
-		int block = (address & blockMask);
+		int tag = this.decoder.getTag(address);
 		this.accesses++;
 		
-		//System.out.println(String.format("blockMask: %d, indexMask: %d", blockMask, indexMask));
-		//System.out.println(String.format("blocksize: %d, indexsize: %d", (int) (log2(this.blocksize)), (int) (log2(this.indexSize))));
-		//System.out.println(String.format("Tag: %d, Index: %d, block: %d", tag, index, block));
-		
 		// Search through sets to see if Tag and Valid bit match.
-		ValidData target = new ValidData(false, new int[this.blocksize]);
+		ValidData target = this.tagOnlyResult;
+		if(this.storeData)
+			target = new ValidData(false, new int[this.blocksize]);
+		target.setValid(false);
 		for(int i = 0; i < this.numSets; i++) {
-			CacheRow currRow = this.rows[index + i*this.indexSize];
-			if(currRow.getValid() && currRow.getTag() == tag) {
-				target.setData(this.rows[index + i*this.indexSize].getBlockData());
+			int row = this.storage.getRow(this.decoder.getIndex(address, i), i);
+			if(this.storage.getValid(row) && this.storage.getTag(row) == tag) {
+				this.storage.getBlockData(row, target.getData());
 				target.setValid(true);
 			}
 		}
 		
 		// If we return a miss, we need to update the location, by grabbing data from the lower memory source
 		// and updating the cache. This is done in the memory hierarchy. 
-		if(!target.getValid()) {
+		boolean hit = target.getValid();
+		this.metrics.countRead(hit);
+		classify(address, hit);
+		if(!hit) {
 			this.misses++;
-			this.currMisses++;
+			// Still a miss of this cache, but the victim cache can save going to the next level
+			int row = swapIn(address);
+			if(row >= 0) {
+				this.storage.getBlockData(row, target.getData());
+				target.setValid(true);
+			}
+			else
+				this.currMisses++;
 		}
 		return target;
 	}
 	
 	
 	/**
-	 * Very similar to writeData, except it will evict a data slot using LRU.
+	 * Very similar to writeData, except it will evict a data slot using the replacement policy.
 	 * 
 	 * @param address
 	 * @param data
 	 * @return evicted row
 	 */
 	public CacheRow evictRow(int address, int[] data) {
-		int indexMask = (int) Math.pow(2, log2(this.indexSize)) - 1;
-		int blockMask = (int) Math.pow(2, log2(this.blocksize)) - 1;
-		int tag = (address >> (int) (log2(this.blocksize))) >> (int) (log2(this.indexSize));
-		int index = ((address >> (int) (log2(this.blocksize))) & indexMask);
-		int block = (address & blockMask);
-		CacheRow evictedRow = null;
+		return evictRow(address, data, false);
+	}
+	
+	
+	/**
+	 * Fill a missed block that is dirty, because it was moved up from a lower cache
+	 * that had not written it back yet.
+	 * 
+	 * @param address
+	 * @param data
+	 * @param dirty		->		True if the block still has to be written back
+	 * @return evicted row
+	 */
+	public CacheRow evictRow(int address, int[] data, boolean dirty) {
+		this.currMisses--;
+		return fill(address, data, dirty);
+	}
+	
+	
+	/**
+	 * End a miss readDataFromCache counted without filling the block here,
+	 * because the hierarchy places it in another cache.
+	 */
+	public void missResolved() {
+		this.currMisses--;
+	}
+	
+	
+	/**
+	 * Place a block another cache of the hierarchy handed down, such as its victim
+	 * or a dirty block it wrote back, rather than one this cache missed on.
+	 * 
+	 * @param address
+	 * @param data
+	 * @param dirty		->		True if the block still has to be written back
+	 * @return evicted row
+	 */
+	public CacheRow moveIn(int address, int[] data, boolean dirty) {
+		return fill(address, data, dirty);
+	}
+	
+	
+	/**
+	 * Write a whole block back into the row already holding it and mark it dirty,
+	 * without counting an access.
+	 * 
+	 * @param address
+	 * @param data
+	 * @return False if no row holds the block. A copy in the victim cache is left for moveIn().
+	 */
+	public boolean writeBackBlock(int address, int[] data) {
+		int row = findRow(address);
+		if(row < 0)
+			return false;
+		this.storage.setBlockData(row, data);
+		this.storage.setDirty(row, true);
+		return true;
+	}
+	
+	
+	/**
+	 * Take an address's block out of the cache, or out of its victim cache, without
+	 * counting an access. The row is the next to be replaced.
+	 * 
+	 * @param address
+	 * @return Copy of the row the block was in, null if it was not here. Reused by the next call.
+	 */
+	public CacheRow invalidate(int address) {
+		int row = findRow(address);
+		if(row >= 0) {
+			this.storage.getView(row, this.invalidated);
+			this.storage.setValid(row, false);
+			this.storage.setDirty(row, false);
+			this.replacement.invalidate(this.storage.getIndex(row), this.storage.getSet(row));
+			return this.invalidated;
+		}
+		int entry = this.victimCache == null ? -1 : this.victimCache.find(address >> this.decoder.getBlockBits());
+		if(entry < 0)
+			return null;
+		this.victimCache.getView(entry, this.invalidated);
+		this.victimCache.remove(entry);
+		return this.invalidated;
+	}
+	
+	
+	/**
+	 * True if an address's block is in the cache or its victim cache. Nothing is counted.
+	 */
+	public boolean contains(int address) {
+		return findRow(address) >= 0 || (this.victimCache != null && this.victimCache.find(address >> this.decoder.getBlockBits()) >= 0);
+	}
+	
+	
+	/**
+	 * Add the block address of every valid row, and of every victim cache entry, to a set
+	 */
+	public void collectBlocks(Set<Integer> blocks) {
+		int blockBits = this.decoder.getBlockBits();
+		for(int row = 0; row < this.size; row++)
+			if(this.storage.getValid(row))
+				blocks.add(this.decoder.getAddress(this.storage.getTag(row), this.storage.getIndex(row), this.storage.getSet(row)) >> blockBits);
+		if(this.victimCache != null)
+			this.victimCache.collectBlocks(blocks);
+	}
+	
+	
+	/**
+	 * Place a block into the row the replacement policy picks
+	 * 
+	 * @return evicted row
+	 */
+	private CacheRow fill(int address, int[] data, boolean dirty) {
+		// Grab the row picked by the replacement policy
+		// Evict the row using the cache's write policy. This is done in the memory hierarchy.
+		int victim = selectVictim(address);
+		CacheRow evictedRow = evictedView(victim);
 		
-		// Search through sets to see if Tag and Valid bit match.
+		replaceRow(address, victim);
+		this.storage.setBlockData(victim, data);
+		takeVictimCopy(address, victim);
+		if(dirty)
+			this.storage.setDirty(victim, true);
+		this.metrics.countEviction(evictedRow.getValid(), evictedRow.getDirty());
+		return retire(evictedRow);
+	}
+	
+	
+	/**
+	 * Row holding an address's block
+	 * 
+	 * @return row, -1 if not in the cache
+	 */
+	private int findRow(int address) {
+		int tag = this.decoder.getTag(address);
 		for(int i = 0; i < this.numSets; i++) {
-			CacheRow currRow = this.rows[index + i*this.indexSize];
-			if(currRow.getLRU() == this.numSets-1) {
-				// Grab row with highest LRU
-				// Evict LRU row using the cache's write policy. This is done in the memory hierarchy.
-				evictedRow = new CacheRow(currRow.getSet(), currRow.getIndex(), this.blocksize);
-				evictedRow.setLRU(currRow.getLRU());
-				evictedRow.setTag(currRow.getTag());
-				evictedRow.setBlockData(currRow.getBlockData());
-				evictedRow.setDirty(currRow.getDirty());
-				evictedRow.setValid(currRow.getValid());
-				
-				currRow.setLRU(0);
-				currRow.setTag(tag);
-				currRow.setBlockData(data);
-				currRow.setDirty(false);
-				currRow.setValid(true);
-			}
-			else {
-				currRow.setLRU(currRow.getLRU()+1);
+			int row = this.storage.getRow(this.decoder.getIndex(address, i), i);
+			if(this.storage.getValid(row) && this.storage.getTag(row) == tag)
+				return row;
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Look a missed block up in the victim cache. If it is there it is swapped
+	 * back in: it takes the row the replacement policy picks, and that row takes
+	 * its entry.
+	 * 
+	 * @param address
+	 * @return row the block is now in, -1 if the victim cache does not have it or there is none
+	 */
+	private int swapIn(int address) {
+		int entry = this.victimCache == null ? -1 : this.victimCache.lookUp(address >> this.decoder.getBlockBits());
+		if(entry < 0)
+			return -1;
+		EventLog.log(LogLevel.ACCESS, "VICTIM CACHE HIT!");
+		this.victimCache.getBlockData(entry, this.swapBlock);
+		boolean dirty = this.victimCache.getDirty(entry);
+		this.victimCache.remove(entry);
+		
+		int victim = selectVictim(address);
+		CacheRow evictedRow = evictedView(victim);
+		replaceRow(address, victim);
+		this.storage.setBlockData(victim, this.swapBlock);
+		this.storage.setDirty(victim, dirty);
+		this.metrics.countEviction(evictedRow.getValid(), evictedRow.getDirty());
+		retire(evictedRow);		// Goes into the entry just freed, so nothing is dropped
+		return victim;
+	}
+	
+	
+	/**
+	 * A block filled into a row from below replaces any copy of it left in the
+	 * victim cache. The row stays dirty if the copy was.
+	 */
+	private void takeVictimCopy(int address, int row) {
+		int entry = this.victimCache == null ? -1 : this.victimCache.find(address >> this.decoder.getBlockBits());
+		if(entry >= 0) {
+			this.storage.setDirty(row, this.victimCache.getDirty(entry));
+			this.victimCache.remove(entry);
+		}
+	}
+	
+	
+	/**
+	 * Hand a row this cache evicted to the victim cache, if there is one.
+	 * 
+	 * @return Row that leaves the cache's level: the evicted row itself without a victim cache,
+	 * 			else the entry the victim cache dropped for it, invalid if none
+	 */
+	private CacheRow retire(CacheRow evictedRow) {
+		if(this.victimCache == null || !evictedRow.getValid())
+			return evictedRow;
+		return this.victimCache.insert(evictedRow, getRowAddress(evictedRow) >> this.decoder.getBlockBits());
+	}
+	
+	
+	/**
+	 * Classify a read or write-back access, if classification is on.
+	 * Write-through writes are left out since they never fill the cache.
+	 * With skewed indexing conflicts are counted at the first set's index.
+	 */
+	void classify(int address, boolean hit) {
+		if(this.classifier != null)
+			this.classifier.access(address >> this.decoder.getBlockBits(), this.decoder.getIndex(address, 0), hit);
+	}
+	
+	
+	/**
+	 * Start sorting misses into compulsory, capacity and conflict, against a
+	 * shadow fully associative LRU cache with as many rows as this one
+	 */
+	public void enableMissClassification() {
+		if(this.classifier == null)
+			this.classifier = new MissClassifier(this.size, this.indexSize);
+	}
+	
+	
+	/**
+	 * Keep the rows this cache evicts in a small fully associative victim cache,
+	 * looked up on every miss before the next level
+	 * 
+	 * @param entries		->		# of rows the victim cache holds
+	 * @param latency		->		Cycles a lookup of it adds to a miss
+	 */
+	public void enableVictimCache(int entries, int latency) {
+		this.victimCache = new VictimCache(entries, latency, this.blocksize, this.storeData);
+	}
+	
+	
+	/**
+	 * Write the shape and every part of the state of the cache to a checkpoint:
+	 * rows, replacement state, counters, and the miss classification and victim
+	 * cache if on.
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeInt(this.size);
+		out.writeInt(this.numSets);
+		out.writeInt(this.blocksize);
+		out.writeBoolean(this.storeData);
+		out.writeString(this.replacement.getClass().getName());
+		out.writeDouble(this.accesses);
+		out.writeDouble(this.misses);
+		out.writeInt(this.currMisses);
+		this.metrics.save(out);
+		this.storage.save(out);
+		this.replacement.save(out);
+		out.writeBoolean(this.classifier != null);
+		if(this.classifier != null)
+			this.classifier.save(out);
+		out.writeBoolean(this.victimCache != null);
+		if(this.victimCache != null)
+			this.victimCache.save(out);
+	}
+	
+	
+	/**
+	 * Read back what save() wrote, into a cache of the same shape, replacement
+	 * policy and victim cache. Miss classification is turned on if the saved cache had it.
+	 * 
+	 * @throws IOException if the checkpoint holds a cache of another shape
+	 */
+	public void restore(CheckpointReader in) throws IOException {
+		in.expect(this.size, "cache size");
+		in.expect(this.numSets, "# of sets");
+		in.expect(this.blocksize, "blocksize");
+		if(in.readBoolean() != this.storeData)
+			throw new IOException("Checkpoint has a " + (this.storeData ? "tag-only" : "data") + " cache, expected " + (this.storeData ? "data" : "tag-only"));
+		in.expect(this.replacement.getClass().getName(), "replacement policy");
+		this.accesses = in.readDouble();
+		this.misses = in.readDouble();
+		this.currMisses = in.readInt();
+		this.metrics.restore(in);
+		this.storage.restore(in);
+		this.replacement.restore(in);
+		if(in.readBoolean()) {
+			enableMissClassification();
+			this.classifier.restore(in);
+		}
+		if(in.readBoolean() != (this.victimCache != null))
+			throw new IOException("Checkpoint has " + (this.victimCache == null ? "a" : "no") + " victim cache, expected " + (this.victimCache == null ? "none" : "one"));
+		if(this.victimCache != null)
+			this.victimCache.restore(in);
+	}
+	
+	
+	/**
+	 * Ask the replacement policy for the row to evict. With skewed indexing every
+	 * set is looked up at its own index, so the row ranked closest to eviction wins.
+	 * 
+	 * @param address
+	 * @return row to evict
+	 */
+	private int selectVictim(int address) {
+		if(!this.decoder.isSkewed()) {
+			int index = this.decoder.getIndex(address, 0);
+			return this.storage.getRow(index, this.replacement.victim(index));
+		}
+		
+		int victim = 0;
+		int victimRank = -1;
+		for(int i = 0; i < this.numSets; i++) {
+			int rank = this.replacement.rank(this.decoder.getIndex(address, i), i);
+			if(rank > victimRank) {
+				victim = i;
+				victimRank = rank;
 			}
 		}
-		this.currMisses--;
-		return evictedRow;
+		return this.storage.getRow(this.decoder.getIndex(address, victim), victim);
+	}
+	
+	
+	/**
+	 * Copy of the row about to be evicted. Tag-only caches reuse one row object.
+	 * Its LRU is left unset, since ranking a row walks the whole index and
+	 * nothing reads it back from an eviction.
+	 */
+	private CacheRow evictedView(int victim) {
+		if(this.storeData)
+			return this.storage.getView(victim);
+		return this.storage.getView(victim, this.tagOnlyEvicted);
+	}
+	
+	
+	/**
+	 * Fill in the LRU of a row copy from the replacement policy.
+	 */
+	private CacheRow getView(int row, CacheRow view) {
+		view.setLRU(this.replacement.rank(this.storage.getIndex(row), this.storage.getSet(row)));
+		return view;
+	}
+	
+	
+	/**
+	 * Give the victim row to a new address and tell the replacement policy.
+	 * The row's data is left for the caller to fill.
+	 * 
+	 * @param address
+	 * @param victim
+	 */
+	private void replaceRow(int address, int victim) {
+		this.replacement.fill(this.storage.getIndex(victim), this.storage.getSet(victim));
+		this.storage.setTag(victim, this.decoder.getTag(address));
+		this.storage.setDirty(victim, false);
+		this.storage.setValid(victim, true);
 	}
 	
 	
@@ -253,6 +612,14 @@ public class Cache {
 	}
 	
 	
+    /**
+     * Get # of rows
+     */
+	public int getSize() {
+		return this.size;
+	}
+	
+	
     /**
      * Get Latency
      */
@@ -262,10 +629,18 @@ public class Cache {
 	
 	
     /**
-     * Get Total Latency
+     * Get Total Latency, with the victim cache lookups
      */
 	public int getTotalLatency() {
-		return (int) (this.latency*this.accesses);
+		return (int) (this.latency*this.accesses + getVictimLatency());
+	}
+	
+	
+    /**
+     * Get Latency of every victim cache lookup so far, 0 without one
+     */
+	public long getVictimLatency() {
+		return this.victimCache == null ? 0 : this.victimCache.getLatency()*this.victimCache.getProbes();
 	}
 	
 	
@@ -292,12 +667,64 @@ public class Cache {
 		return this.currMisses;
 	}
 	
+    /**
+     * Get the miss classification, null unless enabled
+     */
+	public MissClassifier getMissClassifier() {
+		return this.classifier;
+	}
+	
+    /**
+     * Get the victim cache, null unless enabled
+     */
+	public VictimCache getVictimCache() {
+		return this.victimCache;
+	}
+	
+    /**
+     * Get the counts of what the cache has done
+     */
+	public CacheMetrics getMetrics() {
+		return this.metrics;
+	}
+	
+    /**
+     * True if the cache keeps block data, false if tag-only
+     */
+	public boolean getStoreData() {
+		return this.storeData;
+	}
+	
+	
+    /**
+     * Get the address of the first data location held by a row
+     */
+	public int getRowAddress(CacheRow row) {
+		return this.decoder.getAddress(row.getTag(), row.getIndex(), row.getSet());
+	}
+	
+	
+	/**
+	 * Get # of accesses, for merging shard counters
+	 */
+	double getAccesses() {
+		return this.accesses;
+	}
+	
+	
+	/**
+	 * Get # of misses, for merging shard counters
+	 */
+	double getMisses() {
+		return this.misses;
+	}
+	
+	
 	/**
-	 * Helper Function to get the base2 logarithm
+	 * Copy of one row with its LRU filled in, as toString prints it
 	 */
-	private static double log2(int x)
-	{
-	    return Math.ceil((Math.log(x) / Math.log(2)));
+	CacheRow getRowView(int row) {
+		return getView(row, this.storage.getView(row));
 	}
 	
 	
@@ -309,7 +736,7 @@ public class Cache {
 		sb.append("Valid\t| Dirty\t| Set\t| Index\t| LRU\t| Tag\t| DataBlock\n------------------------------------------------------------\n");
 		
 		for(int i = 0; i < this.size;  i++) {
-			sb.append(this.rows[i]);
+			sb.append(getView(i, this.storage.getView(i)));
 		}
 		sb.append("\n");
 		
@@ -0,0 +1,98 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Running counts of what one cache has done. The cache counts into it as it
+ * works, and a MetricsRegistry reads it for snapshots.
+ */
+public class CacheMetrics {
+	private long reads;			// # of reads
+	private long writes;		// # of writes
+	private long hits;			// # of reads and writes that hit
+	private long misses;		// # of reads and writes that missed
+	private long evictions;		// # of valid rows replaced
+	private long writeBacks;	// # of dirty rows replaced, whose data must go down a level
+	
+	
+	/**
+	 * Count a read
+	 */
+	public void countRead(boolean hit) {
+		this.reads++;
+		countResult(hit);
+	}
+	
+	/**
+	 * Count a write
+	 */
+	public void countWrite(boolean hit) {
+		this.writes++;
+		countResult(hit);
+	}
+	
+	/**
+	 * Count a row being replaced. Rows that were never valid are not evictions.
+	 */
+	public void countEviction(boolean valid, boolean dirty) {
+		if(valid)
+			this.evictions++;
+		if(dirty)
+			this.writeBacks++;
+	}
+	
+	private void countResult(boolean hit) {
+		if(hit)
+			this.hits++;
+		else
+			this.misses++;
+	}
+	
+	
+	// Getter Functions
+	
+	public long getReads() {
+		return this.reads;
+	}
+	
+	public long getWrites() {
+		return this.writes;
+	}
+	
+	public long getHits() {
+		return this.hits;
+	}
+	
+	public long getMisses() {
+		return this.misses;
+	}
+	
+	public long getEvictions() {
+		return this.evictions;
+	}
+	
+	public long getWriteBacks() {
+		return this.writeBacks;
+	}
+	
+	
+	/**
+	 * Write every count to a checkpoint
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeLongs(new long[] {this.reads, this.writes, this.hits, this.misses, this.evictions, this.writeBacks});
+	}
+	
+	/**
+	 * Read back the counts save() wrote
+	 */
+	public void restore(CheckpointReader in) throws IOException {
+		long[] counts = in.readLongs(new long[6]);
+		this.reads = counts[0];
+		this.writes = counts[1];
+		this.hits = counts[2];
+		this.misses = counts[3];
+		this.evictions = counts[4];
+		this.writeBacks = counts[5];
+	}
+}
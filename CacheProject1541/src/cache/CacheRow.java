@@ -43,6 +43,20 @@ public class CacheRow {
 		this.dirty = d;
 	}
 	
+    /**
+     * Set Set from row
+     */
+	public void setSet(int s) {
+		this.set = s;
+	}
+	
+    /**
+     * Set Index from row
+     */
+	public void setIndex(int i) {
+		this.index = i;
+	}
+	
     /**
      * Set LRU from row
      */
@@ -0,0 +1,223 @@
+package cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class CacheStorage {
+	private static final byte VALID = 1;	// Valid bit within a row's flags
+	private static final byte DIRTY = 2;	// Dirty bit within a row's flags
+
+	private int rowCount;		// Total # of rows
+	private int indexSize;		// # of index locations in one set.
+	private int blocksize;		// Number of data locations within block
+	private int[] tags;			// Tag of each row
+	private byte[] flags;		// Valid and dirty bits of each row
+	private int[] data;			// Block data of every row, packed blocksize locations per row. Null when tag-only.
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Storage Format
+	 *
+	 * 	Each row field is kept in its own array. A row is found at
+	 * 	set*indexSize + index, the same order the rows of the cache
+	 * 	have always been printed in. Its data starts at row*blocksize.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+
+	/**
+	 * Initialize Blank Storage
+	 *
+	 * @param rowCount
+	 * @param indexSize
+	 * @param blocksize
+	 * @param storeData		->		False to keep only tags and bits, with no block data
+	 */
+	public CacheStorage(int rowCount, int indexSize, int blocksize, boolean storeData) {
+		this.rowCount = rowCount;
+		this.indexSize = indexSize;
+		this.blocksize = blocksize;
+		this.tags = new int[rowCount];
+		this.flags = new byte[rowCount];
+		this.data = storeData ? new int[rowCount * blocksize] : null;
+	}
+
+
+	/**
+	 * Get the row number of an index within a set
+	 */
+	public int getRow(int index, int set) {
+		return set*this.indexSize + index;
+	}
+
+
+	// Setter Functions
+
+	/**
+	 * Set valid bit of a row
+	 */
+	public void setValid(int row, boolean v) {
+		if(v)
+			this.flags[row] |= VALID;
+		else
+			this.flags[row] &= ~VALID;
+	}
+
+	/**
+	 * Set dirty bit of a row
+	 */
+	public void setDirty(int row, boolean d) {
+		if(d)
+			this.flags[row] |= DIRTY;
+		else
+			this.flags[row] &= ~DIRTY;
+	}
+
+	/**
+	 * Set tag of a row
+	 */
+	public void setTag(int row, int t) {
+		this.tags[row] = t;
+	}
+
+	/**
+	 * Set specific block of data of a row
+	 */
+	public void setData(int row, int block, int d) {
+		if(this.data != null)
+			this.data[row*this.blocksize + block] = d;
+	}
+
+	/**
+	 * Set every location of a row's block to the same value
+	 */
+	public void fillBlockData(int row, int d) {
+		if(this.data != null)
+			Arrays.fill(this.data, row*this.blocksize, (row + 1)*this.blocksize, d);
+	}
+
+	/**
+	 * Copy an entire block of data into a row. A null block clears the row.
+	 */
+	public void setBlockData(int row, int[] d) {
+		if(this.data == null)
+			return;
+		if(d == null)
+			fillBlockData(row, 0);
+		else
+			System.arraycopy(d, 0, this.data, row*this.blocksize, this.blocksize);
+	}
+
+	// Getter Functions
+
+	/**
+	 * Get valid bit of a row
+	 */
+	public boolean getValid(int row) {
+		return (this.flags[row] & VALID) != 0;
+	}
+
+	/**
+	 * Get dirty bit of a row
+	 */
+	public boolean getDirty(int row) {
+		return (this.flags[row] & DIRTY) != 0;
+	}
+
+	/**
+	 * Get tag of a row
+	 */
+	public int getTag(int row) {
+		return this.tags[row];
+	}
+
+	/**
+	 * Get specific block of data of a row, 0 when tag-only
+	 */
+	public int getData(int row, int block) {
+		return this.data == null ? 0 : this.data[row*this.blocksize + block];
+	}
+
+	/**
+	 * Copy an entire block of data out of a row
+	 */
+	public void getBlockData(int row, int[] d) {
+		if(this.data != null && d != null)
+			System.arraycopy(this.data, row*this.blocksize, d, 0, this.blocksize);
+	}
+
+	/**
+	 * Get # of rows
+	 */
+	public int getRowCount() {
+		return this.rowCount;
+	}
+
+
+	/**
+	 * True if the storage keeps block data
+	 */
+	public boolean getStoreData() {
+		return this.data != null;
+	}
+
+
+	/**
+	 * Get the index of a row
+	 */
+	public int getIndex(int row) {
+		return row % this.indexSize;
+	}
+
+	/**
+	 * Get the set of a row
+	 */
+	public int getSet(int row) {
+		return row / this.indexSize;
+	}
+
+
+	/**
+	 * Write every row to a checkpoint
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeInts(this.tags);
+		out.writeBytes(this.flags);
+		out.writeInts(this.data);
+	}
+
+
+	/**
+	 * Read back the rows save() wrote, into storage of the same shape
+	 *
+	 * @throws IOException if the checkpoint holds rows of another shape
+	 */
+	public void restore(CheckpointReader in) throws IOException {
+		in.readInts(this.tags);
+		in.readBytes(this.flags);
+		in.readInts(this.data);
+	}
+
+
+	/**
+	 * Copy of a row as a CacheRow, for evictions and print-outs.
+	 * The LRU is left for the cache's replacement policy to fill in.
+	 * Tag-only storage gives rows with an empty block.
+	 */
+	public CacheRow getView(int row) {
+		return getView(row, new CacheRow(0, 0, this.data == null ? 0 : this.blocksize));
+	}
+
+
+	/**
+	 * Copy a row into an existing CacheRow, so tag-only caches can reuse one.
+	 * The LRU is left for the cache's replacement policy to fill in.
+	 */
+	public CacheRow getView(int row, CacheRow view) {
+		view.setSet(getSet(row));
+		view.setIndex(getIndex(row));
+		view.setValid(getValid(row));
+		view.setDirty(getDirty(row));
+		view.setTag(getTag(row));
+		getBlockData(row, view.getBlockData());
+		return view;
+	}
+}
@@ -0,0 +1,130 @@
+package cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a checkpoint, see CheckpointFormat for the layout.
+ */
+public class CheckpointWriter implements AutoCloseable {
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private FileChannel channel; // Output file
+	private ByteBuffer buffer; // Values waiting to be written
+
+	/**
+	 * Create or replace a checkpoint file.
+	 * 
+	 * @param filename
+	 * @param kind     -> Which hierarchy is writing, see CheckpointFormat
+	 * @throws IOException
+	 */
+	public CheckpointWriter(String filename, byte kind) throws IOException {
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.buffer.putInt(CheckpointFormat.MAGIC);
+		this.buffer.put(CheckpointFormat.VERSION);
+		this.buffer.put(kind);
+		this.buffer.put(new byte[2]);
+	}
+
+	public void writeBoolean(boolean value) throws IOException {
+		room(1);
+		this.buffer.put((byte) (value ? 1 : 0));
+	}
+
+	public void writeInt(int value) throws IOException {
+		room(4);
+		this.buffer.putInt(value);
+	}
+
+	public void writeLong(long value) throws IOException {
+		room(8);
+		this.buffer.putLong(value);
+	}
+
+	public void writeDouble(double value) throws IOException {
+		room(8);
+		this.buffer.putDouble(value);
+	}
+
+	public void writeString(String value) throws IOException {
+		writeBytes(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Write an array, which may be null
+	 */
+	public void writeBytes(byte[] values) throws IOException {
+		writeInt(values == null ? -1 : values.length);
+		if(values == null)
+			return;
+		for(int done = 0; done < values.length;) {
+			int n = Math.min(values.length - done, room(1));
+			this.buffer.put(values, done, n);
+			done += n;
+		}
+	}
+
+	/**
+	 * Write an array, which may be null
+	 */
+	public void writeInts(int[] values) throws IOException {
+		writeInt(values == null ? -1 : values.length);
+		if(values == null)
+			return;
+		for(int done = 0; done < values.length;) {
+			int n = Math.min(values.length - done, room(4) / 4);
+			this.buffer.asIntBuffer().put(values, done, n);
+			this.buffer.position(this.buffer.position() + n * 4);
+			done += n;
+		}
+	}
+
+	/**
+	 * Write an array, which may be null
+	 */
+	public void writeLongs(long[] values) throws IOException {
+		writeInt(values == null ? -1 : values.length);
+		if(values == null)
+			return;
+		for(int done = 0; done < values.length;) {
+			int n = Math.min(values.length - done, room(8) / 8);
+			this.buffer.asLongBuffer().put(values, done, n);
+			this.buffer.position(this.buffer.position() + n * 8);
+			done += n;
+		}
+	}
+
+	/**
+	 * Write out buffered values and close the file.
+	 */
+	public void close() throws IOException {
+		flush();
+		this.channel.close();
+	}
+
+	/**
+	 * Make room for at least a number of bytes in the buffer.
+	 * 
+	 * @return Bytes of room in the buffer
+	 */
+	private int room(int bytes) throws IOException {
+		if(this.buffer.remaining() < bytes)
+			flush();
+		return this.buffer.remaining();
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while(this.buffer.hasRemaining())
+			this.channel.write(this.buffer);
+		this.buffer.clear();
+	}
+}
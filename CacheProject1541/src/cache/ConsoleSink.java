@@ -0,0 +1,15 @@
+package cache;
+
+/**
+ * Writes events straight to standard out.
+ */
+public class ConsoleSink implements EventSink {
+
+	public void write(String text) {
+		System.out.print(text);
+	}
+
+	public void close() {
+		System.out.flush();
+	}
+}
@@ -0,0 +1,17 @@
+package cache;
+
+/**
+ * Destination for the text of logged events.
+ */
+public interface EventSink {
+
+	/**
+	 * Write text exactly as given, the caller adds any line breaks.
+	 */
+	void write(String text);
+
+	/**
+	 * Flush anything buffered and release the sink.
+	 */
+	void close();
+}
@@ -0,0 +1,15 @@
+package cache;
+
+/**
+ * First in, first out. Same list as LRU, but hits do not move a way.
+ */
+public class FIFOPolicy extends LRUPolicy {
+
+	public FIFOPolicy(int indexSize, int ways) {
+		super(indexSize, ways);
+	}
+
+	public void touch(int index, int way) {
+		// Hits do not change the fill order
+	}
+}
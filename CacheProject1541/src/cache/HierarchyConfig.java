@@ -0,0 +1,102 @@
+package cache;
+
+import java.util.Arrays;
+
+public class HierarchyConfig {
+	private String spec;			// The line this configuration was read from
+	private int policy;				// Write/Allocate Policy of hierarchy
+	private int blocksize;			// Number of data locations within block
+	private int outstandingMisses;	// Number of Misses to be allowed to be in the buffer at one time
+	private int[] sizes;			// Array of sizes of the caches
+	private int[] setAssociatives;	// Array of # of sets within a cache
+	private int[] latencies;		// Array of latencies of the caches
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Configuration Format
+	 *
+	 * 	One hierarchy per line, the same values Main asks for:
+	 *
+	 * 	<policy> <blocksize> <outstanding misses> <size>:<sets>:<latency> ...
+	 *
+	 * 	with one size:sets:latency group per cache, closest first.
+	 * 	For example "0 2 5 8:4:1 16:4:10" is a two level write-back hierarchy.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+
+	/**
+	 * Parse one configuration line
+	 *
+	 * @param spec
+	 * @throws IllegalArgumentException if the line is not in the format or a cache shape is not allowed
+	 */
+	public HierarchyConfig(String spec) {
+		this.spec = spec.trim();
+		String[] fields = this.spec.split("\\s+");
+		if(fields.length < 4)
+			throw new IllegalArgumentException("Expected <policy> <blocksize> <outstanding misses> <size>:<sets>:<latency> ..., got \"" + spec + "\"");
+
+		try {
+			this.policy = Integer.parseInt(fields[0]);
+			this.blocksize = Integer.parseInt(fields[1]);
+			this.outstandingMisses = Integer.parseInt(fields[2]);
+
+			int layers = fields.length - 3;
+			this.sizes = new int[layers];
+			this.setAssociatives = new int[layers];
+			this.latencies = new int[layers];
+			for(int i = 0; i < layers; i++) {
+				String[] cache = fields[i + 3].split(":");
+				if(cache.length != 3)
+					throw new IllegalArgumentException("Expected <size>:<sets>:<latency>, got \"" + fields[i + 3] + "\"");
+				this.sizes[i] = Integer.parseInt(cache[0]);
+				this.setAssociatives[i] = Integer.parseInt(cache[1]);
+				this.latencies[i] = Integer.parseInt(cache[2]);
+				if(this.setAssociatives[i] <= 0 || this.sizes[i] % this.setAssociatives[i] != 0 || Integer.bitCount(this.setAssociatives[i]) != 1)
+					throw new IllegalArgumentException("Set Associative Number must be a dividend of the cache size and also must be a power of 2, got \"" + fields[i + 3] + "\"");
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number in \"" + spec + "\"", e);
+		}
+	}
+
+
+	/**
+	 * Build a fresh memory hierarchy of this configuration
+	 *
+	 * @param replacement	->		Replacement policy of every cache
+	 * @param storeData		->		False to simulate tags only
+	 */
+	public MemoryHierarchy build(ReplacementType replacement, boolean storeData) {
+		ReplacementType[] replacements = new ReplacementType[this.sizes.length];
+		Arrays.fill(replacements, replacement);
+		return new MemoryHierarchy(this.sizes.length, this.policy, this.blocksize, this.outstandingMisses, this.sizes, this.setAssociatives, this.latencies, null, replacements, storeData);
+	}
+
+
+	// Getter Functions
+
+	/**
+	 * Get the line this configuration was read from
+	 */
+	public String getSpec() {
+		return this.spec;
+	}
+
+	/**
+	 * Get # of caches
+	 */
+	public int getLayers() {
+		return this.sizes.length;
+	}
+
+	/**
+	 * Get Number of data locations within block
+	 */
+	public int getBlocksize() {
+		return this.blocksize;
+	}
+
+	public String toString() {
+		return this.spec;
+	}
+}
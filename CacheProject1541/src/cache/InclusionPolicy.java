@@ -0,0 +1,27 @@
+package cache;
+
+/**
+ * How the blocks of a cache relate to those of the caches below it.
+ */
+public enum InclusionPolicy {
+	/**
+	 * Non-inclusive non-exclusive: a block is filled into every cache on its
+	 * way up and nothing more is enforced, so a lower cache can drop a block the
+	 * caches above keep.
+	 */
+	NINE,
+
+	/**
+	 * Every block of a cache is also in every cache below it. A block leaving a
+	 * lower cache is back-invalidated from the caches above, and the newest dirty
+	 * copy among them is written back in its place.
+	 */
+	INCLUSIVE,
+
+	/**
+	 * A block is in one cache at most. It is filled into the first cache only, a
+	 * hit in a lower cache moves it up to the first, and the victims of each
+	 * cache move down into the next one.
+	 */
+	EXCLUSIVE;
+}
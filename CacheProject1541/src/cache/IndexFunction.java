@@ -0,0 +1,25 @@
+package cache;
+
+/**
+ * Maps the low block-address bits of an access to a cache index.
+ * 
+ * The index is always formed as (low index bits XOR hash(tag, way)), so the
+ * original block address can be rebuilt from the tag, index, and way.
+ */
+public interface IndexFunction {
+
+	/**
+	 * Hash of the tag that is XORed into the index of the given way.
+	 * 
+	 * @param tag
+	 * @param way
+	 * @param indexBits
+	 * @return hash bits, only the lowest indexBits are used
+	 */
+	int hash(int tag, int way, int indexBits);
+
+	/**
+	 * True if the index depends on the way being looked up.
+	 */
+	boolean isSkewed();
+}
@@ -0,0 +1,132 @@
+package cache;
+
+import java.io.IOException;
+
+public class LatencyHistogram {
+	private static final int SUB_BITS = 5;							// log2 of SUB_BUCKETS
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;			// # of buckets each power of two is split into
+	private static final int BUCKETS = (32 - SUB_BITS) * SUB_BUCKETS;	// Enough for every non-negative int
+
+	private long[] counts;		// # of latencies in each bucket
+	private long count;			// # of latencies recorded
+	private long sum;			// Sum of every latency recorded
+	private int max;			// Largest latency recorded
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Histogram Buckets
+	 *
+	 * 	Every power of two is split into SUB_BUCKETS equal buckets,
+	 * 	so latencies below 2*SUB_BUCKETS are kept exactly and larger
+	 * 	ones to within 1/SUB_BUCKETS of their value, in fixed memory.
+	 * 	Percentiles report the highest latency of the bucket they
+	 * 	fall in, never more than the largest latency recorded.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+
+	/**
+	 * Initialize an empty histogram
+	 */
+	public LatencyHistogram() {
+		this.counts = new long[BUCKETS];
+	}
+
+
+	/**
+	 * Record one latency. Negative latencies count as 0.
+	 */
+	public void record(int latency) {
+		if(latency < 0)
+			latency = 0;
+		this.counts[bucket(latency)]++;
+		this.count++;
+		this.sum += latency;
+		if(latency > this.max)
+			this.max = latency;
+	}
+
+	/**
+	 * Get the latency that a percentage of the recorded latencies are at or
+	 * below, 0 if none were recorded.
+	 * 
+	 * @param percent		->		From 0 to 100, such as 99.9
+	 */
+	public int getPercentile(double percent) {
+		if(this.count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * this.count));
+		long seen = 0;
+		for(int b = 0; b < BUCKETS; b++) {
+			seen += this.counts[b];
+			if(seen >= rank)
+				return (int) Math.min(highest(b), this.max);
+		}
+		return this.max;
+	}
+
+	/**
+	 * Get # of latencies recorded
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Get the largest latency recorded
+	 */
+	public int getMax() {
+		return this.max;
+	}
+
+	/**
+	 * Get the mean latency, 0 if none were recorded
+	 */
+	public double getMean() {
+		return this.count == 0 ? 0 : (double) this.sum / this.count;
+	}
+
+	/**
+	 * Write every count to a checkpoint
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeLongs(this.counts);
+		out.writeLong(this.count);
+		out.writeLong(this.sum);
+		out.writeInt(this.max);
+	}
+
+	/**
+	 * Read back the counts save() wrote
+	 */
+	public void restore(CheckpointReader in) throws IOException {
+		in.readLongs(this.counts);
+		this.count = in.readLong();
+		this.sum = in.readLong();
+		this.max = in.readInt();
+	}
+
+	/**
+	 * Bucket of a latency. Below 2 * SUB_BUCKETS every latency has its own
+	 * bucket, above that a bucket spans 2^shift latencies.
+	 */
+	private static int bucket(int latency) {
+		if(latency < 2 * SUB_BUCKETS)
+			return latency;
+		int shift = 31 - Integer.numberOfLeadingZeros(latency) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (latency >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Highest latency that falls in a bucket
+	 */
+	private static long highest(int bucket) {
+		if(bucket < 2 * SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	public String toString() {
+		return String.format("count: %d, mean: %.1f, p50: %d, p90: %d, p99: %d, p99.9: %d, max: %d", this.count, getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getPercentile(99.9), this.max);
+	}
+}
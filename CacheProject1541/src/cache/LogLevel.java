@@ -0,0 +1,11 @@
+package cache;
+
+/**
+ * How much the simulator reports. Each level includes everything below it.
+ */
+public enum LogLevel {
+	OFF, // Nothing
+	SUMMARY, // End of run reports and warnings
+	ACCESS, // One or two lines per access: hits, misses, memory traffic, latencies
+	DEBUG; // Every cache visited, tags, and queue state
+}
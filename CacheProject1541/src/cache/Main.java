@@ -8,6 +8,7 @@ public class Main {
 
 	public static void main(String[] args) {
 		Scanner scanner = new Scanner(System.in);
+		EventLog.configure();
 		
 		System.out.println("_____________________________\n| *   *   *   *   *   *   * |\n|   *   *   *   *   *   *   |\n| Cache Project for COE1541 |\n|\t Tyler Vogel\t    |\n| *   *   *   *   *   *   * |\n|   *   *   *   *   *   *   |\n-----------------------------");
 		
@@ -43,7 +44,49 @@ public class Main {
 			latencies[i] = Integer.parseInt(scanner.next());
 		}
 		
-		mh = new MemoryHierarchy(cacheNumber, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies);
+		// Run with -Dcache.tagOnly=true to simulate tags only, without block data
+		boolean storeData = !Boolean.getBoolean("cache.tagOnly");
+		
+		// Run with -Dcache.replacement=<LRU, TREE_PLRU, BIT_PLRU, SRRIP, BRRIP, FIFO or RANDOM> to change every cache's replacement policy
+		ReplacementType[] replacements = new ReplacementType[cacheNumber];
+		Arrays.fill(replacements, ReplacementType.valueOf(System.getProperty("cache.replacement", "LRU")));
+		
+		// Run with -Dcache.tagOnly=true -Dcache.shards=<n> to split the first cache across n threads
+		int shards = Integer.getInteger("cache.shards", 1);
+		if(shards > 1 && System.getProperty("cache.checkpoint") != null) {
+			System.out.println("ERROR: A sharded first cache only plays back the trace it ran, so -Dcache.shards cannot be combined with -Dcache.checkpoint.");
+			return;
+		}
+		
+		mh = new MemoryHierarchy(cacheNumber, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies, null, replacements, storeData);
+		
+		// Run with -Dcache.metrics=<file.csv or file.json> to snapshot every cache's counters every -Dcache.metricsInterval=<n> accesses
+		mh.getMetrics().configure();
+		
+		// Run with -Dcache.classifyMisses=true to sort every cache's misses into compulsory, capacity and conflict
+		if(Boolean.getBoolean("cache.classifyMisses"))
+			for(Cache c : mh.getCaches())
+				c.enableMissClassification();
+		
+		// Run with -Dcache.victimCache=<entries> to put a victim cache taking -Dcache.victimLatency=<n> cycles behind each cache in -Dcache.victimLevels=<i,j,...> (cache 0 by default)
+		int victimEntries = Integer.getInteger("cache.victimCache", 0);
+		if(victimEntries > 0)
+			for(String level : System.getProperty("cache.victimLevels", "0").split(","))
+				mh.getCaches()[Integer.parseInt(level.trim())].enableVictimCache(victimEntries, Integer.getInteger("cache.victimLatency", 1));
+		
+		// Run with -Dcache.inclusion=<NINE, INCLUSIVE or EXCLUSIVE> to set how the blocks of each cache relate to the caches below it
+		mh.setInclusionPolicy(InclusionPolicy.valueOf(System.getProperty("cache.inclusion", "NINE")));
+
+		// Run with -Dcache.restore=<file> to start from a checkpoint instead of cold caches
+		String restore = System.getProperty("cache.restore");
+		if(restore != null) {
+			try {
+				mh.restore(restore);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
 		
 		//mh = new MemoryHierarchy(3, 0, 2, 5, new int[]{8, 16, 32}, new int[]{4, 4, 4}, new int[]{1, 10 , 100});
 		
@@ -53,53 +96,92 @@ public class Main {
 			System.out.println("\nPlease Enter the filename for Cache Accesses: ");
 			String filename = scanner.next().trim();
 			try {
-				Scanner fs = new Scanner(new File(filename));
-				System.out.println("\nStarting Instruction List...\n--------------------------");
-				while (fs.hasNextLine()) {
-					nofile = false;
-					decode(fs.nextLine());
-					System.out.println("Latency of Cache Access: " + mh.getCurrentLatency() + "\n");
+				nofile = false;
+				if(shards > 1) {
+					EventLog.log(LogLevel.SUMMARY, "\nStarting Instruction List...\n--------------------------");
+					mh.replaySharded(TraceBuffer.load(filename), shards);
 				}
-				fs.close();
-			} catch (FileNotFoundException e) {
+				// Binary traces from TraceConverter are recognized by their header
+				else if(TraceReader.isTrace(filename))
+					replay(filename);
+				else
+					replayText(filename);
+			} catch (IOException e) {
 				e.printStackTrace();
 				nofile = true;
 			}
 		}while(nofile);
 		
+		// Run with -Dcache.checkpoint=<file> to save the state the trace left the hierarchy in
+		String checkpoint = System.getProperty("cache.checkpoint");
+		if(checkpoint != null) {
+			try {
+				mh.checkpoint(checkpoint);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		
-		System.out.println("\nEnd of Instructions. Now Showing Memory Heirarchy Status.\n_______________________________________________________________\n");
-		System.out.println("\n* * * * * * * * * * * * * * * \nCache Access Report\n* * * * * * * * * * * * * * * ");
-		System.out.println("Total Latency: " + mh.getLatency());
-		System.out.print(mh.getStatus());
+		
+		EventLog.log(LogLevel.SUMMARY, "\nEnd of Instructions. Now Showing Memory Heirarchy Status.\n_______________________________________________________________\n");
+		EventLog.log(LogLevel.SUMMARY, "\n* * * * * * * * * * * * * * * \nCache Access Report\n* * * * * * * * * * * * * * * ");
+		if(EventLog.enabled(LogLevel.SUMMARY))
+			EventLog.log(LogLevel.SUMMARY, "Total Latency: " + mh.getLatency());
+		if(EventLog.enabled(LogLevel.SUMMARY))
+			EventLog.print(LogLevel.SUMMARY, mh.getStatus());
+		mh.getMetrics().close(mh.getAccesses());
+		EventLog.close();
 		
 		
 	}
 
-	private static void decode(String nextLine) {
-		String[] instruction = nextLine.split(" ");
-		int data = 100 - iter;
-		int address = 0;
-		
-		if(Integer.parseInt(instruction[2]) == 10)
-			address = Integer.parseInt(instruction[1]);
-		else if(Integer.parseInt(instruction[2]) == 2)
-			address = Integer.parseInt(instruction[1], 2);
-		else if(Integer.parseInt(instruction[2]) == 16)
-			address = Integer.parseInt(instruction[1], 16);
-		else {
-			System.out.println("Incorrect Instruction Format.");
-			return;
+	/**
+	 * Run every access of a text trace. The file is parsed on every core
+	 * while the accesses run in order.
+	 */
+	private static void replayText(String filename) throws IOException {
+		try(TextTraceParser trace = new TextTraceParser(filename)) {
+			EventLog.log(LogLevel.SUMMARY, "\nStarting Instruction List...\n--------------------------");
+			TraceChunk chunk;
+			while((chunk = trace.nextChunk()) != null) {
+				for(int i = 0; i < chunk.getCount(); i++) {
+					if(chunk.getOp(i) == TraceChunk.BAD_LINE)
+						EventLog.log(LogLevel.SUMMARY, "Incorrect Instruction Format.");
+					else
+						access(chunk.getOp(i), chunk.getAddress(i), 100 - iter);
+					if(EventLog.enabled(LogLevel.ACCESS))
+						EventLog.log(LogLevel.ACCESS, "Latency of Cache Access: " + mh.getCurrentLatency() + "\n");
+				}
+			}
 		}
-
-		if(instruction[0].compareTo("r") == 0) {
+	}
+	
+	/**
+	 * Run every access of a binary trace. Writes without data in the trace
+	 * get the same made-up data as text traces.
+	 */
+	private static void replay(String filename) throws IOException {
+		try(TraceReader trace = new TraceReader(filename)) {
+			EventLog.log(LogLevel.SUMMARY, "\nStarting Instruction List...\n--------------------------");
+			while(trace.next()) {
+				access(trace.getOp(), trace.getAddress(), trace.hasData() ? trace.getData() : 100 - iter);
+				if(EventLog.enabled(LogLevel.ACCESS))
+					EventLog.log(LogLevel.ACCESS, "Latency of Cache Access: " + mh.getCurrentLatency() + "\n");
+			}
+		}
+	}
+	
+	/**
+	 * Send one access to the memory heirarchy
+	 */
+	private static void access(int op, int address, int data) {
+		if(op == TraceFormat.READ) {
 			mh.readData(address); 
 		}
 		else {
 			mh.writeData(address, data);
 			iter++;
 		}
-
 	}
 	
     private static boolean isPowerOfTwo(int n) 
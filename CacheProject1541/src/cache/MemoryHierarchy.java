@@ -1,5 +1,8 @@
 package cache;
 
+import java.io.File;
+import java.io.IOException;
+
 public class MemoryHierarchy {
 	private int layers;				// # of Layers/Caches in memory hierarchy
 	private int policy;				// Write/Allocate Policy of hierarchy: 0 for write-back and write-allocate; 1 for write-through and non-write-allocate
@@ -9,6 +12,16 @@ public class MemoryHierarchy {
 	private int mem;
 	private int memLatency;
 	private int currLatency;
+	private boolean storeData;		// False when the caches are tag-only and no block data is moved
+	private int[] sizes;			// Sizes of the caches, kept to rebuild a cache sharded
+	private int[] setAssociatives;	// # of sets within each cache
+	private IndexFunction[] indexFunctions;	// Index functions of the caches, null for modulo indexing
+	private ReplacementType[] replacements;	// Replacement policies of the caches, null for LRU
+	private MetricsRegistry metrics;	// Counts of every cache and of memory, snapshotted every so many accesses
+	private long accesses;			// # of reads and writes so far
+	private long charged;			// Latency of every access so far, to find the latency of the next one
+	private InclusionPolicy inclusion;	// How the blocks of each cache relate to the caches below it
+	private InclusionMetrics inclusionMetrics;	// Back-invalidations and moves made to keep to the inclusion policy
 	
 	/*
 	 * TODO Add policy				- Done
@@ -29,6 +42,38 @@ public class MemoryHierarchy {
 	 * @param latencies			-> 		Array of latencies of the caches
 	 */
 	public MemoryHierarchy(int layers, int policy, int blocksize, int outstandingMisses, int[] sizes, int[] setAssociatives, int[] latencies) {
+		this(layers, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies, null);
+	}
+	
+	
+	/**
+	 * Initialize the Memory Hierarchy with custom index functions
+	 * 
+	 * @param indexFunctions	->		Array of index functions of the caches, null for modulo indexing
+	 */
+	public MemoryHierarchy(int layers, int policy, int blocksize, int outstandingMisses, int[] sizes, int[] setAssociatives, int[] latencies, IndexFunction[] indexFunctions) {
+		this(layers, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies, indexFunctions, true);
+	}
+	
+	
+	/**
+	 * Initialize the Memory Hierarchy with custom index functions and data mode
+	 * 
+	 * @param indexFunctions	->		Array of index functions of the caches, null for modulo indexing
+	 * @param storeData			->		False to simulate tags only. Hits, misses, dirty bits and latency
+	 * 									are the same, but no block data is stored or copied.
+	 */
+	public MemoryHierarchy(int layers, int policy, int blocksize, int outstandingMisses, int[] sizes, int[] setAssociatives, int[] latencies, IndexFunction[] indexFunctions, boolean storeData) {
+		this(layers, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies, indexFunctions, null, storeData);
+	}
+	
+	
+	/**
+	 * Initialize the Memory Hierarchy with custom index functions, replacement policies and data mode
+	 * 
+	 * @param replacements		->		Array of replacement policies of the caches, null for LRU
+	 */
+	public MemoryHierarchy(int layers, int policy, int blocksize, int outstandingMisses, int[] sizes, int[] setAssociatives, int[] latencies, IndexFunction[] indexFunctions, ReplacementType[] replacements, boolean storeData) {
 		this.layers = layers;
 		this.policy = policy;
 		this.blocksize = blocksize;
@@ -37,36 +82,74 @@ public class MemoryHierarchy {
 		this.mem = 1;
 		this.memLatency = 0;
 		this.currLatency = 0;
+		this.storeData = storeData;
+		this.sizes = sizes;
+		this.setAssociatives = setAssociatives;
+		this.indexFunctions = indexFunctions;
+		this.replacements = replacements;
 		
 		// Initialize each cache
 		for(int i = 0; i < this.layers; i++) {
-			this.caches[i] = new Cache(sizes[i], setAssociatives[i], latencies[i], blocksize);
+			IndexFunction indexFunction = indexFunctions == null ? null : indexFunctions[i];
+			ReplacementPolicy replacement = null;
+			if(replacements != null && replacements[i] != null)
+				replacement = replacements[i].create(sizes[i]/setAssociatives[i], setAssociatives[i]);
+			this.caches[i] = new Cache(sizes[i], setAssociatives[i], latencies[i], blocksize, indexFunction, replacement, storeData);
 		}
+		this.metrics = new MetricsRegistry(this.caches, "access");
+		this.inclusion = InclusionPolicy.NINE;
+		this.inclusionMetrics = new InclusionMetrics(this.layers);
+	}
+	
+	
+	/**
+	 * Set how the blocks of each cache relate to the caches below it. NINE unless set.
+	 * Must be set before the first access.
+	 */
+	public void setInclusionPolicy(InclusionPolicy inclusion) {
+		this.inclusion = inclusion;
 	}
 	
 	
 	public void writeData(int address, int data) {
-		System.out.println(data);
+		if(this.inclusion == InclusionPolicy.EXCLUSIVE && this.policy == 0) {
+			writeExclusive(address, data);
+			return;
+		}
+		int level = this.layers;	// First cache the write hit in, memory if none
+		if(EventLog.enabled(LogLevel.DEBUG))
+			EventLog.log(LogLevel.DEBUG, Integer.toString(data));
 		// Write Data into each cache level IF there is a new row 
 		for(int cache = 0; cache < this.layers; cache++) {
-			System.out.println("Writing At Cache " + cache);
+			if(EventLog.enabled(LogLevel.DEBUG))
+				EventLog.log(LogLevel.DEBUG, "Writing At Cache " + cache);
 			//Write-Back/Allocate
 			if(policy == 0) {
 				CacheRow evictedRow = this.caches[cache].writeBackData(address, data);
+				if(evictedRow == null && level == this.layers)
+					level = cache;
 				
 				//Perfect write, no allocation needed. No copying needed.
 				if(cache == 0 && evictedRow == null) break;
 				
-				System.out.println("Current Outstanding Misses: " + this.caches[cache].getCurrMisses());
+				if(EventLog.enabled(LogLevel.DEBUG))
+					EventLog.log(LogLevel.DEBUG, "Current Outstanding Misses: " + this.caches[cache].getCurrMisses());
 				
+				// An inclusive hierarchy takes the row's block out of the caches above and writes it back to the next cache
+				if(this.inclusion == InclusionPolicy.INCLUSIVE) {
+					if(evictedRow != null)
+						evicted(cache, evictedRow);
+				}
 				// We had to evict a row, now must write it back to memory (Write-Back Policy)
 				// We do NOT have to write it to the other caches, since they are kept up to date.
-				if(evictedRow != null && evictedRow.getDirty()) {
+				else if(evictedRow != null && evictedRow.getDirty()) {
 					// Fake memory Write
-					System.out.println("MEMORY WRITE!");
+					EventLog.log(LogLevel.ACCESS, "MEMORY WRITE!");
 					this.memLatency += 100 + this.caches[this.caches.length - 1].getLatency();
+					this.metrics.countMemoryWrite();
 				}
-				System.out.println("Current Outstanding Misses: " + this.caches[cache].getCurrMisses());
+				if(EventLog.enabled(LogLevel.DEBUG))
+					EventLog.log(LogLevel.DEBUG, "Current Outstanding Misses: " + this.caches[cache].getCurrMisses());
 			}
 			else {
 				this.caches[cache].writeThroughData(address, data);
@@ -74,25 +157,29 @@ public class MemoryHierarchy {
 		}
 		if(this.policy == 1) {
 			// Write into memory as well. Fake memory write
-			System.out.println("MEMORY WRITE!");
+			EventLog.log(LogLevel.ACCESS, "MEMORY WRITE!");
 			this.memLatency += 100 + this.caches[this.caches.length - 1].getLatency();
+			this.metrics.countMemoryWrite();
 		}
+		this.metrics.recordLatency(1, level, chargeLatency());
+		this.metrics.advance(++this.accesses);
 	}
 	
 	public void readData(int address) {
-		int[] data = new int[this.blocksize];
+		int[] data = this.storeData ? new int[this.blocksize] : null;
 		boolean hit = false;
 		
 		int c;
 		for(c = 0; c < this.layers; c++) {
 			ValidData cacheResult = this.caches[c].readDataFromCache(address);
 			
-			System.out.println("Reading At Cache " + c);
+			if(EventLog.enabled(LogLevel.DEBUG))
+				EventLog.log(LogLevel.DEBUG, "Reading At Cache " + c);
 			
 			if(cacheResult.getValid()) {
 				data = cacheResult.getData();
 				hit = true;
-				System.out.println("READ HIT!");
+				EventLog.log(LogLevel.ACCESS, "READ HIT!");
 				break;
 			}
 			//System.out.println("Current Outstanding Misses: " + this.caches[c].getCurrMisses());
@@ -101,40 +188,278 @@ public class MemoryHierarchy {
 		
 		// Complete cache miss. Must read from Memory.
 		if(!hit) {
-			System.out.println("READ MISS!");
+			EventLog.log(LogLevel.ACCESS, "READ MISS!");
 			this.memLatency += 100 + this.caches[this.caches.length - 1].getLatency();
-			int block = (address % this.blocksize);
-			for(int i = 0; i < this.blocksize; i++) {
-				if(i == block)
-					data[i] = this.mem;
-				else
-					data[i] = 0;
+			this.metrics.countMemoryRead();
+			if(this.storeData) {
+				int block = (address % this.blocksize);
+				for(int i = 0; i < this.blocksize; i++) {
+					if(i == block)
+						data[i] = this.mem;
+					else
+						data[i] = 0;
+				}
 			}
 			this.mem++;
 		}
 		
+		// An exclusive hierarchy moves the block up from where it was found into the first cache only
+		if(this.inclusion == InclusionPolicy.EXCLUSIVE) {
+			boolean dirty = false;
+			if(hit && c > 0) {
+				dirty = this.caches[c].invalidate(address).getDirty();
+				this.inclusionMetrics.countMovedUp(c);
+			}
+			if(c > 0)
+				evicted(0, this.caches[0].evictRow(address, data, dirty));
+			// The caches between missed too, but are not filled
+			for(int i = 1; i < c; i++)
+				this.caches[i].missResolved();
+		}
+		// An inclusive hierarchy fills every cache above the hit, keeping the blocks they evict in order
+		else if(this.inclusion == InclusionPolicy.INCLUSIVE) {
+			for(int i = 0; i < c; i++)
+				evicted(i, this.caches[i].evictRow(address, data));
+		}
 		//Update the layers of cache
-		for(int i = 0; i < c; i++) {
+		else for(int i = 0; i < c; i++) {
 			CacheRow evictedRow = this.caches[i].evictRow(address, data);
 			//System.out.println("Current Outstanding Misses: " + this.caches[i].getCurrMisses());
 			// Write-Back Action
 			if(evictedRow.getDirty()) {
-				int evictAddress = (evictedRow.getTag() << (int)Math.floor(this.caches[i].getIndexSize()/2) | evictedRow.getIndex());
+				int evictAddress = this.caches[i].getRowAddress(evictedRow);
 				
 				for(int j = i+1; j < this.layers; j++) {
 					int block = (evictAddress % blocksize);
-					CacheRow temp = this.caches[j].evictRow(evictAddress, evictedRow.getBlockData());
+					// Not a miss of the deeper cache, so its outstanding misses are left alone
+					CacheRow temp = this.caches[j].moveIn(evictAddress, evictedRow.getBlockData(), false);
 					
 					
 					//This evicted row should never be dirty since its within deeper caches, thus never needing to be saved.
 					//Can be wrong about this TODO
-					if(temp != null) System.out.println("OOOPS PLEASE FIX");
+					if(temp != null) EventLog.log(LogLevel.ACCESS, "OOOPS PLEASE FIX");
 				}
 			}
 		}
+		this.metrics.recordLatency(0, c, chargeLatency());
+		this.metrics.advance(++this.accesses);
+	}
+	
+	
+	/**
+	 * Write with write-back under an exclusive hierarchy. Only the first cache
+	 * allocates. On a miss there the lower caches are read for the block, and
+	 * one that has it gives it up to the first cache.
+	 */
+	private void writeExclusive(int address, int data) {
+		int level = 0;		// Cache the block was found in, memory if none
+		CacheRow moved = null;
+		if(!this.caches[0].contains(address)) {
+			for(level = 1; level < this.layers; level++) {
+				if(this.caches[level].readDataFromCache(address).getValid()) {
+					moved = this.caches[level].invalidate(address);
+					this.inclusionMetrics.countMovedUp(level);
+					break;
+				}
+			}
+		}
+		
+		// The lower caches read before the one that had the block are not filled
+		for(int i = 1; i < level; i++)
+			this.caches[i].missResolved();
+		
+		CacheRow evictedRow = this.caches[0].writeBackData(address, data);
+		if(moved != null) {
+			int[] block = moved.getBlockData();
+			if(this.storeData)
+				block[address % this.blocksize] = data;
+			this.caches[0].writeBackBlock(address, block);
+		}
+		if(evictedRow != null)
+			evicted(0, evictedRow);
+		this.metrics.recordLatency(1, level, chargeLatency());
+		this.metrics.advance(++this.accesses);
 	}
 	
 	
+	/**
+	 * Send a row a cache evicted on its way under the inclusion policy.
+	 * An inclusive hierarchy first takes the row's block out of every cache above,
+	 * and the newest dirty copy among them goes down instead. An exclusive one moves
+	 * the row into the next cache. Otherwise a dirty row is written back to the next
+	 * cache, or to memory below the last.
+	 * 
+	 * @param level		->		Index of the cache that evicted the row
+	 * @param row		->		Row evicted, nothing is done if it is invalid
+	 */
+	private void evicted(int level, CacheRow row) {
+		if(!row.getValid())
+			return;
+		int address = this.caches[level].getRowAddress(row);
+		int[] data = row.getBlockData();
+		boolean dirty = row.getDirty();
+		
+		if(this.inclusion == InclusionPolicy.INCLUSIVE) {
+			// Closest to the first cache last, so its copy wins if several are dirty
+			for(int i = level - 1; i >= 0; i--) {
+				CacheRow copy = this.caches[i].invalidate(address);
+				if(copy != null) {
+					this.inclusionMetrics.countBackInvalidation(i, copy.getDirty());
+					if(copy.getDirty()) {
+						data = copy.getBlockData();
+						dirty = true;
+					}
+				}
+			}
+		}
+		
+		if(this.inclusion == InclusionPolicy.EXCLUSIVE && level < this.layers - 1) {
+			this.inclusionMetrics.countMovedDown(level);
+			evicted(level + 1, this.caches[level + 1].moveIn(address, data, dirty));
+		}
+		// Memory is already up to date under write-through
+		else if(dirty && this.policy == 0)
+			writeBack(level + 1, address, data);
+	}
+	
+	
+	/**
+	 * Write a dirty block back into a cache, in place if it holds the block, or into memory
+	 * 
+	 * @param level		->		Index of the cache, the # of caches for memory
+	 */
+	private void writeBack(int level, int address, int[] data) {
+		if(level == this.layers) {
+			// Fake memory Write
+			EventLog.log(LogLevel.ACCESS, "MEMORY WRITE!");
+			this.memLatency += 100 + this.caches[this.caches.length - 1].getLatency();
+			this.metrics.countMemoryWrite();
+		}
+		else if(!this.caches[level].writeBackBlock(address, data))
+			evicted(level, this.caches[level].moveIn(address, data, true));
+	}
+	
+	
+	/**
+	 * Latency added since the last access, charged to the one that just ran.
+	 * Counted from the caches' metrics rather than their total latency, so a
+	 * sharded first cache is charged as its outcomes are played back. Victim
+	 * cache lookups are charged on top.
+	 */
+	private int chargeLatency() {
+		long total = this.memLatency;
+		for(Cache c : this.caches)
+			total += (long) c.getLatency() * (c.getMetrics().getReads() + c.getMetrics().getWrites()) + c.getVictimLatency();
+		int latency = (int) (total - this.charged);
+		this.charged = total;
+		return latency;
+	}
+	
+	
+	/**
+	 * Write the whole state of the hierarchy to a checkpoint file, so later runs
+	 * can start from it with restore() instead of running the same warm-up.
+	 * Nothing is left in the file's place if writing fails.
+	 * 
+	 * @param filename
+	 * @throws IOException if the file cannot be written, or the first cache is sharded
+	 */
+	public void checkpoint(String filename) throws IOException {
+		try(CheckpointWriter out = new CheckpointWriter(filename, CheckpointFormat.MEMORY_HIERARCHY)) {
+			out.writeInt(this.layers);
+			out.writeInt(this.policy);
+			out.writeInt(this.blocksize);
+			out.writeInt(this.mem);
+			out.writeInt(this.memLatency);
+			out.writeInt(this.currLatency);
+			out.writeLong(this.accesses);
+			out.writeLong(this.charged);
+			this.metrics.save(out);
+			out.writeString(this.inclusion.name());
+			this.inclusionMetrics.save(out);
+			for(Cache c : this.caches)
+				c.save(out);
+		} catch(IOException | RuntimeException e) {
+			// A partial checkpoint would only fail later, on restore
+			new File(filename).delete();
+			throw e;
+		}
+	}
+	
+	
+	/**
+	 * Load a checkpoint written by a hierarchy of the same shape, replacing the
+	 * whole state of this one. The run carries on where the saved one stopped.
+	 * 
+	 * @param filename
+	 * @throws IOException if the file is not a checkpoint of this shape
+	 */
+	public void restore(String filename) throws IOException {
+		try(CheckpointReader in = new CheckpointReader(filename, CheckpointFormat.MEMORY_HIERARCHY)) {
+			in.expect(this.layers, "# of caches");
+			in.expect(this.policy, "policy");
+			in.expect(this.blocksize, "blocksize");
+			this.mem = in.readInt();
+			this.memLatency = in.readInt();
+			this.currLatency = in.readInt();
+			this.accesses = in.readLong();
+			this.charged = in.readLong();
+			this.metrics.restore(in, this.accesses);
+			in.expect(this.inclusion.name(), "inclusion policy");
+			this.inclusionMetrics.restore(in);
+			for(Cache c : this.caches)
+				c.restore(in);
+		}
+	}
+	
+	
+	/**
+	 * Run a whole trace with the first cache split by index across threads.
+	 * The first cache is simulated up front by a ShardedCache, then the trace
+	 * is replayed as usual with that cache playing back its recorded outcomes,
+	 * so every counter matches a sequential run. Only the deeper caches run in
+	 * order. The first cache's own events are not logged.
+	 * 
+	 * @param trace
+	 * @param shards		->		# of parts to split the first cache into
+	 * @throws IllegalArgumentException if the hierarchy keeps block data or is not NINE, or the first cache is skewed or has a victim cache
+	 * @throws IllegalStateException if the first cache has already been used, such as by a restore
+	 */
+	public void replaySharded(TraceBuffer trace, int shards) {
+		if(this.storeData)
+			throw new IllegalArgumentException("Sharded simulation needs a tag-only hierarchy");
+		if(this.inclusion != InclusionPolicy.NINE)
+			throw new IllegalArgumentException("Sharded simulation cannot move blocks into or out of a first cache played back from a recording");
+		if(this.caches[0].getVictimCache() != null)
+			throw new IllegalArgumentException("Sharded simulation cannot split a first cache with a victim cache");
+		if(this.caches[0].getAccesses() > 0)
+			throw new IllegalStateException("Sharded simulation must start from a cold first cache");
+		
+		IndexFunction indexFunction = this.indexFunctions == null ? null : this.indexFunctions[0];
+		ReplacementType replacement = this.replacements == null ? null : this.replacements[0];
+		ShardedCache first = new ShardedCache(this.sizes[0], this.setAssociatives[0], this.caches[0].getLatency(), this.blocksize, indexFunction, replacement, shards);
+		if(this.caches[0].getMissClassifier() != null)
+			first.enableMissClassification();
+		first.run(trace, this.policy);
+		this.caches[0] = first;
+		trace.replay(this);
+	}
+	
+	
+    /**
+     * Get the inclusion policy
+     */
+	public InclusionPolicy getInclusionPolicy() {
+		return this.inclusion;
+	}
+	
+    /**
+     * Get the counts of back-invalidations and moves between caches
+     */
+	public InclusionMetrics getInclusionMetrics() {
+		return this.inclusionMetrics;
+	}
+	
     /**
      * Get Caches
      */
@@ -142,6 +467,20 @@ public class MemoryHierarchy {
 		return this.caches;
 	}
 	
+	/**
+	 * Get the counters of the caches and memory, and their snapshots
+	 */
+	public MetricsRegistry getMetrics() {
+		return this.metrics;
+	}
+	
+	/**
+	 * Get # of reads and writes so far
+	 */
+	public long getAccesses() {
+		return this.accesses;
+	}
+	
 	/**
 	 * Get Total Latency (Cache Accesses and Memory Access)
 	 */
@@ -176,9 +515,16 @@ public class MemoryHierarchy {
 			sb.append("\nCache " + i + " Total Latency: " + c.getTotalLatency());
 			sb.append("\nCache " + i + " Hit Rate: " + c.getHitRate());
 			sb.append("\nCache " + i + " Miss Rate: " + c.getMissRate());
+			if(c.getMissClassifier() != null)
+				sb.append("\nCache " + i + " " + c.getMissClassifier());
+			if(c.getVictimCache() != null)
+				sb.append("\nCache " + i + " " + c.getVictimCache());
 			sb.append("\n" + c.toString());
 			i++;
 		}
+		sb.append("\n\n" + this.inclusionMetrics.report(this.inclusion, this.caches));
+		sb.append("\n\nLatency Percentiles (cycles)");
+		sb.append(this.metrics.getLatencyReport());
 		return sb.toString();
 	}
 
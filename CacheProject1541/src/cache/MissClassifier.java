@@ -0,0 +1,191 @@
+package cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class MissClassifier {
+	private static final int NOT_CACHED = -2;	// Value of a block that was seen but is not in the shadow cache
+
+	private BlockMap blocks;		// Every block seen -> its node in the shadow cache, NOT_CACHED if not in it
+	private int[] nodeBlocks;		// Block held by each node of the shadow cache
+	private int[] newer;			// Node used just after each node, -1 for the most recent
+	private int[] older;			// Node used just before each node, -1 for the least recent
+	private int newest;				// Most recently used node, -1 when empty
+	private int oldest;				// Least recently used node, -1 when empty
+	private int used;				// # of nodes holding a block
+	private long compulsory;		// # of misses to blocks never seen before
+	private long capacity;			// # of misses the shadow cache missed too
+	private long conflict;			// # of misses the shadow cache hit
+	private long[] conflicts;		// # of conflict misses at each index
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Three C Miss Classification
+	 *
+	 * 	Every miss of a cache is one of:
+	 *
+	 * 	Compulsory	->	first reference to its block
+	 * 	Capacity	->	a fully associative LRU cache with as many
+	 * 					rows would have missed too
+	 * 	Conflict	->	that cache would have hit, so the miss came
+	 * 					from the index the block maps to (or from the
+	 * 					replacement policy not being true LRU)
+	 *
+	 * 	The shadow cache is a map from block to node plus a list
+	 * 	of nodes in order of use, so each access is O(1). The map
+	 * 	doubles as the set of blocks seen, since blocks that leave
+	 * 	the shadow cache stay in it as NOT_CACHED.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+
+	/**
+	 * Initialize a classifier for one cache
+	 *
+	 * @param rows			->		# of rows of the cache, the capacity of the shadow cache
+	 * @param indexSize		->		# of index locations, one conflict count each
+	 */
+	public MissClassifier(int rows, int indexSize) {
+		this.blocks = new BlockMap();
+		this.nodeBlocks = new int[rows];
+		this.newer = new int[rows];
+		this.older = new int[rows];
+		this.newest = -1;
+		this.oldest = -1;
+		this.conflicts = new long[indexSize];
+	}
+
+
+	/**
+	 * Record one access of the cache, classifying it if it missed.
+	 * Only accesses that fill the cache on a miss should be recorded.
+	 *
+	 * @param block			->		Block address, the address without its block offset
+	 * @param index			->		Index the block maps to
+	 * @param hit			->		True if the cache hit
+	 */
+	public void access(int block, int index, boolean hit) {
+		int node = this.blocks.get(block);
+		if(!hit) {
+			if(node == -1)
+				this.compulsory++;
+			else if(node == NOT_CACHED)
+				this.capacity++;
+			else {
+				this.conflict++;
+				this.conflicts[index]++;
+			}
+		}
+
+		if(node >= 0) {
+			unlink(node);
+		}
+		else if(this.used < this.nodeBlocks.length) {
+			node = this.used++;
+		}
+		else {
+			node = this.oldest;
+			unlink(node);
+			this.blocks.put(this.nodeBlocks[node], NOT_CACHED);
+		}
+		this.nodeBlocks[node] = block;
+		this.blocks.put(block, node);
+		pushNewest(node);
+	}
+
+
+	/**
+	 * Write the shadow cache, the blocks seen and the counts to a checkpoint
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		this.blocks.save(out);
+		out.writeInts(this.nodeBlocks);
+		out.writeInts(this.newer);
+		out.writeInts(this.older);
+		out.writeInt(this.newest);
+		out.writeInt(this.oldest);
+		out.writeInt(this.used);
+		out.writeLong(this.compulsory);
+		out.writeLong(this.capacity);
+		out.writeLong(this.conflict);
+		out.writeLongs(this.conflicts);
+	}
+
+
+	/**
+	 * Read back what save() wrote, into a classifier of the same shape
+	 *
+	 * @throws IOException if the checkpoint holds a classifier of another shape
+	 */
+	public void restore(CheckpointReader in) throws IOException {
+		this.blocks.restore(in);
+		in.readInts(this.nodeBlocks);
+		in.readInts(this.newer);
+		in.readInts(this.older);
+		this.newest = in.readInt();
+		this.oldest = in.readInt();
+		this.used = in.readInt();
+		this.compulsory = in.readLong();
+		this.capacity = in.readLong();
+		this.conflict = in.readLong();
+		in.readLongs(this.conflicts);
+	}
+
+
+	/**
+	 * Take a node out of the use order
+	 */
+	private void unlink(int node) {
+		if(this.newer[node] == -1)
+			this.newest = this.older[node];
+		else
+			this.older[this.newer[node]] = this.older[node];
+		if(this.older[node] == -1)
+			this.oldest = this.newer[node];
+		else
+			this.newer[this.older[node]] = this.newer[node];
+	}
+
+
+	/**
+	 * Put a node at the most recently used end
+	 */
+	private void pushNewest(int node) {
+		this.newer[node] = -1;
+		this.older[node] = this.newest;
+		if(this.newest == -1)
+			this.oldest = node;
+		else
+			this.newer[this.newest] = node;
+		this.newest = node;
+	}
+
+
+	// Getter Functions
+
+	public long getCompulsory() {
+		return this.compulsory;
+	}
+
+	public long getCapacity() {
+		return this.capacity;
+	}
+
+	public long getConflict() {
+		return this.conflict;
+	}
+
+	/**
+	 * Get # of conflict misses at one index
+	 */
+	public long getConflicts(int index) {
+		return this.conflicts[index];
+	}
+
+
+	/**
+	 * Counts of each kind of miss, then the conflict misses of each index
+	 */
+	public String toString() {
+		return "Compulsory Misses: " + this.compulsory + ", Capacity Misses: " + this.capacity + ", Conflict Misses: " + this.conflict
+				+ "\nConflict Misses by Index: " + Arrays.toString(this.conflicts);
+	}
+}
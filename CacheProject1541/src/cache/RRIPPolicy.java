@@ -0,0 +1,81 @@
+package cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Re-reference interval prediction with 2-bit counters. A hit predicts a near
+ * re-reference (0) and the victim is a way predicted distant (3).
+ * 
+ * Empty rows are filled first. SRRIP inserts new blocks at 2. BRRIP inserts at 3, and only every 32nd fill
+ * of an index at 2, which keeps scans from flushing the cache.
+ */
+public class RRIPPolicy implements ReplacementPolicy {
+	private static final int MAX_RRPV = 3; // Distant re-reference
+	private static final int EMPTY = MAX_RRPV + 1; // Row never filled or invalidated, used before any other
+	private static final int BIMODAL_PERIOD = 32; // BRRIP inserts long once per period
+
+	private int ways; // # of ways in one index
+	private boolean bimodal; // True for BRRIP, false for SRRIP
+	private byte[] rrpv; // Re-reference prediction of every row
+	private int[] fills; // # of fills of every index, for BRRIP
+
+	public RRIPPolicy(int indexSize, int ways, boolean bimodal) {
+		this.ways = ways;
+		this.bimodal = bimodal;
+		this.rrpv = new byte[indexSize * ways];
+		this.fills = new int[indexSize];
+		Arrays.fill(this.rrpv, (byte) EMPTY);
+	}
+
+	public void touch(int index, int way) {
+		this.rrpv[index * this.ways + way] = 0;
+	}
+
+	public void fill(int index, int way) {
+		int insert = MAX_RRPV - 1;
+		if(this.bimodal && ++this.fills[index] % BIMODAL_PERIOD != 0)
+			insert = MAX_RRPV;
+		this.rrpv[index * this.ways + way] = (byte) insert;
+	}
+
+	public void invalidate(int index, int way) {
+		this.rrpv[index * this.ways + way] = EMPTY;
+	}
+
+	public int victim(int index) {
+		int base = index * this.ways;
+		int oldest = 0;
+		for(int way = 0; way < this.ways; way++) {
+			if(this.rrpv[base + way] == EMPTY)
+				return way;
+			if(this.rrpv[base + way] > this.rrpv[base + oldest])
+				oldest = way;
+		}
+		if(this.rrpv[base + oldest] == MAX_RRPV)
+			return oldest;
+
+		// Nobody is distant yet, age the whole index at once
+		int age = MAX_RRPV - this.rrpv[base + oldest];
+		for(int way = 0; way < this.ways; way++)
+			this.rrpv[base + way] += age;
+		return oldest;
+	}
+
+	public int rank(int index, int way) {
+		return this.rrpv[index * this.ways + way];
+	}
+
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeBoolean(this.bimodal);
+		out.writeBytes(this.rrpv);
+		out.writeInts(this.fills);
+	}
+
+	public void restore(CheckpointReader in) throws IOException {
+		if(in.readBoolean() != this.bimodal)
+			throw new IOException("Checkpoint has " + (this.bimodal ? "SRRIP" : "BRRIP") + " state, expected " + (this.bimodal ? "BRRIP" : "SRRIP"));
+		in.readBytes(this.rrpv);
+		in.readInts(this.fills);
+	}
+}
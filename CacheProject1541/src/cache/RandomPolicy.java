@@ -0,0 +1,50 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Random replacement. Every index has its own xorshift generator, so the
+ * victims of one index do not depend on accesses to any other index.
+ */
+public class RandomPolicy implements ReplacementPolicy {
+	private int ways; // # of ways in one index
+	private int[] state; // Generator state of every index
+
+	public RandomPolicy(int indexSize, int ways, int seed) {
+		this.ways = ways;
+		this.state = new int[indexSize];
+		for(int index = 0; index < indexSize; index++)
+			this.state[index] = ((index + 1) * 0x9E3779B9) ^ seed | 1;
+	}
+
+	public void touch(int index, int way) {
+		// Random replacement keeps no history
+	}
+
+	public void fill(int index, int way) {
+	}
+
+	public void invalidate(int index, int way) {
+	}
+
+	public int victim(int index) {
+		int x = this.state[index];
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		this.state[index] = x;
+		return (int) ((x & 0xFFFFFFFFL) % this.ways);
+	}
+
+	public int rank(int index, int way) {
+		return 0;
+	}
+
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeInts(this.state);
+	}
+
+	public void restore(CheckpointReader in) throws IOException {
+		in.readInts(this.state);
+	}
+}
@@ -0,0 +1,358 @@
+package cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+public class ShardedCache extends Cache {
+	private static final byte HIT = 1;		// Access hit
+	private static final byte VALID = 2;	// Evicted row was valid
+	private static final byte DIRTY = 4;	// Evicted row was dirty
+
+	private int size;				// Total Size of Cache
+	private int indexSize;			// # of index locations in one set
+	private AddressDecoder decoder;	// Routes addresses to shards by index
+	private Cache[] shards;			// Shard s owns every index where index % shards == s, as its index/shards
+	private int[] shardIndexBits;	// # of index bits of each shard
+	private TraceBuffer trace;		// Trace the outcomes were recorded for
+	private byte[] outcomes;		// HIT, VALID and DIRTY bits of every access
+	private int[] evictedRows;		// Row evicted by every missing access
+	private int[] evictedTags;		// Tag of the row evicted by every missing access
+	private int next;				// Next access to play back
+	private ValidData readResult;	// Reused read result
+	private CacheRow evicted;		// Reused evicted row
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Sharded Cache
+	 *
+	 * 	Accesses to different indices never touch the same rows or
+	 * 	replacement state, so a cache can be split by index and
+	 * 	each part simulated on its own thread.
+	 *
+	 * 	run() routes every access of a trace to the shard owning its
+	 * 	index, runs the shards in parallel on the fork-join pool, and
+	 * 	records what each access did. The cache then stands in for
+	 * 	the first level of a MemoryHierarchy replaying the same trace:
+	 * 	every call plays back the next recorded outcome, so the deeper
+	 * 	levels see exactly the hits, misses and evictions of a
+	 * 	sequential run, and all counters come out the same.
+	 *
+	 * 	The first level decides its hits without any data from below
+	 * 	only when no block data is kept, so shards are tag-only.
+	 * 	Skewed indexing spreads one address over several indices and
+	 * 	cannot be split, and only a power of 2 index size splits evenly.
+	 * 	Each shard only has rows for the indices it owns. It is handed
+	 * 	an address with the same tag and its own index in place of the
+	 * 	hashed one, and its rows are mapped back when read. This cache
+	 * 	keeps no rows of its own.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+
+	/**
+	 * Initialize a Blank Sharded Cache
+	 *
+	 * @param size
+	 * @param numSets
+	 * @param latency
+	 * @param blocksize
+	 * @param indexFunction		->		Maps addresses to an index, null for modulo indexing. Must not be skewed.
+	 * 									The # of index locations in one set must be a power of 2.
+	 * @param replacement		->		Replacement policy of every shard, null for LRU
+	 * @param shards			->		# of parts to split the indices into
+	 */
+	public ShardedCache(int size, int numSets, int latency, int blocksize, IndexFunction indexFunction, ReplacementType replacement, int shards) {
+		super(size, numSets, latency, blocksize, indexFunction);
+		this.size = size;
+		this.indexSize = size/numSets;
+		this.decoder = new AddressDecoder(this.indexSize, blocksize, indexFunction);
+		if(this.decoder.isSkewed())
+			throw new IllegalArgumentException("Skewed indexing cannot be sharded by index");
+		if(Integer.bitCount(this.indexSize) != 1)
+			throw new IllegalArgumentException("Sharding needs a power of 2 index size, got " + this.indexSize);
+
+		this.shards = new Cache[Math.max(1, Math.min(shards, this.indexSize))];
+		this.shardIndexBits = new int[this.shards.length];
+		for(int s = 0; s < this.shards.length; s++) {
+			int indices = (this.indexSize - s + this.shards.length - 1)/this.shards.length;
+			ReplacementPolicy policy = replacement == null ? null : replacement.create(indices, numSets);
+			this.shards[s] = new Cache(indices*numSets, numSets, latency, blocksize, null, policy, false);
+			this.shardIndexBits[s] = new AddressDecoder(indices, blocksize, null).getIndexBits();
+		}
+		this.readResult = new ValidData(false, null);
+		this.evicted = new CacheRow(0, 0, 0);
+	}
+
+
+	/**
+	 * Simulate every access of a trace on the shards and record the outcomes
+	 * for play back. Events are turned off while the shards run, since their
+	 * output would interleave.
+	 *
+	 * @param trace
+	 * @param policy	->		Write/Allocate Policy of the hierarchy the cache will be played back in
+	 */
+	public void run(TraceBuffer trace, int policy) {
+		int count = trace.getCount();
+		this.trace = trace;
+		this.outcomes = new byte[count];
+		this.evictedRows = new int[count];
+		this.evictedTags = new int[count];
+		this.next = 0;
+
+		// Route every access to the queue of the shard owning its index
+		int[] shardOf = new int[count];
+		int[] queueSizes = new int[this.shards.length];
+		for(int i = 0; i < count; i++) {
+			shardOf[i] = this.decoder.getIndex(trace.getAddress(i), 0) % this.shards.length;
+			queueSizes[shardOf[i]]++;
+		}
+		int[][] queues = new int[this.shards.length][];
+		for(int s = 0; s < this.shards.length; s++)
+			queues[s] = new int[queueSizes[s]];
+		int[] fill = new int[this.shards.length];
+		for(int i = 0; i < count; i++)
+			queues[shardOf[i]][fill[shardOf[i]]++] = i;
+
+		List<RecursiveAction> tasks = new ArrayList<>();
+		for(int s = 0; s < this.shards.length; s++) {
+			final int shard = s;
+			final int[] queue = queues[s];
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				protected void compute() {
+					for(int i : queue)
+						record(shard, trace, i, policy);
+				}
+			});
+		}
+
+		LogLevel level = EventLog.getLevel();
+		EventLog.setLevel(LogLevel.OFF);
+		try {
+			ForkJoinTask.invokeAll(tasks);
+		} finally {
+			EventLog.setLevel(level);
+		}
+	}
+
+
+	/**
+	 * Run one access on its shard the way MemoryHierarchy runs its first level,
+	 * and keep what happened
+	 */
+	private void record(int s, TraceBuffer trace, int i, int policy) {
+		Cache shard = this.shards[s];
+		int address = shardAddress(s, trace.getAddress(i));
+		CacheRow evictedRow;
+		if(trace.getOp(i) == TraceFormat.READ) {
+			if(shard.readDataFromCache(address).getValid()) {
+				this.outcomes[i] = HIT;
+				return;
+			}
+			evictedRow = shard.evictRow(address, null);
+		}
+		else if(policy == 0) {
+			evictedRow = shard.writeBackData(address, 0);
+			if(evictedRow == null) {
+				this.outcomes[i] = HIT;
+				return;
+			}
+		}
+		else {
+			long hits = shard.getMetrics().getHits();
+			shard.writeThroughData(address, 0);
+			if(shard.getMetrics().getHits() > hits)
+				this.outcomes[i] = HIT;
+			return;
+		}
+
+		this.outcomes[i] = (byte) ((evictedRow.getValid() ? VALID : 0) | (evictedRow.getDirty() ? DIRTY : 0));
+		this.evictedRows[i] = evictedRow.getSet()*this.indexSize + evictedRow.getIndex()*this.shards.length + s;
+		this.evictedTags[i] = evictedRow.getTag();
+	}
+
+
+	/**
+	 * Get the address a shard sees for an address it owns: the same tag and
+	 * block, with the shard's own index
+	 */
+	private int shardAddress(int s, int address) {
+		int index = this.decoder.getIndex(address, 0)/this.shards.length;
+		int blockBits = this.decoder.getBlockBits();
+		return (((this.decoder.getTag(address) << this.shardIndexBits[s]) | index) << blockBits) | this.decoder.getBlock(address);
+	}
+
+
+	/**
+	 * Play back the next recorded write-back write
+	 */
+	public CacheRow writeBackData(int address, int data) {
+		int i = nextAccess(address);
+		boolean hit = (this.outcomes[i] & HIT) != 0;
+		getMetrics().countWrite(hit);
+		classify(address, hit);
+		if(hit)
+			return null;
+		countEviction(i);
+		return evictedView(i);
+	}
+
+
+	/**
+	 * Play back the next recorded write-through write
+	 */
+	public void writeThroughData(int address, int data) {
+		int i = nextAccess(address);
+		getMetrics().countWrite((this.outcomes[i] & HIT) != 0);
+	}
+
+
+	/**
+	 * Play back the next recorded read
+	 */
+	public ValidData readDataFromCache(int address) {
+		int i = nextAccess(address);
+		this.readResult.setValid((this.outcomes[i] & HIT) != 0);
+		getMetrics().countRead(this.readResult.getValid());
+		classify(address, this.readResult.getValid());
+		return this.readResult;
+	}
+
+
+	/**
+	 * Play back the fill that followed the last read miss
+	 */
+	public CacheRow evictRow(int address, int[] data) {
+		countEviction(this.next - 1);
+		return evictedView(this.next - 1);
+	}
+
+
+	private int nextAccess(int address) {
+		if(this.trace == null || this.next == this.trace.getCount() || this.trace.getAddress(this.next) != address)
+			throw new IllegalStateException("Sharded cache must be played back over the trace it ran");
+		return this.next++;
+	}
+
+
+	private void countEviction(int i) {
+		getMetrics().countEviction((this.outcomes[i] & VALID) != 0, (this.outcomes[i] & DIRTY) != 0);
+	}
+
+
+	private CacheRow evictedView(int i) {
+		int row = this.evictedRows[i];
+		this.evicted.setSet(row / this.indexSize);
+		this.evicted.setIndex(row % this.indexSize);
+		this.evicted.setTag(this.evictedTags[i]);
+		this.evicted.setValid((this.outcomes[i] & VALID) != 0);
+		this.evicted.setDirty((this.outcomes[i] & DIRTY) != 0);
+		return this.evicted;
+	}
+
+
+	/**
+	 * The state of a sharded cache is spread over its shards and its recorded
+	 * outcomes, which only play back over the trace it ran.
+	 * 
+	 * @throws IOException always
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		throw new IOException("A sharded cache cannot be checkpointed");
+	}
+	
+	
+	/**
+	 * Get Total Latency of all shards
+	 */
+	public int getTotalLatency() {
+		return (int) (this.getLatency()*getAccesses());
+	}
+
+
+	/**
+	 * Get Hit Rate of all shards
+	 */
+	public double getHitRate() {
+		return (getAccesses() - getMisses())/getAccesses();
+	}
+
+
+	/**
+	 * Get Miss Rate of all shards
+	 */
+	public double getMissRate() {
+		return getMisses()/getAccesses();
+	}
+
+
+	/**
+	 * Get Current Amount of Misses of all shards
+	 */
+	public int getCurrMisses() {
+		int currMisses = 0;
+		for(Cache shard : this.shards)
+			currMisses += shard.getCurrMisses();
+		return currMisses;
+	}
+
+
+	/**
+	 * Add every block the shards hold, at the index it has in this cache
+	 */
+	public void collectBlocks(Set<Integer> blocks) {
+		for(int row = 0; row < this.size; row++) {
+			CacheRow view = getRowView(row);
+			if(view.getValid())
+				blocks.add(getRowAddress(view) >> this.decoder.getBlockBits());
+		}
+	}
+
+
+	double getAccesses() {
+		double accesses = 0;
+		for(Cache shard : this.shards)
+			accesses += shard.getAccesses();
+		return accesses;
+	}
+
+
+	double getMisses() {
+		double misses = 0;
+		for(Cache shard : this.shards)
+			misses += shard.getMisses();
+		return misses;
+	}
+
+
+	/**
+	 * Copy of a row from the shard that owns it, with the index it has in this cache
+	 */
+	CacheRow getRowView(int row) {
+		int index = row % this.indexSize;
+		Cache shard = this.shards[index % this.shards.length];
+		CacheRow view = shard.getRowView((row / this.indexSize)*shard.getIndexSize() + index/this.shards.length);
+		view.setIndex(index);
+		return view;
+	}
+
+
+	/**
+	 * Every row from the shard that owns it, in the same layout as Cache
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Valid\t| Dirty\t| Set\t| Index\t| LRU\t| Tag\t| DataBlock\n------------------------------------------------------------\n");
+
+		for(int i = 0; i < this.size;  i++) {
+			sb.append(getRowView(i));
+		}
+		sb.append("\n");
+
+		return sb.toString();
+	}
+}
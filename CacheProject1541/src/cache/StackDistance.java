@@ -0,0 +1,245 @@
+package cache;
+
+import java.io.IOException;
+
+public class StackDistance {
+	private AddressDecoder decoder;	// Same tag/index decode a Cache of this shape uses
+	private int indexSize;			// # of index locations in one set
+	private int maxWays;			// Largest associativity to report
+	private SetStack[] stacks;		// LRU stack of each index
+	private BlockMap slots;			// Block address -> its slot in its index's stack
+	private long[] distances;		// # of accesses at each stack distance below maxWays
+	private long far;				// # of re-references at maxWays or deeper
+	private long cold;				// # of first references
+	private long accesses;			// # of accesses
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Stack Distance (Mattson)
+	 *
+	 * 	The stack distance of an access is the # of other blocks
+	 * 	in its index used since the last access to its block. An
+	 * 	LRU cache with this index size and W ways hits exactly the
+	 * 	accesses with distance < W, so one pass gives the miss
+	 * 	ratio of every associativity, and with it every size.
+	 * 	Index size 1 is a fully associative cache.
+	 *
+	 * 	Each index keeps a Fenwick tree over its access slots with
+	 * 	a 1 on the latest slot of every block, so a distance is
+	 * 	one prefix sum. Slots are renumbered when they run out, so
+	 * 	each tree stays near the # of blocks the index has seen.
+	 *
+	 * 	This is true LRU, where every access updates the stack.
+	 * 	Cache only updates LRU on write hits and fills.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+
+	/**
+	 * Initialize an analyzer for one cache shape
+	 *
+	 * @param indexSize		->		# of index locations, 1 for fully associative
+	 * @param blocksize		->		Number of data locations within block
+	 * @param maxWays		->		Largest associativity to report
+	 */
+	public StackDistance(int indexSize, int blocksize, int maxWays) {
+		this.decoder = new AddressDecoder(indexSize, blocksize, null);
+		this.indexSize = indexSize;
+		this.maxWays = maxWays;
+		this.stacks = new SetStack[indexSize];
+		for(int i = 0; i < indexSize; i++)
+			this.stacks[i] = new SetStack();
+		this.slots = new BlockMap();
+		this.distances = new long[maxWays];
+	}
+
+
+	/**
+	 * Record one access
+	 */
+	public void access(int address) {
+		int block = address >> this.decoder.getBlockBits();
+		int distance = this.stacks[this.decoder.getIndex(address, 0)].access(block, this.slots);
+		if(distance < 0)
+			this.cold++;
+		else if(distance < this.maxWays)
+			this.distances[distance]++;
+		else
+			this.far++;
+		this.accesses++;
+	}
+
+
+	/**
+	 * Get the miss ratio of an LRU cache with this index size and the given # of ways
+	 */
+	public double getMissRatio(int ways) {
+		if(this.accesses == 0)
+			return 0;
+		long hits = 0;
+		for(int d = 0; d < Math.min(ways, this.maxWays); d++)
+			hits += this.distances[d];
+		return (double) (this.accesses - hits) / this.accesses;
+	}
+
+
+	/**
+	 * Get # of accesses at a stack distance, -1 for first references
+	 */
+	public long getCount(int distance) {
+		return distance < 0 ? this.cold : this.distances[distance];
+	}
+
+	/**
+	 * Get # of accesses
+	 */
+	public long getAccesses() {
+		return this.accesses;
+	}
+
+	/**
+	 * Get # of index locations
+	 */
+	public int getIndexSize() {
+		return this.indexSize;
+	}
+
+
+	/**
+	 * Miss ratio curve: one line per power of 2 ways up to maxWays
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Index Size %d (%d accesses, %d first references)\n", this.indexSize, this.accesses, this.cold));
+		sb.append(String.format("%8s | %10s | %10s\n", "Ways", "Size", "Miss Ratio"));
+		for(int ways = 1; ways <= this.maxWays; ways *= 2)
+			sb.append(String.format("%8d | %10d | %10.6f\n", ways, ways * this.indexSize, getMissRatio(ways)));
+		return sb.toString();
+	}
+
+
+	/**
+	 * Run the analyzer over a trace for a range of index sizes at once
+	 *
+	 * Usage: java cache.StackDistance <trace> <blocksize> <max ways> [<index size> ...]
+	 *
+	 * With no index sizes given only the fully associative curve is made.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3) {
+			System.out.println("Usage: java cache.StackDistance <trace> <blocksize> <max ways> [<index size> ...]");
+			return;
+		}
+		int blocksize = Integer.parseInt(args[1]);
+		int maxWays = Integer.parseInt(args[2]);
+		StackDistance[] analyzers = new StackDistance[Math.max(1, args.length - 3)];
+		for(int i = 0; i < analyzers.length; i++)
+			analyzers[i] = new StackDistance(args.length > 3 ? Integer.parseInt(args[i + 3]) : 1, blocksize, maxWays);
+
+		long start = System.nanoTime();
+		if(TraceReader.isTrace(args[0])) {
+			try(TraceReader trace = new TraceReader(args[0])) {
+				while(trace.next())
+					for(StackDistance analyzer : analyzers)
+						analyzer.access(trace.getAddress());
+			}
+		}
+		else {
+			try(TextTraceParser trace = new TextTraceParser(args[0])) {
+				TraceChunk chunk;
+				while((chunk = trace.nextChunk()) != null)
+					for(int i = 0; i < chunk.getCount(); i++)
+						if(chunk.getOp(i) != TraceChunk.BAD_LINE)
+							for(StackDistance analyzer : analyzers)
+								analyzer.access(chunk.getAddress(i));
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+
+		for(StackDistance analyzer : analyzers)
+			System.out.println(analyzer);
+		System.out.println(String.format("%d curves in %.1f ms", analyzers.length, elapsed / 1e6));
+	}
+
+
+	/**
+	 * LRU stack of one index
+	 */
+	private static class SetStack {
+		private int[] tree = new int[17];		// Fenwick tree over slots, 1 on the latest slot of each block
+		private int[] blocks = new int[16];		// Block in each slot
+		private boolean[] live = new boolean[16];	// True if the slot is its block's latest
+		private int next;						// Next free slot
+		private int liveCount;					// # of live slots
+
+		/**
+		 * Move a block to the top of the stack
+		 *
+		 * @return Its stack distance, -1 on a first reference
+		 */
+		int access(int block, BlockMap slots) {
+			int slot = slots.get(block);
+			int distance = -1;
+			if(slot >= 0) {
+				distance = this.liveCount - prefix(slot + 1);
+				add(slot, -1);
+				this.live[slot] = false;
+				this.liveCount--;
+			}
+
+			if(this.next == this.blocks.length)
+				compact(slots);
+			add(this.next, 1);
+			this.blocks[this.next] = block;
+			this.live[this.next] = true;
+			this.liveCount++;
+			slots.put(block, this.next);
+			this.next++;
+			return distance;
+		}
+
+		/**
+		 * Renumber the live slots from 0 in the same order, with room to grow
+		 */
+		private void compact(BlockMap slots) {
+			int capacity = Math.max(16, Integer.highestOneBit(this.liveCount) * 4);
+			int[] blocks = new int[capacity];
+			boolean[] live = new boolean[capacity];
+			int n = 0;
+			for(int s = 0; s < this.next; s++) {
+				if(this.live[s]) {
+					blocks[n] = this.blocks[s];
+					live[n] = true;
+					slots.put(blocks[n], n);
+					n++;
+				}
+			}
+			this.blocks = blocks;
+			this.live = live;
+			this.next = n;
+
+			// Linear-time Fenwick build
+			this.tree = new int[capacity + 1];
+			for(int i = 1; i <= capacity; i++) {
+				if(i <= n)
+					this.tree[i]++;
+				int parent = i + (i & -i);
+				if(parent <= capacity)
+					this.tree[parent] += this.tree[i];
+			}
+		}
+
+		private void add(int slot, int delta) {
+			for(int i = slot + 1; i < this.tree.length; i += i & -i)
+				this.tree[i] += delta;
+		}
+
+		/**
+		 * # of live slots below a slot #
+		 */
+		private int prefix(int count) {
+			int sum = 0;
+			for(int i = count; i > 0; i -= i & -i)
+				sum += this.tree[i];
+			return sum;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package cache;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+public class Sweep {
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Configuration Sweep
+	 *
+	 * 	Runs one trace against many hierarchies in one go. The trace
+	 * 	is decoded once into a shared TraceBuffer, then every
+	 * 	configuration is simulated as its own task on the fork-join
+	 * 	pool, so wall time grows with configurations / cores.
+	 *
+	 * 	Usage: java cache.Sweep <trace> <configuration file>
+	 *
+	 * 	The configuration file has one HierarchyConfig per line.
+	 * 	Blank lines and lines starting with # are skipped.
+	 * 	-Dcache.tagOnly and -Dcache.replacement work as in Main.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.out.println("Usage: java cache.Sweep <trace> <configuration file>");
+			return;
+		}
+
+		List<HierarchyConfig> configs = readConfigs(args[1]);
+		TraceBuffer trace = TraceBuffer.load(args[0]);
+		boolean storeData = !Boolean.getBoolean("cache.tagOnly");
+		ReplacementType replacement = ReplacementType.valueOf(System.getProperty("cache.replacement", "LRU"));
+
+		long start = System.nanoTime();
+		MemoryHierarchy[] results = run(trace, configs, replacement, storeData);
+		long elapsed = System.nanoTime() - start;
+
+		System.out.print(table(configs, results));
+		System.out.println(String.format("\n%d configurations x %d accesses in %.1f ms", configs.size(), trace.getCount(), elapsed / 1e6));
+	}
+
+
+	/**
+	 * Simulate every configuration over the same trace, in parallel.
+	 * Events are turned off while the hierarchies run, since their output would interleave.
+	 *
+	 * @return The finished hierarchies, in the same order as configs
+	 */
+	public static MemoryHierarchy[] run(TraceBuffer trace, List<HierarchyConfig> configs, ReplacementType replacement, boolean storeData) {
+		MemoryHierarchy[] results = new MemoryHierarchy[configs.size()];
+		List<RecursiveAction> tasks = new ArrayList<>();
+		for(int i = 0; i < configs.size(); i++) {
+			final int c = i;
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				protected void compute() {
+					MemoryHierarchy mh = configs.get(c).build(replacement, storeData);
+					trace.replay(mh);
+					results[c] = mh;
+				}
+			});
+		}
+
+		LogLevel level = EventLog.getLevel();
+		EventLog.setLevel(LogLevel.OFF);
+		try {
+			ForkJoinTask.invokeAll(tasks);
+		} finally {
+			EventLog.setLevel(level);
+		}
+		return results;
+	}
+
+
+	/**
+	 * One row per configuration: total latency, then the hit rate of each cache.
+	 */
+	public static String table(List<HierarchyConfig> configs, MemoryHierarchy[] results) {
+		int layers = 0;
+		int width = "Configuration".length();
+		for(HierarchyConfig config : configs) {
+			layers = Math.max(layers, config.getLayers());
+			width = Math.max(width, config.getSpec().length());
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-" + width + "s | %14s", "Configuration", "Total Latency"));
+		for(int l = 0; l < layers; l++)
+			sb.append(String.format(" | %-12s", "C" + l + " Hit Rate"));
+		sb.append("\n");
+
+		for(int i = 0; i < configs.size(); i++) {
+			Cache[] caches = results[i].getCaches();
+			sb.append(String.format("%-" + width + "s | %14d", configs.get(i).getSpec(), results[i].getLatency()));
+			for(int l = 0; l < layers; l++)
+				sb.append(l < caches.length ? String.format(" | %-12.4f", caches[l].getHitRate()) : String.format(" | %-12s", ""));
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Read a configuration file
+	 */
+	public static List<HierarchyConfig> readConfigs(String filename) throws IOException {
+		List<HierarchyConfig> configs = new ArrayList<>();
+		try(BufferedReader in = new BufferedReader(new FileReader(filename))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				line = line.trim();
+				if(!line.isEmpty() && !line.startsWith("#"))
+					configs.add(new HierarchyConfig(line));
+			}
+		}
+		return configs;
+	}
+}
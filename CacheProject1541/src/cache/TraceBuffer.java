@@ -0,0 +1,112 @@
+package cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class TraceBuffer {
+	private int[] ops;			// TraceFormat.READ or TraceFormat.WRITE, with TraceFormat.HAS_DATA when data was given
+	private int[] addresses;	// Address of each access
+	private int[] data;			// Data of each write that carries its own
+	private int count;			// # of accesses
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Shared Trace
+	 *
+	 * 	A whole trace decoded once into primitive arrays. Nothing
+	 * 	changes after load(), so any number of threads can replay
+	 * 	the same buffer at once.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+
+	private TraceBuffer(int capacity) {
+		this.ops = new int[capacity];
+		this.addresses = new int[capacity];
+		this.data = new int[capacity];
+	}
+
+
+	/**
+	 * Decode a text or binary trace. Malformed text lines are reported and left out.
+	 *
+	 * @param filename
+	 * @throws IOException if the file cannot be read
+	 */
+	public static TraceBuffer load(String filename) throws IOException {
+		TraceBuffer buffer = new TraceBuffer(1024);
+		if(TraceReader.isTrace(filename)) {
+			try(TraceReader trace = new TraceReader(filename)) {
+				while(trace.next())
+					buffer.add(trace.getOp() | (trace.hasData() ? TraceFormat.HAS_DATA : 0), trace.getAddress(), trace.getData());
+			}
+		}
+		else {
+			try(TextTraceParser trace = new TextTraceParser(filename)) {
+				TraceChunk chunk;
+				while((chunk = trace.nextChunk()) != null) {
+					for(int i = 0; i < chunk.getCount(); i++) {
+						if(chunk.getOp(i) == TraceChunk.BAD_LINE)
+							EventLog.log(LogLevel.SUMMARY, "Incorrect Instruction Format.");
+						else
+							buffer.add(chunk.getOp(i), chunk.getAddress(i), 0);
+					}
+				}
+			}
+		}
+		return buffer;
+	}
+
+
+	/**
+	 * Run every access against a memory hierarchy, the same way Main does.
+	 * Writes without data get Main's made-up data.
+	 */
+	public void replay(MemoryHierarchy mh) {
+		int iter = 0;
+		for(int i = 0; i < this.count; i++) {
+			if((this.ops[i] & TraceFormat.OP_MASK) == TraceFormat.READ) {
+				mh.readData(this.addresses[i]);
+			}
+			else {
+				mh.writeData(this.addresses[i], (this.ops[i] & TraceFormat.HAS_DATA) != 0 ? this.data[i] : 100 - iter);
+				iter++;
+			}
+		}
+	}
+
+
+	private void add(int op, int address, int d) {
+		if(this.count == this.ops.length) {
+			this.ops = Arrays.copyOf(this.ops, this.count * 2);
+			this.addresses = Arrays.copyOf(this.addresses, this.count * 2);
+			this.data = Arrays.copyOf(this.data, this.count * 2);
+		}
+		this.ops[this.count] = op;
+		this.addresses[this.count] = address;
+		this.data[this.count] = d;
+		this.count++;
+	}
+
+
+	// Getter Functions
+
+	/**
+	 * Get # of accesses
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Get op of an access, TraceFormat.READ or TraceFormat.WRITE
+	 */
+	public int getOp(int i) {
+		return this.ops[i] & TraceFormat.OP_MASK;
+	}
+
+	/**
+	 * Get address of an access
+	 */
+	public int getAddress(int i) {
+		return this.addresses[i];
+	}
+}
@@ -0,0 +1,161 @@
+package cache;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary trace through memory-mapped windows of the file, see
+ * TraceFormat for the layout.
+ * 
+ * The reader is a cursor: next() decodes one record into the reader itself and
+ * the getters return its fields, so replaying a trace allocates nothing per
+ * record. Windows are remapped as the cursor moves, so traces larger than 2GB
+ * can be read.
+ */
+public class TraceReader implements AutoCloseable {
+	private static final long WINDOW_SIZE = 1 << 26; // Bytes mapped at a time
+
+	private FileChannel channel; // Trace file
+	private long fileSize; // Length of the file in bytes
+	private MappedByteBuffer window; // Mapped part of the file
+	private long windowStart; // File position of the window's first byte
+	private long remaining; // # of records not yet read
+
+	private int op; // Operation of the current record
+	private int address; // Address of the current record
+	private int time; // Arrival time of the current record
+	private int data; // Data of the current record, if it has any
+	private boolean hasData; // True if the current record carries data
+
+	/**
+	 * Open a trace and map its first window.
+	 * 
+	 * @param filename
+	 * @throws IOException if the file is not a trace
+	 */
+	public TraceReader(String filename) throws IOException {
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		this.fileSize = this.channel.size();
+		if(this.fileSize < TraceFormat.HEADER_SIZE) {
+			this.channel.close();
+			throw new IOException(filename + " is too short to be a trace");
+		}
+		map(0);
+		if(this.window.getInt() != TraceFormat.MAGIC || this.window.get() != TraceFormat.VERSION) {
+			this.channel.close();
+			throw new IOException(filename + " is not a version " + TraceFormat.VERSION + " trace");
+		}
+		this.remaining = this.window.getLong(TraceFormat.COUNT_OFFSET);
+		this.window.position(TraceFormat.HEADER_SIZE);
+	}
+
+	/**
+	 * True if a file starts with the trace magic number.
+	 * 
+	 * @param filename
+	 */
+	public static boolean isTrace(String filename) {
+		try(DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+			return Integer.reverseBytes(in.readInt()) == TraceFormat.MAGIC;
+		} catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Move to the next record.
+	 * 
+	 * @return False once every record has been read
+	 * @throws IOException if the file ends before the header's record count
+	 */
+	public boolean next() throws IOException {
+		if(this.remaining == 0)
+			return false;
+		if(this.window.remaining() < TraceFormat.MAX_RECORD_SIZE
+				&& this.windowStart + this.window.limit() < this.fileSize)
+			map(this.windowStart + this.window.position());
+		if(!this.window.hasRemaining())
+			throw new IOException("Trace ends with " + this.remaining + " records missing");
+
+		int tag = this.window.get();
+		this.op = tag & TraceFormat.OP_MASK;
+		this.address += TraceFormat.unzigzag(getVarint());
+		this.time += TraceFormat.unzigzag(getVarint());
+		this.hasData = (tag & TraceFormat.HAS_DATA) != 0;
+		if(this.hasData)
+			this.data = TraceFormat.unzigzag(getVarint());
+		this.remaining--;
+		return true;
+	}
+
+	/**
+	 * Get operation of the current record, TraceFormat.READ or TraceFormat.WRITE
+	 */
+	public int getOp() {
+		return this.op;
+	}
+
+	/**
+	 * Get address of the current record
+	 */
+	public int getAddress() {
+		return this.address;
+	}
+
+	/**
+	 * Get arrival time of the current record
+	 */
+	public int getTime() {
+		return this.time;
+	}
+
+	/**
+	 * True if the current record carries its own data
+	 */
+	public boolean hasData() {
+		return this.hasData;
+	}
+
+	/**
+	 * Get data of the current record, only meaningful when hasData()
+	 */
+	public int getData() {
+		return this.data;
+	}
+
+	/**
+	 * Get # of records not yet read
+	 */
+	public long getRemaining() {
+		return this.remaining;
+	}
+
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	private void map(long position) throws IOException {
+		long length = Math.min(WINDOW_SIZE, this.fileSize - position);
+		this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		this.window.order(ByteOrder.LITTLE_ENDIAN);
+		this.windowStart = position;
+	}
+
+	private int getVarint() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = this.window.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+		return value;
+	}
+}
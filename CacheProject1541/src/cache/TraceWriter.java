@@ -0,0 +1,110 @@
+package cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a binary trace, see TraceFormat for the layout.
+ */
+public class TraceWriter implements AutoCloseable {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private FileChannel channel; // Output file
+	private ByteBuffer buffer; // Records waiting to be written
+	private long count; // # of records written
+	private int lastAddress; // Address of the last record, for deltas
+	private int lastTime; // Arrival time of the last record, for deltas
+
+	/**
+	 * Create or replace a trace file.
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public TraceWriter(String filename) throws IOException {
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.buffer.putInt(TraceFormat.MAGIC);
+		this.buffer.put(TraceFormat.VERSION);
+		this.buffer.put(new byte[3]);
+		this.buffer.putLong(0); // Patched with the record count on close
+	}
+
+	/**
+	 * Add a record without data. Readers pick the data for writes themselves.
+	 * 
+	 * @param op      -> TraceFormat.READ or TraceFormat.WRITE
+	 * @param address
+	 * @param time    -> Arrival time
+	 * @throws IOException
+	 */
+	public void write(int op, int address, int time) throws IOException {
+		if(this.buffer.remaining() < TraceFormat.MAX_RECORD_SIZE)
+			flush();
+		this.buffer.put((byte) (op & TraceFormat.OP_MASK));
+		putDeltas(address, time);
+	}
+
+	/**
+	 * Add a record that carries the data to write.
+	 * 
+	 * @param op      -> TraceFormat.READ or TraceFormat.WRITE
+	 * @param address
+	 * @param time    -> Arrival time
+	 * @param data
+	 * @throws IOException
+	 */
+	public void write(int op, int address, int time, int data) throws IOException {
+		if(this.buffer.remaining() < TraceFormat.MAX_RECORD_SIZE)
+			flush();
+		this.buffer.put((byte) ((op & TraceFormat.OP_MASK) | TraceFormat.HAS_DATA));
+		putDeltas(address, time);
+		putVarint(TraceFormat.zigzag(data));
+	}
+
+	/**
+	 * Get # of records written so far
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Write out buffered records, fill in the record count, and close the file.
+	 */
+	public void close() throws IOException {
+		flush();
+		ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(this.count).flip();
+		this.channel.write(header, TraceFormat.COUNT_OFFSET);
+		this.channel.close();
+	}
+
+	private void putDeltas(int address, int time) {
+		putVarint(TraceFormat.zigzag(address - this.lastAddress));
+		putVarint(TraceFormat.zigzag(time - this.lastTime));
+		this.lastAddress = address;
+		this.lastTime = time;
+		this.count++;
+	}
+
+	private void putVarint(int value) {
+		while((value & ~0x7F) != 0) {
+			this.buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.buffer.put((byte) value);
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while(this.buffer.hasRemaining())
+			this.channel.write(this.buffer);
+		this.buffer.clear();
+	}
+}
@@ -0,0 +1,278 @@
+package cache;
+
+import java.io.IOException;
+import java.util.Set;
+
+public class VictimCache {
+	private static final byte VALID = 1;	// Flag bit of an entry in use
+	private static final byte DIRTY = 2;	// Flag bit of an entry that must be written back when dropped
+
+	private int latency;			// Latency of a lookup, paid on top of the cache's own on a miss
+	private int blocksize;			// Number of data locations within block
+	private byte[] flags;			// Valid and dirty bits of each entry
+	private int[] blocks;			// Block address of each entry, the address without its block offset
+	private int[] tags;				// Tag, index and set each entry had in the cache,
+	private int[] indexes;			// so the cache can rebuild its address when
+	private int[] sets;				// the entry is dropped
+	private int[] data;				// Block data of every entry, packed blocksize locations per entry. Null when tag-only.
+	private long[] inserted;		// When each entry came in, the oldest is dropped first
+	private long clock;				// # of entries ever inserted, the clock of inserted
+	private CacheRow dropped;		// Reused copy of the entry last dropped
+	private long probes;			// # of misses of the cache looked up here
+	private long hits;				// # of those found here and swapped back
+	private long caught;			// # of rows evicted from the cache and kept here
+	private long drops;				// # of entries dropped to make room
+	private long dirtyDrops;		// # of those that were dirty
+
+	/** - - - - - - - - - - - - - - - - - - - - - -
+	 * 		Victim Cache
+	 *
+	 * 	A few fully associative entries behind one cache, after
+	 * 	Jouppi. Every valid row the cache evicts is kept here
+	 * 	instead of leaving the level, and a miss of the cache
+	 * 	looks here before going to the next level. A hit swaps
+	 * 	the entry back into the cache, and the row it evicts
+	 * 	takes the entry's place. When full, the oldest entry is
+	 * 	dropped, and only then does a dirty row get written back.
+	 *
+	 * 	Entries leave on a hit, so the oldest entry is also the
+	 * 	least recently used one.
+	  - - - - - - - - - - - - - - - - - - - - - - */
+
+
+	/**
+	 * Initialize an empty victim cache
+	 *
+	 * @param entries		->		# of rows it holds
+	 * @param latency		->		Cycles a lookup takes
+	 * @param blocksize		->		Block size of the cache it sits behind
+	 * @param storeData		->		False to keep tags only, like the cache
+	 * @throws IllegalArgumentException if it holds no entries or the latency is negative
+	 */
+	public VictimCache(int entries, int latency, int blocksize, boolean storeData) {
+		if(entries <= 0 || latency < 0)
+			throw new IllegalArgumentException("A victim cache needs at least 1 entry and a latency of at least 0, got " + entries + " entries, latency " + latency);
+		this.latency = latency;
+		this.blocksize = blocksize;
+		this.flags = new byte[entries];
+		this.blocks = new int[entries];
+		this.tags = new int[entries];
+		this.indexes = new int[entries];
+		this.sets = new int[entries];
+		this.data = storeData ? new int[entries*blocksize] : null;
+		this.inserted = new long[entries];
+		this.dropped = new CacheRow(0, 0, storeData ? blocksize : 0);
+	}
+
+
+	/**
+	 * Entry holding a block, without counting a lookup
+	 *
+	 * @param block		->		Block address
+	 * @return entry, -1 if none
+	 */
+	public int find(int block) {
+		for(int e = 0; e < this.flags.length; e++)
+			if((this.flags[e] & VALID) != 0 && this.blocks[e] == block)
+				return e;
+		return -1;
+	}
+
+
+	/**
+	 * Look a block up for a miss of the cache
+	 *
+	 * @param block		->		Block address
+	 * @return entry, -1 if none
+	 */
+	public int lookUp(int block) {
+		this.probes++;
+		int entry = find(block);
+		if(entry >= 0)
+			this.hits++;
+		return entry;
+	}
+
+
+	/**
+	 * Keep a row the cache evicted, in a free entry or in place of the oldest.
+	 * The cache never evicts a block that is also held here, since a block
+	 * coming into the cache takes its entry out first.
+	 *
+	 * @param row		->		Row evicted, must be valid
+	 * @param block		->		Its block address
+	 * @return The entry dropped, an invalid row if none. Reused by the next insert.
+	 */
+	public CacheRow insert(CacheRow row, int block) {
+		int entry = oldest();
+		CacheRow out = getView(entry, this.dropped);
+		if(out.getValid()) {
+			this.drops++;
+			if(out.getDirty())
+				this.dirtyDrops++;
+		}
+
+		this.flags[entry] = (byte) (VALID | (row.getDirty() ? DIRTY : 0));
+		this.blocks[entry] = block;
+		this.tags[entry] = row.getTag();
+		this.indexes[entry] = row.getIndex();
+		this.sets[entry] = row.getSet();
+		if(this.data != null)
+			System.arraycopy(row.getBlockData(), 0, this.data, entry*this.blocksize, this.blocksize);
+		this.inserted[entry] = this.clock++;
+		this.caught++;
+		return out;
+	}
+
+
+	/**
+	 * Free an entry, once its block is back in the cache
+	 */
+	public void remove(int entry) {
+		this.flags[entry] = 0;
+	}
+
+
+	/**
+	 * Store one location of an entry's block, for a write that did not allocate
+	 * in the cache
+	 */
+	public void write(int entry, int block, int d) {
+		this.flags[entry] |= DIRTY;
+		if(this.data != null)
+			this.data[entry*this.blocksize + block] = d;
+	}
+
+
+	/**
+	 * Get dirty bit of an entry
+	 */
+	public boolean getDirty(int entry) {
+		return (this.flags[entry] & DIRTY) != 0;
+	}
+
+
+	/**
+	 * Copy the block of an entry out, nothing when tag-only
+	 */
+	public void getBlockData(int entry, int[] d) {
+		if(this.data != null && d != null)
+			System.arraycopy(this.data, entry*this.blocksize, d, 0, this.blocksize);
+	}
+
+
+	/**
+	 * Entry to fill next: a free one, else the oldest
+	 */
+	private int oldest() {
+		int oldest = 0;
+		for(int e = 0; e < this.flags.length; e++) {
+			if((this.flags[e] & VALID) == 0)
+				return e;
+			if(this.inserted[e] < this.inserted[oldest])
+				oldest = e;
+		}
+		return oldest;
+	}
+
+
+	/**
+	 * Copy an entry into an existing CacheRow, as it was in the cache
+	 */
+	public CacheRow getView(int entry, CacheRow row) {
+		row.setValid((this.flags[entry] & VALID) != 0);
+		row.setDirty((this.flags[entry] & DIRTY) != 0);
+		row.setTag(this.tags[entry]);
+		row.setIndex(this.indexes[entry]);
+		row.setSet(this.sets[entry]);
+		row.setLRU(0);
+		getBlockData(entry, row.getBlockData());
+		return row;
+	}
+
+
+	/**
+	 * Add the block address of every entry in use to a set
+	 */
+	public void collectBlocks(Set<Integer> blocks) {
+		for(int e = 0; e < this.flags.length; e++)
+			if((this.flags[e] & VALID) != 0)
+				blocks.add(this.blocks[e]);
+	}
+
+
+	/**
+	 * Write the entries and counters to a checkpoint
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeInt(this.flags.length);
+		out.writeBytes(this.flags);
+		out.writeInts(this.blocks);
+		out.writeInts(this.tags);
+		out.writeInts(this.indexes);
+		out.writeInts(this.sets);
+		out.writeInts(this.data);
+		out.writeLongs(this.inserted);
+		out.writeLongs(new long[] {this.clock, this.probes, this.hits, this.caught, this.drops, this.dirtyDrops});
+	}
+
+
+	/**
+	 * Read back what save() wrote, into a victim cache of the same size
+	 *
+	 * @throws IOException if the checkpoint holds a victim cache of another size
+	 */
+	public void restore(CheckpointReader in) throws IOException {
+		in.expect(this.flags.length, "victim cache entries");
+		in.readBytes(this.flags);
+		in.readInts(this.blocks);
+		in.readInts(this.tags);
+		in.readInts(this.indexes);
+		in.readInts(this.sets);
+		in.readInts(this.data);
+		in.readLongs(this.inserted);
+		long[] counts = in.readLongs(new long[6]);
+		this.clock = counts[0];
+		this.probes = counts[1];
+		this.hits = counts[2];
+		this.caught = counts[3];
+		this.drops = counts[4];
+		this.dirtyDrops = counts[5];
+	}
+
+
+	// Getter Functions
+
+	public int getEntries() {
+		return this.flags.length;
+	}
+
+	public int getLatency() {
+		return this.latency;
+	}
+
+	public long getProbes() {
+		return this.probes;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+
+	/**
+	 * Share of the misses of the cache found here
+	 */
+	public double getHitRate() {
+		return this.probes == 0 ? 0 : (double) this.hits/this.probes;
+	}
+
+
+	/**
+	 * ToString Function
+	 */
+	public String toString() {
+		return "Victim Cache Probes: " + this.probes + ", Hits: " + this.hits + ", Hit Rate: " + getHitRate()
+				+ ", Rows Caught: " + this.caught + ", Dropped: " + this.drops + ", Dirty Dropped: " + this.dirtyDrops;
+	}
+}
@@ -0,0 +1,55 @@
+package cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Every miss a cache counts as outstanding must end once its access is
+ * done, whatever cache the hierarchy places the block in.
+ */
+public class MemoryHierarchyTest {
+	private static final int ACCESSES = 20000;		// # of accesses of the made-up trace
+
+	@BeforeAll
+	public static void quiet() {
+		EventLog.setLevel(LogLevel.OFF);
+	}
+
+
+	@Test
+	public void noOutstandingMissesAfterTrace() {
+		for(InclusionPolicy inclusion : InclusionPolicy.values())
+			for(int policy = 0; policy < 2; policy++)
+				for(int victimEntries = 0; victimEntries <= 4; victimEntries += 4) {
+					MemoryHierarchy mh = new MemoryHierarchy(3, policy, 4, 6, new int[]{32, 128, 512}, new int[]{2, 4, 8},
+							new int[]{1, 10, 30}, null, null, true);
+					if(victimEntries > 0)
+						mh.getCaches()[1].enableVictimCache(victimEntries, 1);
+					mh.setInclusionPolicy(inclusion);
+					run(mh);
+
+					for(int c = 0; c < mh.getCaches().length; c++)
+						assertEquals(0, mh.getCaches()[c].getCurrMisses(), inclusion + ", policy " + policy
+								+ ", victim cache " + victimEntries + ": outstanding misses of cache " + c);
+				}
+	}
+
+
+	/**
+	 * Reads and writes, two in three to a small hot set so every cache both hits and evicts
+	 */
+	private static void run(MemoryHierarchy mh) {
+		Random random = new Random(1541);
+		for(int i = 0; i < ACCESSES; i++) {
+			int address = random.nextInt(3) < 2 ? random.nextInt(512) : random.nextInt(1 << 16);
+			if(random.nextInt(4) == 0)
+				mh.writeData(address, i);
+			else
+				mh.readData(address);
+		}
+	}
+}
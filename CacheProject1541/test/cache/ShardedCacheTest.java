@@ -0,0 +1,105 @@
+package cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A hierarchy whose first cache is sharded must report what the same
+ * hierarchy reports when the trace runs through it in order.
+ */
+public class ShardedCacheTest {
+	private static final String TRACE = "src/test.txt";		// Trace the shards run, relative to the project folder
+	private static final int ACCESSES = 20000;		// # of accesses of the made-up trace
+
+	@BeforeAll
+	public static void quiet() {
+		EventLog.setLevel(LogLevel.OFF);
+	}
+
+
+	@Test
+	public void inclusionReportMatchesUnsharded() throws IOException {
+		// The shape of: 1 0 2 2 16 2 1
+		assertSameReport(new int[]{16}, new int[]{2}, new int[]{1});
+	}
+
+
+	@Test
+	public void inclusionReportMatchesUnshardedWithCacheBelow() throws IOException {
+		assertSameReport(new int[]{16, 64}, new int[]{2, 4}, new int[]{1, 10});
+	}
+
+
+	@Test
+	public void rowsMatchUnshardedOverUnevenShards() throws IOException {
+		File trace = randomTrace();
+		for(IndexFunction indexFunction : new IndexFunction[]{null, new XorIndexFunction()}) {
+			IndexFunction[] indexFunctions = {indexFunction, null};
+			MemoryHierarchy unsharded = new MemoryHierarchy(2, 0, 4, 6, new int[]{64, 256}, new int[]{2, 4}, new int[]{1, 10}, indexFunctions, null, false);
+			TraceBuffer.load(trace.getPath()).replay(unsharded);
+			MemoryHierarchy sharded = new MemoryHierarchy(2, 0, 4, 6, new int[]{64, 256}, new int[]{2, 4}, new int[]{1, 10}, indexFunctions, null, false);
+			sharded.replaySharded(TraceBuffer.load(trace.getPath()), 3);
+
+			assertEquals(report(unsharded), report(sharded), "index function " + indexFunction);
+			assertEquals(unsharded.getCaches()[0].toString(), sharded.getCaches()[0].toString(), "index function " + indexFunction);
+		}
+		trace.delete();
+	}
+
+
+	@Test
+	public void checkpointFailsWithoutLeavingAFile() throws IOException {
+		MemoryHierarchy mh = hierarchy(new int[]{16}, new int[]{2}, new int[]{1});
+		mh.replaySharded(TraceBuffer.load(TRACE), 2);
+		File checkpoint = File.createTempFile("sharded", ".ckp");
+
+		assertThrows(IOException.class, () -> mh.checkpoint(checkpoint.getPath()));
+		assertFalse(checkpoint.exists());
+	}
+
+
+	private static void assertSameReport(int[] sizes, int[] setAssociatives, int[] latencies) throws IOException {
+		MemoryHierarchy unsharded = hierarchy(sizes, setAssociatives, latencies);
+		TraceBuffer.load(TRACE).replay(unsharded);
+		MemoryHierarchy sharded = hierarchy(sizes, setAssociatives, latencies);
+		sharded.replaySharded(TraceBuffer.load(TRACE), 2);
+
+		assertEquals(report(unsharded), report(sharded));
+	}
+
+
+	/**
+	 * Text trace of reads and writes, two in three to a small hot set
+	 */
+	private static File randomTrace() throws IOException {
+		File trace = File.createTempFile("sharded", ".txt");
+		Random random = new Random(1541);
+		try(Writer out = new FileWriter(trace)) {
+			for(int i = 0; i < ACCESSES; i++) {
+				int address = random.nextInt(3) < 2 ? random.nextInt(512) : random.nextInt(1 << 16);
+				out.write((random.nextInt(4) == 0 ? "w " : "r ") + address + " 10 " + i + "\n");
+			}
+		}
+		return trace;
+	}
+
+
+	private static MemoryHierarchy hierarchy(int[] sizes, int[] setAssociatives, int[] latencies) {
+		return new MemoryHierarchy(sizes.length, 0, 2, 2, sizes, setAssociatives, latencies, null, null, false);
+	}
+
+
+	private static String report(MemoryHierarchy mh) {
+		return mh.getInclusionMetrics().report(mh.getInclusionPolicy(), mh.getCaches());
+	}
+}
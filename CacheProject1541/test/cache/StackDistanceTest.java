@@ -0,0 +1,59 @@
+package cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Every stack distance must be the one a plain LRU list of each index gives,
+ * also after the slots of a stack have been renumbered.
+ */
+public class StackDistanceTest {
+	private static final int BLOCKSIZE = 4;		// Number of data locations within block
+	private static final int MAX_WAYS = 64;		// Largest associativity checked
+	private static final int ACCESSES = 20000;	// # of accesses of each made-up trace, enough to renumber every stack many times
+
+
+	@Test
+	public void distancesMatchLRUList() {
+		for(int indexSize : new int[]{1, 4, 16}) {
+			for(long seed = 0; seed < 4; seed++) {
+				StackDistance analyzer = new StackDistance(indexSize, BLOCKSIZE, MAX_WAYS);
+				List<LinkedList<Integer>> stacks = new ArrayList<>();	// Blocks of each index, most recent first
+				for(int i = 0; i < indexSize; i++)
+					stacks.add(new LinkedList<Integer>());
+				long[] counts = new long[MAX_WAYS + 2];		// # of accesses at each distance, first references at 0 and deeper than MAX_WAYS last
+
+				Random random = new Random(seed);
+				for(int i = 0; i < ACCESSES; i++) {
+					// Two in three to a small hot set, so blocks come back at every distance
+					int address = random.nextInt(3) < 2 ? random.nextInt(1024) : random.nextInt(1 << 16);
+					analyzer.access(address);
+
+					int block = address/BLOCKSIZE;
+					LinkedList<Integer> stack = stacks.get(block % indexSize);
+					int distance = stack.indexOf(block);
+					if(distance >= 0)
+						stack.remove(distance);
+					stack.addFirst(block);
+					counts[Math.min(distance + 1, MAX_WAYS + 1)]++;
+				}
+
+				String shape = "index size " + indexSize + ", seed " + seed;
+				assertEquals(ACCESSES, analyzer.getAccesses(), shape);
+				assertEquals(counts[0], analyzer.getCount(-1), shape + ": first references");
+				long hits = 0;
+				for(int d = 0; d < MAX_WAYS; d++) {
+					assertEquals(counts[d + 1], analyzer.getCount(d), shape + ": distance " + d);
+					hits += counts[d + 1];
+					assertEquals((double) (ACCESSES - hits) / ACCESSES, analyzer.getMissRatio(d + 1), shape + ": " + (d + 1) + " ways");
+				}
+			}
+		}
+	}
+}
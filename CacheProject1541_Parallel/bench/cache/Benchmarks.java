@@ -0,0 +1,31 @@
+package cache;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the cache engine with the GC profiler, so every
+ * result comes with its allocation rate next to its ns/op.
+ * 
+ * The pom.xml next to src builds the bench folder together with src, runs
+ * the JMH annotation processor and packages everything into one jar. From
+ * the project folder run:
+ * 
+ * 	mvn package
+ * 	java -jar target/benchmarks.jar [regex]
+ * 
+ * The regex picks the benchmarks to run, every one by default.
+ */
+public class Benchmarks {
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : "cache\\..*Benchmark")
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
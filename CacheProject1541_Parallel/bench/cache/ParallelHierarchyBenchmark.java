@@ -0,0 +1,80 @@
+package cache;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One cycle() step of a two level hierarchy, in both write policies and data
+ * modes. A new request arrives every few cycles, few enough that the
+ * hierarchy keeps up and its queues stay short, the way Main feeds it a
+ * trace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelHierarchyBenchmark {
+	private static final int BLOCKSIZE = 4; // Number of data locations within block
+	private static final int ADDRESSES = 1 << 16; // # of addresses cycled through, a power of 2
+	private static final int GAP = 20; // Cycles between request arrivals
+
+	@Param({ "0", "1" })
+	private int policy; // 0 for write-back and write-allocate, 1 for write-through and non-write-allocate
+
+	@Param({ "true", "false" })
+	private boolean storeData; // False for tag-only caches
+
+	private ParallelMemoryHierarchy pmh;
+	private int[] addresses; // Addresses to request, in order
+	private boolean[] writes; // True where the request is a write
+	private int next; // Next address to request
+	private Request request; // Request waiting for the first cache, null if none
+	private int time; // Current cycle
+
+	@Setup
+	public void setup() {
+		EventLog.setLevel(LogLevel.OFF);
+		this.pmh = new ParallelMemoryHierarchy(2, this.policy, BLOCKSIZE, 4, new int[] { 64, 512 },
+				new int[] { 4, 8 }, new int[] { 1, 10 }, null, null, this.storeData);
+
+		Random random = new Random(1541);
+		this.addresses = new int[ADDRESSES];
+		this.writes = new boolean[ADDRESSES];
+		for (int i = 0; i < ADDRESSES; i++) {
+			if (random.nextInt(10) < 8)
+				this.addresses[i] = random.nextInt(512 * BLOCKSIZE);
+			else
+				this.addresses[i] = random.nextInt(1 << 20);
+			this.writes[i] = random.nextInt(10) < 3;
+		}
+	}
+
+	@Benchmark
+	public int cycle() {
+		if (this.request == null && this.time % GAP == 0) {
+			int i = this.next;
+			this.next = (this.next + 1) & (ADDRESSES - 1);
+			this.request = this.pmh.getRequestPool().acquire(i, this.writes[i] ? 1 : 0, this.addresses[i], 7,
+					this.time, this.time);
+		}
+		int status = this.pmh.cycle(this.request, this.time);
+		if (status == 0)
+			this.request = null;
+		this.time++;
+		return status;
+	}
+}
@@ -0,0 +1,221 @@
+package cache;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs ParallelMemoryHierarchy through each synthetic workload and reports how
+ * fast the simulator goes: simulated accesses per second, peak heap, and time
+ * spent in GC. Only the simulation is timed: the hierarchy is built before the
+ * clock starts, and the clock is stopped while each batch of accesses is made.
+ * Each workload is warmed up first so the JIT has settled.
+ * 
+ * Usage: java cache.Throughput <accesses> <result file> [workload ...]
+ * 
+ * Every workload in WorkloadType runs unless some are named. The result file
+ * is CSV with one row per workload, so runs of different releases can be
+ * compared. -Dcache.tagOnly, -Dcache.replacement and -Dcache.cycleByCycle work
+ * as in Main.
+ * 
+ * The first cache takes a new request whenever it is free, so a trace that
+ * arrives faster than the hierarchy drains makes its queues grow without end.
+ * The harness instead hands the next access over as soon as the first cache is
+ * ready for it, but only while fewer than IN_FLIGHT requests are in the
+ * hierarchy. Cycles are counted in an int, so every REBASE cycles the harness
+ * lets the hierarchy run dry and starts again from cycle 0.
+ */
+public class Throughput {
+	private static final int LAYERS = 2; // Hierarchy every workload runs on, the same as the sequential harness
+	private static final int POLICY = 0;
+	private static final int BLOCKSIZE = 4;
+	private static final int MISSES = 8;
+	private static final int[] SIZES = { 256, 4096 };
+	private static final int[] SETS = { 4, 8 };
+	private static final int[] LATENCIES = { 1, 10 };
+
+	private static final int BATCH = 1 << 16; // # of accesses generated ahead of the simulation at once
+	private static final int WARMUP = 1 << 18; // # of accesses run before each workload is measured
+	private static final int IN_FLIGHT = 64; // Max # of requests in the hierarchy at once
+	private static final int REBASE = 1 << 30; // Cycle after which the hierarchy is drained and time restarts
+
+	public static final String HEADER = "simulator,workload,accesses,seconds,accessesPerSecond,cycles,missRate,peakHeapBytes,gcCount,gcMillis";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java cache.Throughput <accesses> <result file> [workload ...]");
+			return;
+		}
+
+		long accesses = Long.parseLong(args[0]);
+		List<WorkloadType> workloads = new ArrayList<>();
+		for (int i = 2; i < args.length; i++)
+			workloads.add(WorkloadType.valueOf(args[i].toUpperCase()));
+		if (workloads.isEmpty())
+			workloads.addAll(Arrays.asList(WorkloadType.values()));
+
+		boolean storeData = !Boolean.getBoolean("cache.tagOnly");
+		ReplacementType[] replacements = new ReplacementType[LAYERS];
+		Arrays.fill(replacements, ReplacementType.valueOf(System.getProperty("cache.replacement", "LRU")));
+		boolean eventDriven = !Boolean.getBoolean("cache.cycleByCycle");
+		EventLog.setLevel(LogLevel.OFF);
+
+		StringBuilder csv = new StringBuilder(HEADER).append("\n");
+		System.out.println(String.format("%-14s %12s %10s %16s %14s %10s %12s %8s", "workload", "accesses", "seconds",
+				"accesses/sec", "cycles", "miss rate", "peak heap MB", "gc ms"));
+		for (WorkloadType type : workloads) {
+			ParallelMemoryHierarchy pmh = new ParallelMemoryHierarchy(LAYERS, POLICY, BLOCKSIZE, MISSES, SIZES, SETS,
+					LATENCIES, null, replacements, storeData);
+			run(pmh, type.create(BLOCKSIZE, 1541), Math.min(accesses, WARMUP), eventDriven);
+
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+				pool.resetPeakUsage();
+			long gcCount = gcCount();
+			long gcMillis = gcMillis();
+
+			pmh = new ParallelMemoryHierarchy(LAYERS, POLICY, BLOCKSIZE, MISSES, SIZES, SETS, LATENCIES, null,
+					replacements, storeData);
+			Result result = run(pmh, type.create(BLOCKSIZE, 1541), accesses, eventDriven);
+
+			long cycles = result.cycles;
+			double seconds = result.nanos / 1e9;
+			double missRate = pmh.getCaches()[0].getMissRate();
+			long peakHeap = peakHeap();
+			gcCount = gcCount() - gcCount;
+			gcMillis = gcMillis() - gcMillis;
+			System.out.println(String.format("%-14s %12d %10.3f %16.0f %14d %10.4f %12.1f %8d", type, accesses, seconds,
+					accesses / seconds, cycles, missRate, peakHeap / 1e6, gcMillis));
+			csv.append(String.format(Locale.ROOT, "parallel,%s,%d,%.6f,%.1f,%d,%.6f,%d,%d,%d\n", type, accesses,
+					seconds, accesses / seconds, cycles, missRate, peakHeap, gcCount, gcMillis));
+		}
+
+		try (Writer out = new FileWriter(args[1])) {
+			out.write(csv.toString());
+		}
+	}
+
+	/**
+	 * What one run through a workload took
+	 */
+	public static final class Result {
+		public final long cycles; // # of cycles simulated
+		public final long nanos; // Time spent simulating in ns, leaving out making the accesses
+
+		private Result(long cycles, long nanos) {
+			this.cycles = cycles;
+			this.nanos = nanos;
+		}
+	}
+
+	/**
+	 * Run a hierarchy through a workload until every access has finished, the
+	 * same way Main runs a trace.
+	 * 
+	 * @return # of cycles simulated and the time it took
+	 * @throws IllegalStateException if the hierarchy ran dry while still holding
+	 *                               requests
+	 */
+	public static Result run(ParallelMemoryHierarchy pmh, Workload workload, long accesses, boolean eventDriven) {
+		RequestPool pool = pmh.getRequestPool();
+		int[] addresses = new int[BATCH];
+		boolean[] writes = new boolean[BATCH];
+		int batched = 0; // # of accesses in the current batch
+		int taken = 0; // # of accesses taken from the current batch
+
+		Request request = null;
+		long issued = 0;
+		long cycles = 0;
+		int time = 0;
+		boolean finished = false;
+		long making = 0; // Time spent making batches, taken off the total
+		long start = System.nanoTime();
+		while (!(finished && request == null && issued == accesses)) {
+			if (finished && pool.getInUse() > 0)
+				throw new IllegalStateException(pool.getInUse() + " requests were never released");
+
+			// Start over from cycle 0 once the hierarchy has run dry
+			if (finished && time >= REBASE) {
+				cycles += time;
+				time = 0;
+			}
+
+			// Hand over the next access once the last one was taken
+			if (request == null && issued < accesses && time < REBASE && pool.getInUse() < IN_FLIGHT) {
+				if (taken == batched) {
+					long made = System.nanoTime();
+					batched = (int) Math.min(BATCH, accesses - issued);
+					for (int i = 0; i < batched; i++) {
+						workload.next();
+						addresses[i] = workload.getAddress();
+						writes[i] = workload.isWrite();
+					}
+					taken = 0;
+					making += System.nanoTime() - made;
+				}
+				request = pool.acquire((int) issued, writes[taken] ? 1 : 0, addresses[taken], (int) issued, time, time);
+				taken++;
+				issued++;
+			}
+
+			if (eventDriven) {
+				int next = pmh.nextEvent(request, time, -1);
+				if (next > time) {
+					if (pmh.skip(time, next) == -1)
+						finished = true;
+					time = next;
+					continue;
+				}
+			}
+
+			int status = pmh.cycle(request, time);
+			if (status == 0) {
+				finished = false;
+				request = null;
+			} else if (status == -1) {
+				finished = true;
+			}
+			time++;
+		}
+		return new Result(cycles + time, System.nanoTime() - start - making);
+	}
+
+	/**
+	 * Get the sum of the peak usage of every heap pool since they were reset
+	 */
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	/**
+	 * Get # of collections so far, across every collector
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(gc.getCollectionCount(), 0);
+		return count;
+	}
+
+	/**
+	 * Get time spent collecting so far in ms, across every collector
+	 */
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += Math.max(gc.getCollectionTime(), 0);
+		return millis;
+	}
+}
@@ -0,0 +1,120 @@
+package cache;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Accesses of a synthetic workload, made one at a time without allocating, so
+ * any number can be run.
+ * 
+ * SEQUENTIAL reads every address in order. STRIDED reads every STRIDE-th
+ * address, shifted by one each pass. UNIFORM picks any address with the same
+ * chance. ZIPF scatters HOT_BLOCKS blocks over the footprint and picks the
+ * k-th most popular with chance ~ 1/k^SKEW. POINTER_CHASE follows a linked
+ * list of NODES blocks laid out in random order.
+ * 
+ * Every workload wraps around at FOOTPRINT, and a random WRITE_PERCENT of its
+ * accesses are writes.
+ */
+public class Workload {
+	public static final int FOOTPRINT = 1 << 24; // # of addresses a workload spreads over
+	private static final int STRIDE = 64; // Distance between strided accesses
+	private static final int HOT_BLOCKS = 1 << 16; // # of blocks a Zipfian workload picks from
+	private static final double SKEW = 0.99; // Zipfian exponent
+	private static final int NODES = 1 << 18; // # of blocks in the pointer chase
+	private static final int WRITE_PERCENT = 25; // Share of accesses that are writes
+
+	private WorkloadType type;
+	private int blocksize; // Number of data locations within block
+	private SplittableRandom random;
+	private long count; // # of accesses made
+	private int address; // Address of the last access
+	private boolean write; // True if the last access was a write
+	private double[] ranks; // Zipfian: chance of picking each rank or a lower one
+	private int[] chase; // Pointer chase: block each block points to, one cycle through all of them
+	private int node; // Pointer chase: current block
+
+	/**
+	 * Initialize a workload. Use WorkloadType.create().
+	 */
+	Workload(WorkloadType type, int blocksize, long seed) {
+		this.type = type;
+		this.blocksize = blocksize;
+		this.random = new SplittableRandom(seed);
+
+		if (type == WorkloadType.ZIPF) {
+			this.ranks = new double[HOT_BLOCKS];
+			double sum = 0;
+			for (int k = 0; k < HOT_BLOCKS; k++) {
+				sum += 1 / Math.pow(k + 1, SKEW);
+				this.ranks[k] = sum;
+			}
+			for (int k = 0; k < HOT_BLOCKS; k++)
+				this.ranks[k] /= sum;
+		} else if (type == WorkloadType.POINTER_CHASE) {
+			// Sattolo's shuffle, which leaves a single cycle through every block
+			this.chase = new int[NODES];
+			for (int i = 0; i < NODES; i++)
+				this.chase[i] = i;
+			for (int i = NODES - 1; i > 0; i--) {
+				int j = this.random.nextInt(i);
+				int temp = this.chase[i];
+				this.chase[i] = this.chase[j];
+				this.chase[j] = temp;
+			}
+		}
+	}
+
+	/**
+	 * Make the next access
+	 */
+	public void next() {
+		int blocks = FOOTPRINT / this.blocksize;
+		switch (this.type) {
+		case SEQUENTIAL:
+			this.address = (int) (this.count % FOOTPRINT);
+			break;
+		case STRIDED:
+			long offset = this.count * STRIDE;
+			this.address = (int) ((offset + offset / FOOTPRINT) % FOOTPRINT);
+			break;
+		case UNIFORM:
+			this.address = this.random.nextInt(FOOTPRINT);
+			break;
+		case ZIPF:
+			int rank = Arrays.binarySearch(this.ranks, this.random.nextDouble());
+			if (rank < 0)
+				rank = Math.min(-rank - 1, HOT_BLOCKS - 1);
+			int block = (int) ((rank * 0x9E3779B1L & 0xFFFFFFFFL) % blocks);
+			this.address = block * this.blocksize + this.random.nextInt(this.blocksize);
+			break;
+		case POINTER_CHASE:
+			this.node = this.chase[this.node];
+			this.address = (int) ((long) this.node * this.blocksize % FOOTPRINT);
+			break;
+		}
+		this.write = this.random.nextInt(100) < WRITE_PERCENT;
+		this.count++;
+	}
+
+	/**
+	 * Get address of the last access
+	 */
+	public int getAddress() {
+		return this.address;
+	}
+
+	/**
+	 * True if the last access was a write
+	 */
+	public boolean isWrite() {
+		return this.write;
+	}
+
+	/**
+	 * Get # of accesses made
+	 */
+	public long getCount() {
+		return this.count;
+	}
+}
@@ -0,0 +1,94 @@
+package cache;
+
+/**
+ * Splits an address into tag, index, and block offset for one cache. All shifts
+ * and masks are computed once when the cache is built.
+ */
+public class AddressDecoder {
+	private int blockBits; // # of bits used for the block offset
+	private int indexBits; // # of bits used for the index
+	private int tagShift; // Shift to reach the tag bits
+	private int blockMask; // Mask of the block offset bits
+	private int indexMask; // Mask of the index bits
+	private IndexFunction indexFunction; // Maps the block address to an index
+
+	/**
+	 * Initialize the decoder for a cache geometry.
+	 * 
+	 * @param indexSize     -> # of index locations in one set
+	 * @param blocksize     -> Number of data locations within block
+	 * @param indexFunction -> Index mapping, null for modulo indexing
+	 */
+	public AddressDecoder(int indexSize, int blocksize, IndexFunction indexFunction) {
+		if (indexFunction == null)
+			indexFunction = new ModuloIndexFunction();
+		if (!(indexFunction instanceof ModuloIndexFunction) && Integer.bitCount(indexSize) != 1)
+			throw new IllegalArgumentException("Hashed indexing needs a power of 2 index size, got " + indexSize);
+
+		this.blockBits = log2(blocksize);
+		this.indexBits = log2(indexSize);
+		this.tagShift = this.blockBits + this.indexBits;
+		this.blockMask = (1 << this.blockBits) - 1;
+		this.indexMask = (1 << this.indexBits) - 1;
+		this.indexFunction = indexFunction;
+	}
+
+	/**
+	 * Get Tag of an address
+	 */
+	public int getTag(int address) {
+		return address >> this.tagShift;
+	}
+
+	/**
+	 * Get Index of an address within the given way
+	 */
+	public int getIndex(int address, int way) {
+		int hash = this.indexFunction.hash(address >> this.tagShift, way, this.indexBits);
+		return ((address >> this.blockBits) ^ hash) & this.indexMask;
+	}
+
+	/**
+	 * Get Block offset of an address
+	 */
+	public int getBlock(int address) {
+		return address & this.blockMask;
+	}
+
+	/**
+	 * Rebuild the address of the first location in a block from where it is
+	 * stored.
+	 */
+	public int getAddress(int tag, int index, int way) {
+		int low = (index ^ this.indexFunction.hash(tag, way, this.indexBits)) & this.indexMask;
+		return ((tag << this.indexBits) | low) << this.blockBits;
+	}
+
+	/**
+	 * True if the index depends on the way being looked up.
+	 */
+	public boolean isSkewed() {
+		return this.indexFunction.isSkewed();
+	}
+
+	/**
+	 * Get # of bits used for the block offset
+	 */
+	public int getBlockBits() {
+		return this.blockBits;
+	}
+
+	/**
+	 * Get # of bits used for the index
+	 */
+	public int getIndexBits() {
+		return this.indexBits;
+	}
+
+	/**
+	 * Base2 logarithm rounded up, same rounding the cache has always used.
+	 */
+	private static int log2(int x) {
+		return x <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(x - 1);
+	}
+}
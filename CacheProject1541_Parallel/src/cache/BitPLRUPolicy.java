@@ -0,0 +1,84 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Bit pseudo-LRU (MRU bits). Each way has one bit set when it is used. When
+ * every bit of an index is set, all but the newest are cleared. The victim is
+ * the first way with a clear bit.
+ */
+public class BitPLRUPolicy implements ReplacementPolicy {
+	private int ways; // # of ways in one index
+	private int words; // # of longs holding the bits of one index
+	private long[] bits; // MRU bits of every index
+	private int[] used; // # of set bits of every index
+
+	public BitPLRUPolicy(int indexSize, int ways) {
+		this.ways = ways;
+		this.words = (ways + 63) / 64;
+		this.bits = new long[indexSize * this.words];
+		this.used = new int[indexSize];
+	}
+
+	public void touch(int index, int way) {
+		setBit(index, way);
+	}
+
+	public void fill(int index, int way) {
+		setBit(index, way);
+	}
+
+	public void invalidate(int index, int way) {
+		int word = index * this.words + (way >> 6);
+		long mask = 1L << (way & 63);
+		if ((this.bits[word] & mask) != 0) {
+			this.bits[word] &= ~mask;
+			this.used[index]--;
+		}
+	}
+
+	public int victim(int index) {
+		int base = index * this.words;
+		for (int w = 0; w < this.words; w++) {
+			long free = ~this.bits[base + w];
+			if (free != 0) {
+				int way = w * 64 + Long.numberOfTrailingZeros(free);
+				if (way < this.ways)
+					return way;
+			}
+		}
+		return 0;
+	}
+
+	public int rank(int index, int way) {
+		return (this.bits[index * this.words + (way >> 6)] & (1L << (way & 63))) != 0 ? 0 : 1;
+	}
+
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeLongs(this.bits);
+		out.writeInts(this.used);
+	}
+
+	public void restore(CheckpointReader in) throws IOException {
+		in.readLongs(this.bits);
+		in.readInts(this.used);
+	}
+
+	/**
+	 * Mark a way as used, starting a new round once every way is.
+	 */
+	private void setBit(int index, int way) {
+		int word = index * this.words + (way >> 6);
+		long mask = 1L << (way & 63);
+		if ((this.bits[word] & mask) != 0)
+			return;
+		this.bits[word] |= mask;
+		this.used[index]++;
+		if (this.used[index] == this.ways) {
+			for (int w = 0; w < this.words; w++)
+				this.bits[index * this.words + w] = 0;
+			this.bits[word] = mask;
+			this.used[index] = 1;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Open addressing map from block address to an int, without boxing. Values
+ * must not be -1, which get() returns for a block that was never put. Blocks
+ * are never removed.
+ */
+class BlockMap {
+	private static final long EMPTY = -1L; // Never a real entry, since values are never -1
+
+	private long[] table = new long[1 << 10]; // Block in the high half, value in the low half
+	private int size; // # of blocks
+
+	BlockMap() {
+		Arrays.fill(this.table, EMPTY);
+	}
+
+	int get(int block) {
+		int mask = this.table.length - 1;
+		for (int i = hash(block) & mask; ; i = (i + 1) & mask) {
+			long entry = this.table[i];
+			if (entry == EMPTY)
+				return -1;
+			if ((int) (entry >>> 32) == block)
+				return (int) entry;
+		}
+	}
+
+	void put(int block, int value) {
+		int mask = this.table.length - 1;
+		long entry = ((long) block << 32) | (value & 0xFFFFFFFFL);
+		for (int i = hash(block) & mask; ; i = (i + 1) & mask) {
+			if (this.table[i] == EMPTY) {
+				this.table[i] = entry;
+				if (++this.size * 2 > this.table.length)
+					grow();
+				return;
+			}
+			if ((int) (this.table[i] >>> 32) == block) {
+				this.table[i] = entry;
+				return;
+			}
+		}
+	}
+
+	void save(CheckpointWriter out) throws IOException {
+		out.writeLongs(this.table);
+		out.writeInt(this.size);
+	}
+
+	void restore(CheckpointReader in) throws IOException {
+		this.table = in.readLongs();
+		this.size = in.readInt();
+	}
+
+	private void grow() {
+		long[] old = this.table;
+		this.table = new long[old.length * 2];
+		Arrays.fill(this.table, EMPTY);
+		this.size = 0;
+		for (long entry : old)
+			if (entry != EMPTY)
+				put((int) (entry >>> 32), (int) entry);
+	}
+
+	private static int hash(int block) {
+		int h = block * 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+}
@@ -1,5 +1,6 @@
 package cache;
 
+import java.io.IOException;
 import java.util.*;
 
 public class Cache {
@@ -8,15 +9,32 @@ public class Cache {
 	private int latency; // Latency of the Cache
 	private int blocksize; // Block size of Cache
 	private int indexSize; // # of index locations in one set.
+	private AddressDecoder decoder; // Splits addresses into tag, index, and block
+
+	private boolean storeData; // False for tag-only caches, which keep no block data
+	private ValidData readResult; // Reused read result
+	private CacheRow hitRow; // Reused copy of the row a read hit, without its LRU
+	private CacheRow evictedRow; // Reused copy of the row last evicted
 
 	private int status; // Indicates if the cache is free or busy.
-	private Queue<Request> outstandingRequests; // Current Outstanding requests
-	private LinkedList<Request> currMisses; // Awaiting misses needed to be complete
+	private RequestQueue outstandingRequests; // Current Outstanding requests, earliest ready first
+	private MSHRTable currMisses; // Awaiting misses needed to be complete, one entry per block
 	private boolean notifyAtMaxMisses; // The cache is at the max amount of misses and has notified user.
 
 	private double accesses; // Number of accesses
 	private double misses; // Number of misses
-	private CacheRow[] rows; // Contains the content of the Cache
+	private CacheMetrics metrics; // Counts of reads, writes, hits, misses and evictions
+	private CacheStorage storage; // Contains the content of the Cache
+	private ReplacementPolicy replacement; // Picks the row to evict
+	private MissClassifier classifier; // Sorts misses into compulsory, capacity and conflict, null when off
+	private Prefetcher prefetcher; // Picks blocks to fetch ahead of demand, null when off
+	private PrefetchMetrics prefetchMetrics; // Counts of what the prefetcher did, null when off
+	private RequestQueue prefetches; // Prefetches of caches above waiting to be looked up, earliest ready first
+	private boolean prefetchHit; // True if the last demand access was the first use of a prefetched block
+	private VictimCache victimCache; // Keeps rows this cache evicts, null when off
+	private int[] swapBlock; // Block being swapped in from the victim cache, null when tag-only
+	private boolean victimProbed; // True if the last access missed and looked in the victim cache
+	private CacheRow invalidated; // Reused copy of the row last invalidated
 
 	/**
 	 * - - - - - - - - - - - - - - - - - - - - - - 
@@ -34,6 +52,36 @@ public class Cache {
 	 * @param latency
 	 */
 	public Cache(int size, int numSets, int latency, int blocksize, int outstandingRequests) {
+		this(size, numSets, latency, blocksize, outstandingRequests, null, true);
+	}
+
+	/**
+	 * Initialize Blank Cache with a custom index function
+	 * 
+	 * @param size
+	 * @param numSets
+	 * @param latency
+	 * @param blocksize
+	 * @param outstandingRequests
+	 * @param indexFunction       -> Maps addresses to an index, null for modulo indexing
+	 * @param storeData           -> False for a tag-only cache that tracks hits,
+	 *                            misses, and dirty bits without block data.
+	 *                            Either way, read results and evicted rows are
+	 *                            reused objects, only valid until the next access.
+	 */
+	public Cache(int size, int numSets, int latency, int blocksize, int outstandingRequests,
+			IndexFunction indexFunction, boolean storeData) {
+		this(size, numSets, latency, blocksize, outstandingRequests, indexFunction, null, storeData);
+	}
+
+	/**
+	 * Initialize Blank Cache with a custom index function and replacement policy
+	 * 
+	 * @param replacement -> Picks the row to evict, null for LRU. Must be built for
+	 *                    this cache's index size and number of sets.
+	 */
+	public Cache(int size, int numSets, int latency, int blocksize, int outstandingRequests,
+			IndexFunction indexFunction, ReplacementPolicy replacement, boolean storeData) {
 		this.size = size;
 		this.numSets = numSets;
 		this.latency = latency;
@@ -41,26 +89,31 @@ public class Cache {
 
 		this.accesses = 0;
 		this.misses = 0;
-		this.rows = new CacheRow[this.size];
+		this.metrics = new CacheMetrics();
 
 		this.status = 0; // 0 for free, otherwise it is busy
-		this.outstandingRequests = new LinkedList<>();
-		this.currMisses = new LinkedList<>();
+		this.outstandingRequests = new RequestQueue();
+		this.prefetches = new RequestQueue();
 		this.notifyAtMaxMisses = false;
 
-		// Creating each row of the cache
-		int setSize = size / numSets;
-		int set = 0;
-
-		int i;
-		for (i = 0; i < this.size; i++) {
-			this.rows[i] = new CacheRow(set, i % setSize, this.blocksize);
-			if (i % setSize == setSize - 1)
-				set++;
-		}
-
 		// Record the number of index addresses needed
+		int setSize = size / numSets;
 		this.indexSize = setSize;
+
+		// Creating the rows of the cache
+		this.storage = new CacheStorage(this.size, this.indexSize, this.blocksize, storeData);
+		this.decoder = new AddressDecoder(this.indexSize, this.blocksize, indexFunction);
+		this.currMisses = new MSHRTable(outstandingRequests, this.decoder.getBlockBits());
+		if (replacement == null)
+			replacement = new LRUPolicy(this.indexSize, this.numSets);
+		this.replacement = replacement;
+
+		this.storeData = storeData;
+		this.readResult = new ValidData(false, null);
+		this.hitRow = new CacheRow(0, 0, storeData ? blocksize : 0);
+		this.evictedRow = new CacheRow(0, 0, storeData ? blocksize : 0);
+		this.swapBlock = storeData ? new int[blocksize] : null;
+		this.invalidated = new CacheRow(0, 0, storeData ? blocksize : 0);
 	}
 
 	/**
@@ -71,50 +124,51 @@ public class Cache {
 	 * @return
 	 */
 	public CacheRow writeBackData(int address, int data) {
-		int indexMask = (int) Math.pow(2, log2(this.indexSize)) - 1;
-		int blockMask = (int) Math.pow(2, log2(this.blocksize)) - 1;
-		int tag = (address >> (int) (log2(this.blocksize))) >> (int) (log2(this.indexSize));
-		int index = ((address >> (int) (log2(this.blocksize))) & indexMask);
-		int block = (address & blockMask);
+		int tag = this.decoder.getTag(address);
+		int block = this.decoder.getBlock(address);
 		this.accesses++;
+		this.prefetchHit = false;
+		this.victimProbed = false;
 		
-		System.out.println(String.format("Tag: %d, Index: %d, block: %d", tag, index, block));
-
-		// Needed for LRU updates
-		CacheRow[] set = new CacheRow[this.numSets];
-		int oldLRU = -1;
+		if (EventLog.enabled(LogLevel.DEBUG))
+			EventLog.log(LogLevel.DEBUG, String.format("Tag: %d, Index: %d, block: %d", tag, this.decoder.getIndex(address, 0), block));
 
 		boolean hit = false;
 		for (int i = 0; i < this.numSets; i++) {
-			CacheRow currRow = this.rows[index + i * this.indexSize];
-			set[i] = currRow;
-			if (!hit && currRow.getValid() && currRow.getTag() == tag) {
+			int index = this.decoder.getIndex(address, i);
+			int row = this.storage.getRow(index, i);
+			if (!hit && this.storage.getValid(row) && this.storage.getTag(row) == tag) {
 				hit = true;
-				System.out.println("WRITE HIT! Data: " + data + ", CURRENT ROW: " + currRow);
-				oldLRU = currRow.getLRU();
-				currRow.setLRU(0);
-				currRow.setDirty(true);
-				currRow.setData(data, block);
-				set[i] = null;
+				if (EventLog.enabled(LogLevel.ACCESS))
+					EventLog.log(LogLevel.ACCESS, "WRITE HIT! Data: " + data + ", CURRENT ROW: " + getView(row, this.storage.getView(row)));
+				this.replacement.touch(index, i);
+				this.storage.setDirty(row, true);
+				this.storage.setData(row, block, data);
+				use(row);
 			}
 		}
 
-		// Update all LRUs due to write hit
-		if (hit) {
-			for (CacheRow s : set) {
-				if (s != null && s.getLRU() < oldLRU)
-					s.setLRU(s.getLRU() + 1);
-			}
-		}
+		this.metrics.countWrite(hit);
+		classify(address, hit);
+
 		// Invalid location or Tag was not found
-		else {
-			int[] dataArray = new int[this.blocksize];
-			for (int i = 0; i < this.blocksize; i++) {
-				dataArray[i] = data;
+		if (!hit) {
+			int victim = selectVictim(address);
+			CacheRow evictedRow = evictedView(victim);
+			replaceRow(address, victim);
+			this.storage.fillBlockData(victim, data);
+			// The rest of a block found in the victim cache comes back with it
+			int entry = lookUpVictim(address);
+			if (entry >= 0) {
+				this.victimCache.getBlockData(entry, this.swapBlock);
+				this.storage.setBlockData(victim, this.swapBlock);
+				this.storage.setData(victim, block, data);
+				this.storage.setDirty(victim, this.victimCache.getDirty(entry));
+				this.victimCache.remove(entry);
 			}
-			CacheRow evictedRow = evictRow(address, dataArray);
 			this.misses++;
-			return evictedRow;
+			this.metrics.countEviction(evictedRow.getValid(), evictedRow.getDirty());
+			return retire(evictedRow);
 		}
 
 		return null;
@@ -128,42 +182,32 @@ public class Cache {
 	 * @return
 	 */
 	public void writeThroughData(int address, int data) {
-		int indexMask = (int) Math.pow(2, log2(this.indexSize)) - 1;
-		int blockMask = (int) Math.pow(2, log2(this.blocksize)) - 1;
-		int tag = (address >> (int) (log2(this.blocksize))) >> (int) (log2(this.indexSize));
-		int index = ((address >> (int) (log2(this.blocksize))) & indexMask);
-		int block = (address & blockMask);
+		int tag = this.decoder.getTag(address);
+		int block = this.decoder.getBlock(address);
 		this.accesses++;
-
-		// Needed for LRU updates
-		CacheRow[] set = new CacheRow[this.numSets];
-		int oldLRU = -1;
+		this.prefetchHit = false;
+		this.victimProbed = false;
 
 		boolean hit = false;
 		for (int i = 0; i < this.numSets; i++) {
-			CacheRow currRow = this.rows[index + i * this.indexSize];
-			set[i] = currRow;
-			if (currRow.getValid() && currRow.getTag() == tag) {
-				hit = true;
+			int index = this.decoder.getIndex(address, i);
+			int row = this.storage.getRow(index, i);
+			if (this.storage.getValid(row) && this.storage.getTag(row) == tag) {
 				// System.out.println("WRITE HIT!");
-				oldLRU = currRow.getLRU();
-				currRow.setLRU(0);
-				currRow.setDirty(true);
-				currRow.setData(data, block);
-				set[i] = null;
-			}
-		}
-
-		// Update all LRUs due to write hit
-		if (hit) {
-			for (CacheRow s : set) {
-				if (s != null && s.getLRU() < oldLRU)
-					s.setLRU(s.getLRU() + 1);
+				hit = true;
+				this.replacement.touch(index, i);
+				this.storage.setDirty(row, true);
+				this.storage.setData(row, block, data);
+				use(row);
 			}
 		}
+		this.metrics.countWrite(hit);
 
 		// Invalid location or Tag was not found
-		// Do Nothing
+		// Nothing is allocated, but a copy in the victim cache is kept up to date
+		int entry = hit || this.victimCache == null ? -1 : this.victimCache.find(address >> this.decoder.getBlockBits());
+		if (entry >= 0)
+			this.victimCache.write(entry, block, data);
 	}
 
 	/**
@@ -173,78 +217,474 @@ public class Cache {
 	 * @return A object with a boolean of hit/miss, and the data.
 	 */
 	public ValidData readDataFromCache(int address) {
-		int indexMask = (int) Math.pow(2, log2(this.indexSize)) - 1;
-		int blockMask = (int) Math.pow(2, log2(this.blocksize)) - 1;
-		int tag = (address >> (int) (log2(this.blocksize))) >> (int) (log2(this.indexSize));
-		int index = ((address >> (int) (log2(this.blocksize))) & indexMask);
-		int block = (address & blockMask);
+		int tag = this.decoder.getTag(address);
 
 		this.accesses++;
-
-		// System.out.println(String.format("blockMask: %d, indexMask: %d", blockMask, indexMask));
-		// System.out.println(String.format("blocksize: %d, indexsize: %d", (int) (log2(this.blocksize)), (int) (log2(this.indexSize))));
-		// System.out.println(String.format("Tag: %d, Index: %d, block: %d", tag, index, block));
+		this.prefetchHit = false;
+		this.victimProbed = false;
 
 		// Search through sets to see if Tag and Valid bit match.
-		ValidData target = new ValidData(false, null);
+		ValidData target = this.readResult;
+		target.setValid(false);
+		target.setData(null);
 		for (int i = 0; i < this.numSets; i++) {
-			CacheRow currRow = this.rows[index + i * this.indexSize];
-			if (currRow.getValid() && currRow.getTag() == tag) {
-				target.setData(this.rows[index + i * this.indexSize]);
+			int row = this.storage.getRow(this.decoder.getIndex(address, i), i);
+			if (this.storage.getValid(row) && this.storage.getTag(row) == tag) {
+				target.setData(this.storage.getView(row, this.hitRow));
 				target.setValid(true);
+				use(row);
 			}
 		}
 
 		// If we return a miss, we need to update the location, by grabbing data from
 		// the lower memory source
 		// and updating the cache. This is done in the memory hierarchy.
-		if (!target.getValid()) {
+		boolean hit = target.getValid();
+		this.metrics.countRead(hit);
+		// A miss to a block already in flight waits on its fill, it is not a miss of its own
+		classify(address, hit || this.currMisses.containsAddress(address));
+		if (!hit) {
 			this.misses++;
+			// Still a miss of this cache, but the victim cache can save going to the next level
+			int row = swapIn(address);
+			if (row >= 0) {
+				target.setData(this.storage.getView(row, this.hitRow));
+				target.setValid(true);
+			}
 		}
 		return target;
 	}
 
 	/**
-	 * Very similar to writeData, except it will evict a data slot using LRU.
+	 * Very similar to writeData, except it will evict a data slot using the
+	 * replacement policy.
 	 * 
 	 * @param address
 	 * @param data
 	 * @return evicted row
 	 */
 	public CacheRow evictRow(int address, int[] data) {
-		//System.out.println("EVICTTION. Data: " + data[0]);
-		int indexMask = (int) Math.pow(2, log2(this.indexSize)) - 1;
-		int tag = (address >> (int) (log2(this.blocksize))) >> (int) (log2(this.indexSize));
-		int index = ((address >> (int) (log2(this.blocksize))) & indexMask);
-		CacheRow evictedRow = null;
+		return evictRow(address, data, false);
+	}
 
-		// Search through sets to see if Tag and Valid bit match.
-		boolean evicted = false;
+	/**
+	 * Fill a block that is dirty, because it was written back or moved from
+	 * another cache that had not written it back yet.
+	 * 
+	 * @param address
+	 * @param data
+	 * @param dirty   -> True if the block still has to be written back
+	 * @return evicted row
+	 */
+	public CacheRow evictRow(int address, int[] data, boolean dirty) {
+		// Grab the row picked by the replacement policy
+		// Evict the row using the cache's write policy. This is done in the memory
+		// hierarchy.
+		this.victimProbed = false;
+		int victim = selectVictim(address);
+		CacheRow evictedRow = evictedView(victim);
+
+		replaceRow(address, victim);
+		this.storage.setBlockData(victim, data);
+		takeVictimCopy(address, victim);
+		if (dirty)
+			this.storage.setDirty(victim, true);
+		this.metrics.countEviction(evictedRow.getValid(), evictedRow.getDirty());
+		return retire(evictedRow);
+	}
+
+	/**
+	 * Write a whole block back into the row already holding it and mark it dirty,
+	 * without counting an access.
+	 * 
+	 * @param address
+	 * @param data
+	 * @return False if no row holds the block. A copy in the victim cache is left
+	 *         for evictRow().
+	 */
+	public boolean writeBackBlock(int address, int[] data) {
+		this.victimProbed = false;
+		int row = findRow(address);
+		if (row < 0)
+			return false;
+		this.storage.setBlockData(row, data);
+		this.storage.setDirty(row, true);
+		return true;
+	}
+
+	/**
+	 * Take an address's block out of the cache, or out of its victim cache,
+	 * without counting an access. The row is the next to be replaced.
+	 * 
+	 * @param address
+	 * @return Copy of the row the block was in, null if it was not here. Reused by
+	 *         the next call.
+	 */
+	public CacheRow invalidate(int address) {
+		int row = findRow(address);
+		if (row >= 0) {
+			this.storage.getView(row, this.invalidated);
+			if (this.storage.getPrefetched(row)) {
+				this.storage.setPrefetched(row, false);
+				this.prefetchMetrics.countUseless();
+			}
+			this.storage.setValid(row, false);
+			this.storage.setDirty(row, false);
+			this.replacement.invalidate(this.storage.getIndex(row), this.storage.getSet(row));
+			return this.invalidated;
+		}
+		int entry = this.victimCache == null ? -1 : this.victimCache.find(address >> this.decoder.getBlockBits());
+		if (entry < 0)
+			return null;
+		this.victimCache.getView(entry, this.invalidated);
+		this.victimCache.remove(entry);
+		return this.invalidated;
+	}
+
+	/**
+	 * Add the block address of every valid row, and of every victim cache entry,
+	 * to a set
+	 */
+	public void collectBlocks(Set<Integer> blocks) {
+		int blockBits = this.decoder.getBlockBits();
+		for (int row = 0; row < this.size; row++)
+			if (this.storage.getValid(row))
+				blocks.add(this.decoder.getAddress(this.storage.getTag(row), this.storage.getIndex(row),
+						this.storage.getSet(row)) >> blockBits);
+		if (this.victimCache != null)
+			this.victimCache.collectBlocks(blocks);
+	}
+
+	/**
+	 * Fill a block a prefetch brought in, marked so its first use is counted. A
+	 * block a demand miss has already merged into the prefetch for is not
+	 * marked, since that use was counted as a late prefetch.
+	 * 
+	 * @param address
+	 * @param data
+	 * @return evicted row, null if the block got into the cache or its victim
+	 *         cache some other way while the prefetch was in flight
+	 */
+	public CacheRow fillPrefetch(int address, int[] data) {
+		this.victimProbed = false;
+		if (contains(address))
+			return null;
+		boolean unused = this.currMisses.isPrefetch(address);
+		int victim = selectVictim(address);
+		CacheRow evictedRow = evictedView(victim);
+
+		replaceRow(address, victim);
+		this.storage.setBlockData(victim, data);
+		this.storage.setPrefetched(victim, unused);
+		this.metrics.countEviction(evictedRow.getValid(), evictedRow.getDirty());
+		return retire(evictedRow);
+	}
+
+	/**
+	 * Copy of the row holding an address's block, for a prefetch looking it up.
+	 * Unlike a read it counts nothing and leaves the replacement state alone. A
+	 * copy in the victim cache is found too, and left there.
+	 * 
+	 * @return Null if the block is not in the cache
+	 */
+	public CacheRow probe(int address) {
+		int row = findRow(address);
+		if (row >= 0)
+			return this.storage.getView(row, this.hitRow);
+		int entry = this.victimCache == null ? -1 : this.victimCache.find(address >> this.decoder.getBlockBits());
+		return entry < 0 ? null : this.victimCache.getView(entry, this.hitRow);
+	}
+
+	/**
+	 * True if an address's block is in the cache or its victim cache
+	 */
+	public boolean contains(int address) {
+		return findRow(address) >= 0
+				|| (this.victimCache != null && this.victimCache.find(address >> this.decoder.getBlockBits()) >= 0);
+	}
+
+	/**
+	 * Look a missed block up in the victim cache, if there is one
+	 * 
+	 * @return entry, -1 if not found
+	 */
+	private int lookUpVictim(int address) {
+		if (this.victimCache == null)
+			return -1;
+		this.victimProbed = true;
+		int entry = this.victimCache.lookUp(address >> this.decoder.getBlockBits());
+		if (entry >= 0 && EventLog.enabled(LogLevel.ACCESS))
+			EventLog.log(LogLevel.ACCESS, "VICTIM CACHE HIT! Address: " + address);
+		return entry;
+	}
+
+	/**
+	 * Look a missed block up in the victim cache. If it is there it is swapped
+	 * back in: it takes the row the replacement policy picks, and that row takes
+	 * its entry.
+	 * 
+	 * @param address
+	 * @return row the block is now in, -1 if the victim cache does not have it or
+	 *         there is none
+	 */
+	private int swapIn(int address) {
+		int entry = lookUpVictim(address);
+		if (entry < 0)
+			return -1;
+		this.victimCache.getBlockData(entry, this.swapBlock);
+		boolean dirty = this.victimCache.getDirty(entry);
+		this.victimCache.remove(entry);
+
+		int victim = selectVictim(address);
+		CacheRow evictedRow = evictedView(victim);
+		replaceRow(address, victim);
+		this.storage.setBlockData(victim, this.swapBlock);
+		this.storage.setDirty(victim, dirty);
+		this.metrics.countEviction(evictedRow.getValid(), evictedRow.getDirty());
+		retire(evictedRow); // Goes into the entry just freed, so nothing is dropped
+		return victim;
+	}
+
+	/**
+	 * A block filled into a row from below replaces any copy of it left in the
+	 * victim cache. The row stays dirty if the copy was.
+	 */
+	private void takeVictimCopy(int address, int row) {
+		int entry = this.victimCache == null ? -1 : this.victimCache.find(address >> this.decoder.getBlockBits());
+		if (entry >= 0) {
+			this.storage.setDirty(row, this.victimCache.getDirty(entry));
+			this.victimCache.remove(entry);
+		}
+	}
+
+	/**
+	 * Hand a row this cache evicted to the victim cache, if there is one.
+	 * 
+	 * @return Row that leaves the cache's level: the evicted row itself without a
+	 *         victim cache, else the entry the victim cache dropped for it,
+	 *         invalid if none
+	 */
+	private CacheRow retire(CacheRow evictedRow) {
+		if (this.victimCache == null || !evictedRow.getValid())
+			return evictedRow;
+		return this.victimCache.insert(evictedRow, getRowAddress(evictedRow) >> this.decoder.getBlockBits());
+	}
+
+	/**
+	 * Row holding an address's block, -1 if none
+	 */
+	private int findRow(int address) {
+		int tag = this.decoder.getTag(address);
+		for (int i = 0; i < this.numSets; i++) {
+			int row = this.storage.getRow(this.decoder.getIndex(address, i), i);
+			if (this.storage.getValid(row) && this.storage.getTag(row) == tag)
+				return row;
+		}
+		return -1;
+	}
+
+	/**
+	 * A demand access hit a row. The first use of a prefetched block makes its
+	 * prefetch useful.
+	 */
+	private void use(int row) {
+		if (this.storage.getPrefetched(row)) {
+			this.storage.setPrefetched(row, false);
+			this.prefetchMetrics.countUseful();
+			this.prefetchHit = true;
+		}
+	}
+
+	/**
+	 * Tell the prefetcher about the demand access that just ran, and get the
+	 * addresses of the blocks it wants.
+	 * 
+	 * @param address
+	 * @param hit
+	 * @param prefetches -> Where to write the addresses
+	 * @return # of addresses written
+	 */
+	public int train(int address, boolean hit, int[] prefetches) {
+		int blockBits = this.decoder.getBlockBits();
+		int n = this.prefetcher.access(address >> blockBits, hit, this.prefetchHit, prefetches);
+		for (int i = 0; i < n; i++)
+			prefetches[i] <<= blockBits;
+		return n;
+	}
+
+	/**
+	 * Prefetch blocks for this cache with a prefetcher, or stop prefetching with
+	 * null
+	 */
+	public void setPrefetcher(Prefetcher prefetcher) {
+		this.prefetcher = prefetcher;
+		this.prefetchMetrics = prefetcher == null ? null : new PrefetchMetrics();
+	}
+
+	/**
+	 * Classify a read or write-back access, if classification is on.
+	 * Write-through writes are left out since they never fill the cache. With
+	 * skewed indexing conflicts are counted at the first set's index.
+	 */
+	private void classify(int address, boolean hit) {
+		if (this.classifier != null)
+			this.classifier.access(address >> this.decoder.getBlockBits(), this.decoder.getIndex(address, 0), hit);
+	}
+
+	/**
+	 * Start sorting misses into compulsory, capacity and conflict, against a
+	 * shadow fully associative LRU cache with as many rows as this one
+	 */
+	public void enableMissClassification() {
+		if (this.classifier == null)
+			this.classifier = new MissClassifier(this.size, this.indexSize);
+	}
+
+	/**
+	 * Keep the rows this cache evicts in a small fully associative victim cache,
+	 * looked up on every miss before the next level
+	 *
+	 * @param entries -> # of rows the victim cache holds
+	 * @param latency -> Cycles a lookup of it adds to a miss
+	 */
+	public void enableVictimCache(int entries, int latency) {
+		this.victimCache = new VictimCache(entries, latency, this.blocksize, this.storeData);
+	}
+
+	/**
+	 * Write the shape and every part of the state of the cache to a checkpoint:
+	 * rows, replacement state, counters, the miss classification, prefetcher and
+	 * victim cache if on, and the requests waiting in its queues and MSHRs.
+	 */
+	void save(CheckpointWriter out, RequestTable requests) throws IOException {
+		out.writeInt(this.size);
+		out.writeInt(this.numSets);
+		out.writeInt(this.blocksize);
+		out.writeBoolean(this.storeData);
+		out.writeString(this.replacement.getClass().getName());
+		out.writeInt(this.status);
+		out.writeBoolean(this.notifyAtMaxMisses);
+		out.writeDouble(this.accesses);
+		out.writeDouble(this.misses);
+		this.metrics.save(out);
+		this.storage.save(out);
+		this.replacement.save(out);
+		out.writeBoolean(this.classifier != null);
+		if (this.classifier != null)
+			this.classifier.save(out);
+		out.writeString(this.prefetcher == null ? "none" : this.prefetcher.getClass().getName());
+		if (this.prefetcher != null) {
+			this.prefetcher.save(out);
+			this.prefetchMetrics.save(out);
+		}
+		out.writeBoolean(this.victimCache != null);
+		if (this.victimCache != null)
+			this.victimCache.save(out);
+		this.outstandingRequests.save(out, requests);
+		this.prefetches.save(out, requests);
+		this.currMisses.save(out, requests);
+	}
+
+	/**
+	 * Read back what save() wrote, into a cache of the same shape, replacement
+	 * policy, prefetcher and victim cache. Miss classification is turned on if
+	 * the saved cache had it.
+	 * 
+	 * @throws IOException if the checkpoint holds a cache of another shape
+	 */
+	void restore(CheckpointReader in, RequestTable requests) throws IOException {
+		in.expect(this.size, "cache size");
+		in.expect(this.numSets, "# of sets");
+		in.expect(this.blocksize, "blocksize");
+		if (in.readBoolean() != this.storeData)
+			throw new IOException("Checkpoint has a " + (this.storeData ? "tag-only" : "data") + " cache, expected "
+					+ (this.storeData ? "data" : "tag-only"));
+		in.expect(this.replacement.getClass().getName(), "replacement policy");
+		this.status = in.readInt();
+		this.notifyAtMaxMisses = in.readBoolean();
+		this.accesses = in.readDouble();
+		this.misses = in.readDouble();
+		this.metrics.restore(in);
+		this.storage.restore(in);
+		this.replacement.restore(in);
+		if (in.readBoolean()) {
+			enableMissClassification();
+			this.classifier.restore(in);
+		}
+		in.expect(this.prefetcher == null ? "none" : this.prefetcher.getClass().getName(), "prefetcher");
+		if (this.prefetcher != null) {
+			this.prefetcher.restore(in);
+			this.prefetchMetrics.restore(in);
+		}
+		if (in.readBoolean() != (this.victimCache != null))
+			throw new IOException("Checkpoint has " + (this.victimCache == null ? "a" : "no") + " victim cache, expected "
+					+ (this.victimCache == null ? "none" : "one"));
+		if (this.victimCache != null)
+			this.victimCache.restore(in);
+		this.outstandingRequests.restore(in, requests);
+		this.prefetches.restore(in, requests);
+		this.currMisses.restore(in, requests);
+	}
+
+	/**
+	 * Ask the replacement policy for the row to evict. With skewed indexing every
+	 * set is looked up at its own index, so the row ranked closest to eviction
+	 * wins.
+	 * 
+	 * @param address
+	 * @return row to evict
+	 */
+	private int selectVictim(int address) {
+		if (!this.decoder.isSkewed()) {
+			int index = this.decoder.getIndex(address, 0);
+			return this.storage.getRow(index, this.replacement.victim(index));
+		}
+
+		int victim = 0;
+		int victimRank = -1;
 		for (int i = 0; i < this.numSets; i++) {
-			CacheRow currRow = this.rows[index + i * this.indexSize];
-			if (!evicted && currRow.getLRU() == this.numSets - 1) {
-				// Grab row with highest LRU
-				// Evict LRU row using the cache's write policy. This is done in the memory
-				// hierarchy.
-				evictedRow = new CacheRow(currRow.getSet(), currRow.getIndex(), this.blocksize);
-				evictedRow.setLRU(currRow.getLRU());
-				evictedRow.setTag(currRow.getTag());
-				evictedRow.setBlockData(currRow.getBlockData());
-				evictedRow.setDirty(currRow.getDirty());
-				evictedRow.setValid(currRow.getValid());
-				evicted = true;
-
-				currRow.setLRU(0);
-				currRow.setTag(tag);
-				currRow.setBlockData(data);
-				currRow.setDirty(false);
-				currRow.setValid(true);
-				//System.out.println("New row: " + currRow);
-			} else {
-				currRow.setLRU(currRow.getLRU() + 1);
+			int rank = this.replacement.rank(this.decoder.getIndex(address, i), i);
+			if (rank > victimRank) {
+				victim = i;
+				victimRank = rank;
 			}
 		}
-		return evictedRow;
+		return this.storage.getRow(this.decoder.getIndex(address, victim), victim);
+	}
+
+	/**
+	 * Copy of the row about to be evicted, into the one reused row object. Its
+	 * LRU is left unset, since ranking a row walks the whole index and nothing
+	 * reads it back from an eviction.
+	 */
+	private CacheRow evictedView(int victim) {
+		return this.storage.getView(victim, this.evictedRow);
+	}
+
+	/**
+	 * Fill in the LRU of a row copy from the replacement policy.
+	 */
+	private CacheRow getView(int row, CacheRow view) {
+		view.setLRU(this.replacement.rank(this.storage.getIndex(row), this.storage.getSet(row)));
+		return view;
+	}
+
+	/**
+	 * Give the victim row to a new address and tell the replacement policy. The
+	 * row's data is left for the caller to fill.
+	 * 
+	 * @param address
+	 * @param victim
+	 */
+	private void replaceRow(int address, int victim) {
+		if (this.storage.getPrefetched(victim)) {
+			this.storage.setPrefetched(victim, false);
+			this.prefetchMetrics.countUseless();
+		}
+		this.replacement.fill(this.storage.getIndex(victim), this.storage.getSet(victim));
+		this.storage.setTag(victim, this.decoder.getTag(address));
+		this.storage.setDirty(victim, false);
+		this.storage.setValid(victim, true);
 	}
 
 	/**
@@ -254,6 +694,13 @@ public class Cache {
 		return this.indexSize;
 	}
 
+	/**
+	 * Get # of rows
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
 	/**
 	 * Get Latency
 	 */
@@ -262,10 +709,25 @@ public class Cache {
 	}
 
 	/**
-	 * Get Total Latency
+	 * Get Latency of the last access: the cache's own, plus the victim cache's if
+	 * the access missed and looked there
+	 */
+	public int getAccessLatency() {
+		return this.victimProbed ? this.latency + this.victimCache.getLatency() : this.latency;
+	}
+
+	/**
+	 * Get Total Latency, with the victim cache lookups
 	 */
 	public int getTotalLatency() {
-		return (int) (this.latency * this.accesses);
+		return (int) (this.latency * this.accesses + getVictimLatency());
+	}
+
+	/**
+	 * Get Latency of every victim cache lookup, 0 without one
+	 */
+	public long getVictimLatency() {
+		return this.victimCache == null ? 0 : (long) this.victimCache.getLatency() * this.victimCache.getProbes();
 	}
 
 	/**
@@ -275,6 +737,20 @@ public class Cache {
 		return (this.accesses - this.misses) / this.accesses;
 	}
 
+	/**
+	 * Get # of accesses, the denominator of the hit rate
+	 */
+	double getAccesses() {
+		return this.accesses;
+	}
+
+	/**
+	 * Get # of misses, the numerator of the miss rate
+	 */
+	double getMisses() {
+		return this.misses;
+	}
+
 	/**
 	 * Get Miss Rate
 	 */
@@ -297,17 +773,14 @@ public class Cache {
 	}
 
 	/**
-	 * Get First Outstanding Request
+	 * Get the earliest-ready Outstanding Request
 	 */
 	public Request getOutstandingRequest() {
-		if (this.outstandingRequests.size() > 0)
-			return this.outstandingRequests.remove();
-		else
-			return null;
+		return this.outstandingRequests.poll();
 	}
 
 	/**
-	 * Peek at First Outstanding Request
+	 * Peek at the earliest-ready Outstanding Request
 	 */
 	public Request peekOutstandingRequest() {
 		return this.outstandingRequests.peek();
@@ -321,37 +794,66 @@ public class Cache {
 	}
 
 	/**
-	 * Checks if cache has miss in the current misses
+	 * Get # of Outstanding Requests waiting
+	 */
+	public int getOutstandingRequestsSize() {
+		return this.outstandingRequests.size();
+	}
+
+	/**
+	 * Checks if a fill request is for a block with an awaiting miss
 	 */
 	public boolean containsMiss(Request r) {
-		ListIterator<Request> miss_Iter = this.currMisses.listIterator(0);
-		while (miss_Iter.hasNext()) {
-			Request temp = miss_Iter.next();
-			if (r.getID() == temp.getID())
-				return true;
-		}
-		return false;
+		return r.getReadWriteEvict() == 2 && this.currMisses.contains(r);
 	}
 
 	/**
-	 * Subtract miss to the list of awaiting responses
+	 * Free the awaiting miss of a fill's block.
+	 * 
+	 * @return Misses that were merged into it, which the fill also completes
 	 */
-	public void removeCurrMiss(Request r) {
-		ListIterator<Request> miss_Iter = this.currMisses.listIterator(0);
-		while (miss_Iter.hasNext()) {
-			Request temp = miss_Iter.next();
-			if (r.getID() == temp.getID()) {
-				this.currMisses.remove(temp);
-				return;
-			}
-		}
+	public List<Request> removeCurrMiss(Request r) {
+		return this.currMisses.remove(r);
 	}
 
 	/**
-	 * Add miss to the list of awaiting responses
+	 * Add miss to the awaiting misses
+	 * 
+	 * @return True if the miss must be sent to the next level, false if it was
+	 *         merged with a miss to the same block already on its way
 	 */
-	public void addCurrMiss(Request r) {
-		this.currMisses.add(r);
+	public boolean addCurrMiss(Request r) {
+		if (!r.isPrefetch() && this.currMisses.isPrefetch(r.getAddress()))
+			this.prefetchMetrics.countLate();
+		return this.currMisses.add(r);
+	}
+
+	/**
+	 * Add a prefetch of a cache above to the queue of blocks to look up
+	 */
+	public void addPrefetch(Request prefetch) {
+		this.prefetches.add(prefetch);
+	}
+
+	/**
+	 * Peek at the earliest-ready prefetch waiting to be looked up
+	 */
+	public Request peekPrefetch() {
+		return this.prefetches.peek();
+	}
+
+	/**
+	 * Take the earliest-ready prefetch waiting to be looked up
+	 */
+	public Request pollPrefetch() {
+		return this.prefetches.poll();
+	}
+
+	/**
+	 * Get # of prefetches waiting to be looked up
+	 */
+	public int getPrefetchesSize() {
+		return this.prefetches.size();
 	}
 
 	/**
@@ -359,15 +861,7 @@ public class Cache {
 	 * misses, and send it to the cycle to be ran.
 	 */
 	public Request selectOldMiss() {
-		Iterator<Request> request_Iter = this.outstandingRequests.iterator();
-		while (request_Iter.hasNext()) {
-			Request temp = request_Iter.next();
-			if (this.containsMiss(temp)) {
-				this.outstandingRequests.remove(temp);
-				return temp;
-			}
-		}
-		return null;
+		return this.outstandingRequests.pollMatching(2, this::containsMiss);
 	}
 
 	/**
@@ -376,7 +870,49 @@ public class Cache {
 	public int getCurrMissesSize() {
 		return this.currMisses.size();
 	}
+
+	/**
+	 * Get the miss table, for its occupancy and merge counts
+	 */
+	public MSHRTable getMSHR() {
+		return this.currMisses;
+	}
 	
+	/**
+	 * Get the miss classification, null unless enabled
+	 */
+	public MissClassifier getMissClassifier() {
+		return this.classifier;
+	}
+
+	/**
+	 * Get the prefetcher, null unless set
+	 */
+	public Prefetcher getPrefetcher() {
+		return this.prefetcher;
+	}
+
+	/**
+	 * Get the counts of what the prefetcher has done, null unless set
+	 */
+	public PrefetchMetrics getPrefetchMetrics() {
+		return this.prefetchMetrics;
+	}
+
+	/**
+	 * Get the victim cache, null unless enabled
+	 */
+	public VictimCache getVictimCache() {
+		return this.victimCache;
+	}
+
+	/**
+	 * Get the counts of what the cache has done
+	 */
+	public CacheMetrics getMetrics() {
+		return this.metrics;
+	}
+
 	/**
 	 * Set notification
 	 */
@@ -392,10 +928,17 @@ public class Cache {
 	}
 
 	/**
-	 * Helper Function to get the base2 logarithm
+	 * True if the cache keeps block data, false if tag-only
+	 */
+	public boolean getStoreData() {
+		return this.storeData;
+	}
+
+	/**
+	 * Get the address of the first data location held by a row
 	 */
-	private static double log2(int x) {
-		return Math.ceil((Math.log(x) / Math.log(2)));
+	public int getRowAddress(CacheRow row) {
+		return this.decoder.getAddress(row.getTag(), row.getIndex(), row.getSet());
 	}
 
 	/**
@@ -407,7 +950,7 @@ public class Cache {
 				"Valid\t| Dirty\t| Set\t| Index\t| LRU\t| Tag\t| DataBlock\n------------------------------------------------------------\n");
 
 		for (int i = 0; i < this.size; i++) {
-			sb.append(this.rows[i]);
+			sb.append(getView(i, this.storage.getView(i)));
 		}
 		sb.append("\n");
 
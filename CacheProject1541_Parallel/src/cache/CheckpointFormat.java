@@ -0,0 +1,26 @@
+package cache;
+
+/**
+ * Layout of checkpoint files.
+ * 
+ * A checkpoint starts with an 8 byte header: the magic number, a version byte,
+ * a kind byte saying which hierarchy wrote it, and two reserved bytes. The
+ * state of the hierarchy follows as little-endian values in the order its
+ * save() wrote them. Arrays are an int length, -1 for null, then the elements
+ * back to back, so they load with one bulk copy. Strings are a byte array of
+ * UTF-8.
+ * 
+ * Every part writes its shape before its state, and restoring into a part of
+ * a different shape fails instead of loading garbage.
+ */
+public final class CheckpointFormat {
+	public static final int MAGIC = 0x43434B50; // "CCKP"
+	public static final byte VERSION = 4;
+	public static final int HEADER_SIZE = 8; // Bytes before the state
+
+	public static final byte MEMORY_HIERARCHY = 1; // Written by MemoryHierarchy
+	public static final byte PARALLEL_MEMORY_HIERARCHY = 2; // Written by ParallelMemoryHierarchy
+
+	private CheckpointFormat() {
+	}
+}
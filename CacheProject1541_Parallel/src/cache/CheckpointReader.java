@@ -0,0 +1,191 @@
+package cache;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a checkpoint through one memory mapping of the whole file, see
+ * CheckpointFormat for the layout. Arrays are copied out of the mapping in
+ * bulk, so restoring a large cache costs about as much as copying its arrays.
+ */
+public class CheckpointReader implements AutoCloseable {
+	private FileChannel channel; // Checkpoint file
+	private MappedByteBuffer buffer; // The whole file
+
+	/**
+	 * Open a checkpoint and map it.
+	 * 
+	 * @param filename
+	 * @param kind     -> Which hierarchy is restoring, see CheckpointFormat
+	 * @throws IOException if the file is not a checkpoint of that kind
+	 */
+	public CheckpointReader(String filename, byte kind) throws IOException {
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		long size = this.channel.size();
+		if (size < CheckpointFormat.HEADER_SIZE || size > Integer.MAX_VALUE) {
+			this.channel.close();
+			throw new IOException(filename + " is not a checkpoint, it is " + size + " bytes");
+		}
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (this.buffer.getInt() != CheckpointFormat.MAGIC || this.buffer.get() != CheckpointFormat.VERSION) {
+			this.channel.close();
+			throw new IOException(filename + " is not a version " + CheckpointFormat.VERSION + " checkpoint");
+		}
+		byte saved = this.buffer.get();
+		if (saved != kind) {
+			this.channel.close();
+			throw new IOException(filename + " is a checkpoint of kind " + saved + ", expected " + kind);
+		}
+		this.buffer.position(CheckpointFormat.HEADER_SIZE);
+	}
+
+	public boolean readBoolean() throws IOException {
+		return check(1).get() != 0;
+	}
+
+	public int readInt() throws IOException {
+		return check(4).getInt();
+	}
+
+	public long readLong() throws IOException {
+		return check(8).getLong();
+	}
+
+	public double readDouble() throws IOException {
+		return check(8).getDouble();
+	}
+
+	public String readString() throws IOException {
+		return new String(readBytes(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read a value the restoring part must already have, such as its size.
+	 * 
+	 * @param expected -> The restoring part's own value
+	 * @param what     -> Name of the value, for the error
+	 * @throws IOException if the checkpoint holds a different value
+	 */
+	public void expect(int expected, String what) throws IOException {
+		int saved = readInt();
+		if (saved != expected)
+			throw new IOException("Checkpoint has " + what + " " + saved + ", expected " + expected);
+	}
+
+	/**
+	 * Read a string the restoring part must already have, such as its policy.
+	 * 
+	 * @param expected -> The restoring part's own value
+	 * @param what     -> Name of the value, for the error
+	 * @throws IOException if the checkpoint holds a different value
+	 */
+	public void expect(String expected, String what) throws IOException {
+		String saved = readString();
+		if (!saved.equals(expected))
+			throw new IOException("Checkpoint has " + what + " " + saved + ", expected " + expected);
+	}
+
+	/**
+	 * Read an array of any length, null if null was written
+	 */
+	public byte[] readBytes() throws IOException {
+		int length = readInt();
+		if (length < 0)
+			return null;
+		byte[] values = new byte[length];
+		check(length).get(values);
+		return values;
+	}
+
+	/**
+	 * Read an array into one of the same length, or null into null.
+	 * 
+	 * @return The array read into
+	 * @throws IOException if the lengths differ
+	 */
+	public byte[] readBytes(byte[] into) throws IOException {
+		readLength(into == null ? -1 : into.length);
+		if (into != null)
+			check(into.length).get(into);
+		return into;
+	}
+
+	/**
+	 * Read an array of any length, null if null was written
+	 */
+	public int[] readInts() throws IOException {
+		int length = readInt();
+		return length < 0 ? null : readInts(new int[length], length);
+	}
+
+	/**
+	 * Read an array into one of the same length, or null into null.
+	 * 
+	 * @return The array read into
+	 * @throws IOException if the lengths differ
+	 */
+	public int[] readInts(int[] into) throws IOException {
+		readLength(into == null ? -1 : into.length);
+		return into == null ? null : readInts(into, into.length);
+	}
+
+	/**
+	 * Read an array of any length, null if null was written
+	 */
+	public long[] readLongs() throws IOException {
+		int length = readInt();
+		return length < 0 ? null : readLongs(new long[length], length);
+	}
+
+	/**
+	 * Read an array into one of the same length, or null into null.
+	 * 
+	 * @return The array read into
+	 * @throws IOException if the lengths differ
+	 */
+	public long[] readLongs(long[] into) throws IOException {
+		readLength(into == null ? -1 : into.length);
+		return into == null ? null : readLongs(into, into.length);
+	}
+
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	private int[] readInts(int[] into, int length) throws IOException {
+		check((long) length * 4).asIntBuffer().get(into);
+		this.buffer.position(this.buffer.position() + length * 4);
+		return into;
+	}
+
+	private long[] readLongs(long[] into, int length) throws IOException {
+		check((long) length * 8).asLongBuffer().get(into);
+		this.buffer.position(this.buffer.position() + length * 8);
+		return into;
+	}
+
+	private void readLength(int expected) throws IOException {
+		int length = readInt();
+		if (length != expected)
+			throw new IOException("Checkpoint has an array of length " + length + ", expected " + expected);
+	}
+
+	/**
+	 * Make sure a number of bytes are left before reading them.
+	 */
+	private MappedByteBuffer check(long bytes) throws IOException {
+		if (this.buffer.remaining() < bytes)
+			throw truncated();
+		return this.buffer;
+	}
+
+	private IOException truncated() {
+		return new IOException("Checkpoint ends early, at byte " + this.buffer.position());
+	}
+}
@@ -0,0 +1,91 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Leveled event log shared by the whole simulator.
+ * 
+ * Checking a level is one static field read, so events that are turned off
+ * cost nothing as long as the caller checks enabled() before building any
+ * text. Constant messages can be passed to log() directly.
+ */
+public final class EventLog {
+	private static volatile int threshold = LogLevel.DEBUG.ordinal(); // Highest level that is written
+	private static volatile EventSink sink = new ConsoleSink(); // Where events go
+
+	private EventLog() {
+	}
+
+	/**
+	 * True if events of this level are written.
+	 */
+	public static boolean enabled(LogLevel level) {
+		return level.ordinal() <= threshold;
+	}
+
+	/**
+	 * Write one line if its level is enabled.
+	 */
+	public static void log(LogLevel level, String line) {
+		if (level.ordinal() <= threshold)
+			sink.write(line + "\n");
+	}
+
+	/**
+	 * Write text without adding a line break if its level is enabled.
+	 */
+	public static void print(LogLevel level, String text) {
+		if (level.ordinal() <= threshold)
+			sink.write(text);
+	}
+
+	/**
+	 * Set the highest level that is written.
+	 */
+	public static void setLevel(LogLevel level) {
+		threshold = level.ordinal();
+	}
+
+	/**
+	 * Get the highest level that is written.
+	 */
+	public static LogLevel getLevel() {
+		return LogLevel.values()[threshold];
+	}
+
+	/**
+	 * Replace the sink. The old sink is closed.
+	 */
+	public static void setSink(EventSink s) {
+		EventSink old = sink;
+		sink = s;
+		old.close();
+	}
+
+	/**
+	 * Flush and close the sink, and go back to the console.
+	 */
+	public static void close() {
+		setSink(new ConsoleSink());
+	}
+
+	/**
+	 * Set up the log from system properties:
+	 * 
+	 * -Dcache.log=<off, summary, access or debug> (default debug)
+	 * 
+	 * -Dcache.logFile=<file> writes events to the file from a background thread
+	 */
+	public static void configure() {
+		setLevel(LogLevel.valueOf(System.getProperty("cache.log", "debug").toUpperCase()));
+
+		String filename = System.getProperty("cache.logFile");
+		if (filename != null) {
+			try {
+				setSink(new AsyncFileSink(filename));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package cache;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Running counts of what keeping a hierarchy inclusive or exclusive has cost,
+ * per cache. The hierarchy counts into it as it moves and invalidates blocks.
+ */
+public class InclusionMetrics {
+	private long[] backInvalidations; // # of blocks taken out of each cache because a cache below evicted them
+	private long[] dirtyBackInvalidations; // # of those that were dirty, whose data went down in place of the lower copy
+	private long[] movedUp; // # of blocks each cache hit on and gave up to the first cache
+	private long[] movedDown; // # of victims of each cache moved into the next one
+
+	/**
+	 * Initialize the counts of a hierarchy
+	 * 
+	 * @param layers -> # of caches in the hierarchy
+	 */
+	public InclusionMetrics(int layers) {
+		this.backInvalidations = new long[layers];
+		this.dirtyBackInvalidations = new long[layers];
+		this.movedUp = new long[layers];
+		this.movedDown = new long[layers];
+	}
+
+	/**
+	 * Count a block back-invalidated from a cache
+	 */
+	public void countBackInvalidation(int level, boolean dirty) {
+		this.backInvalidations[level]++;
+		if (dirty)
+			this.dirtyBackInvalidations[level]++;
+	}
+
+	/**
+	 * Count a block a cache gave up to the first cache
+	 */
+	public void countMovedUp(int level) {
+		this.movedUp[level]++;
+	}
+
+	/**
+	 * Count a victim of a cache moved into the next one
+	 */
+	public void countMovedDown(int level) {
+		this.movedDown[level]++;
+	}
+
+	/**
+	 * Write the counts to a checkpoint
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeLongs(this.backInvalidations);
+		out.writeLongs(this.dirtyBackInvalidations);
+		out.writeLongs(this.movedUp);
+		out.writeLongs(this.movedDown);
+	}
+
+	/**
+	 * Read back the counts save() wrote
+	 */
+	public void restore(CheckpointReader in) throws IOException {
+		in.readLongs(this.backInvalidations);
+		in.readLongs(this.dirtyBackInvalidations);
+		in.readLongs(this.movedUp);
+		in.readLongs(this.movedDown);
+	}
+
+	// Getter Functions
+
+	public long getBackInvalidations(int level) {
+		return this.backInvalidations[level];
+	}
+
+	public long getDirtyBackInvalidations(int level) {
+		return this.dirtyBackInvalidations[level];
+	}
+
+	public long getMovedUp(int level) {
+		return this.movedUp[level];
+	}
+
+	public long getMovedDown(int level) {
+		return this.movedDown[level];
+	}
+
+	/**
+	 * The counts of every cache, and how many different blocks the caches hold
+	 * between them against how many rows they have. Duplicate copies lower the
+	 * share, so it is the effective capacity of the hierarchy.
+	 */
+	public String report(InclusionPolicy policy, Cache[] caches) {
+		Set<Integer> blocks = new HashSet<Integer>();
+		long rows = 0;
+		for (Cache c : caches) {
+			c.collectBlocks(blocks);
+			rows += c.getSize() + (c.getVictimCache() == null ? 0 : c.getVictimCache().getEntries());
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("Inclusion Policy: " + policy + ", Unique Blocks: " + blocks.size() + " of " + rows
+				+ " Rows, Effective Capacity: " + (double) blocks.size() / rows);
+		for (int i = 0; i < caches.length; i++)
+			sb.append("\nCache " + i + " Back-Invalidations: " + this.backInvalidations[i] + ", Dirty: "
+					+ this.dirtyBackInvalidations[i] + ", Moved Up: " + this.movedUp[i] + ", Moved Down: "
+					+ this.movedDown[i]);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,119 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * True LRU. Every index keeps its ways in a doubly linked list from most to
+ * least recently used, so hits, fills, and victim selection are all O(1).
+ * 
+ * A fresh index is ordered way 0 first and the last way at the LRU end, the
+ * same order the cache has always started in.
+ */
+public class LRUPolicy implements ReplacementPolicy {
+	protected int ways; // # of ways in one index
+	private int[] next; // Next way towards the LRU end, -1 at the end
+	private int[] prev; // Next way towards the MRU end, -1 at the front
+	private int[] head; // Most recently used way of each index
+	private int[] tail; // Least recently used way of each index
+
+	public LRUPolicy(int indexSize, int ways) {
+		this.ways = ways;
+		this.next = new int[indexSize * ways];
+		this.prev = new int[indexSize * ways];
+		this.head = new int[indexSize];
+		this.tail = new int[indexSize];
+
+		for (int index = 0; index < indexSize; index++) {
+			int base = index * ways;
+			for (int way = 0; way < ways; way++) {
+				this.next[base + way] = way + 1 < ways ? way + 1 : -1;
+				this.prev[base + way] = way - 1;
+			}
+			this.head[index] = 0;
+			this.tail[index] = ways - 1;
+		}
+	}
+
+	public void touch(int index, int way) {
+		moveToFront(index, way);
+	}
+
+	public void fill(int index, int way) {
+		moveToFront(index, way);
+	}
+
+	public void invalidate(int index, int way) {
+		moveToBack(index, way);
+	}
+
+	public int victim(int index) {
+		return this.tail[index];
+	}
+
+	public int rank(int index, int way) {
+		int base = index * this.ways;
+		int rank = 0;
+		for (int w = this.head[index]; w != way; w = this.next[base + w])
+			rank++;
+		return rank;
+	}
+
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeInts(this.next);
+		out.writeInts(this.prev);
+		out.writeInts(this.head);
+		out.writeInts(this.tail);
+	}
+
+	public void restore(CheckpointReader in) throws IOException {
+		in.readInts(this.next);
+		in.readInts(this.prev);
+		in.readInts(this.head);
+		in.readInts(this.tail);
+	}
+
+	/**
+	 * Take a way out of its index's list.
+	 */
+	private void unlink(int index, int way) {
+		int base = index * this.ways;
+		int p = this.prev[base + way];
+		int n = this.next[base + way];
+		if (p == -1)
+			this.head[index] = n;
+		else
+			this.next[base + p] = n;
+		if (n == -1)
+			this.tail[index] = p;
+		else
+			this.prev[base + n] = p;
+	}
+
+	/**
+	 * Make a way the most recently used.
+	 */
+	private void moveToFront(int index, int way) {
+		if (this.head[index] == way)
+			return;
+		int base = index * this.ways;
+		unlink(index, way);
+		this.prev[base + way] = -1;
+		this.next[base + way] = this.head[index];
+		this.prev[base + this.head[index]] = way;
+		this.head[index] = way;
+	}
+
+	/**
+	 * Make a way the least recently used.
+	 */
+	private void moveToBack(int index, int way) {
+		if (this.tail[index] == way)
+			return;
+		int base = index * this.ways;
+		unlink(index, way);
+		this.next[base + way] = -1;
+		this.prev[base + way] = this.tail[index];
+		this.next[base + this.tail[index]] = way;
+		this.tail[index] = way;
+	}
+}
@@ -0,0 +1,235 @@
+package cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Miss status holding registers of one cache, keyed by block address.
+ * 
+ * The first miss to a block takes an entry and goes on to the next level.
+ * Later misses to the same block while it is in flight are merged into that
+ * entry instead of being sent again, and the one fill that comes back
+ * satisfies all of them. Entries live in an open addressing table, so finding
+ * the entry of a block takes constant time no matter how many misses are
+ * outstanding. Freed entries are kept and reused, along with their lists of
+ * merged misses.
+ * 
+ * An entry taken by a prefetch stays marked as one until a demand miss merges
+ * into it, which makes the prefetch late rather than useless.
+ */
+public class MSHRTable {
+	private Entry[] table; // Open addressing table, null slots are free
+	private Entry spare; // Freed entries to reuse, linked through next
+	private int blockBits; // Bits of the block offset, dropped to get a block address
+	private int size; // # of entries in use
+	private int peak; // Highest # of entries ever in use
+	private long allocations; // # of misses that took an entry
+	private long merges; // # of misses merged into an existing entry
+
+	/**
+	 * Initialize an empty table.
+	 * 
+	 * @param capacity  -> Expected # of entries, the table grows past it
+	 * @param blockBits -> Bits of the block offset within an address
+	 */
+	public MSHRTable(int capacity, int blockBits) {
+		this.table = new Entry[Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) * 2];
+		this.blockBits = blockBits;
+	}
+
+	/**
+	 * Record a miss.
+	 * 
+	 * @return True if the miss took a new entry and must be sent on, false if it
+	 *         was merged into a miss already in flight for the same block
+	 */
+	public boolean add(Request miss) {
+		int block = miss.getAddress() >> this.blockBits;
+		int slot = find(block);
+		if (this.table[slot] != null) {
+			this.table[slot].addWaiter(miss);
+			this.table[slot].prefetch = false;
+			this.merges++;
+			return false;
+		}
+
+		Entry entry = this.spare;
+		if (entry == null) {
+			entry = new Entry();
+		} else {
+			this.spare = entry.next;
+			if (entry.waiters != null)
+				entry.waiters.clear();
+		}
+		entry.block = block;
+		entry.prefetch = miss.isPrefetch();
+		this.table[slot] = entry;
+		this.size++;
+		this.allocations++;
+		this.peak = Math.max(this.peak, this.size);
+		if (this.size * 2 > this.table.length)
+			grow();
+		return true;
+	}
+
+	/**
+	 * True if a fill of this request's block would satisfy an entry.
+	 */
+	public boolean contains(Request fill) {
+		return containsAddress(fill.getAddress());
+	}
+
+	/**
+	 * True if a miss to this address's block is in flight.
+	 */
+	public boolean containsAddress(int address) {
+		return this.table[find(address >> this.blockBits)] != null;
+	}
+
+	/**
+	 * True if the miss in flight for this address's block is a prefetch no demand
+	 * miss has merged into.
+	 */
+	public boolean isPrefetch(int address) {
+		Entry entry = this.table[find(address >> this.blockBits)];
+		return entry != null && entry.prefetch;
+	}
+
+	/**
+	 * Free the entry of a fill's block.
+	 * 
+	 * @return The misses that were merged into the entry, which this fill also
+	 *         satisfies. Empty if there were none or there was no entry. The list
+	 *         is reused and only valid until the next add().
+	 */
+	public List<Request> remove(Request fill) {
+		int slot = find(fill.getAddress() >> this.blockBits);
+		Entry entry = this.table[slot];
+		if (entry == null)
+			return Collections.emptyList();
+
+		// Backward shift deletion, so later probes still find their entries
+		this.table[slot] = null;
+		this.size--;
+		int mask = this.table.length - 1;
+		for (int i = (slot + 1) & mask; this.table[i] != null; i = (i + 1) & mask) {
+			Entry moved = this.table[i];
+			this.table[i] = null;
+			this.table[find(moved.block)] = moved;
+		}
+		entry.next = this.spare;
+		this.spare = entry;
+		return entry.waiters == null ? Collections.<Request>emptyList() : entry.waiters;
+	}
+
+	/**
+	 * Get # of entries in use
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Get highest # of entries ever in use
+	 */
+	public int getPeak() {
+		return this.peak;
+	}
+
+	/**
+	 * Get # of misses that took an entry
+	 */
+	public long getAllocations() {
+		return this.allocations;
+	}
+
+	/**
+	 * Get # of misses merged into an entry already in flight
+	 */
+	public long getMerges() {
+		return this.merges;
+	}
+
+	/**
+	 * Write every entry, its merged misses, and the counts to a checkpoint.
+	 */
+	void save(CheckpointWriter out, RequestTable requests) throws IOException {
+		out.writeInt(this.size);
+		out.writeInt(this.peak);
+		out.writeLong(this.allocations);
+		out.writeLong(this.merges);
+		for (Entry entry : this.table) {
+			if (entry == null)
+				continue;
+			out.writeInt(entry.block);
+			out.writeBoolean(entry.prefetch);
+			int waiters = entry.waiters == null ? 0 : entry.waiters.size();
+			out.writeInt(waiters);
+			for (int i = 0; i < waiters; i++)
+				requests.write(out, entry.waiters.get(i));
+		}
+	}
+
+	/**
+	 * Replace the entries with the ones save() wrote.
+	 */
+	void restore(CheckpointReader in, RequestTable requests) throws IOException {
+		Arrays.fill(this.table, null);
+		int entries = in.readInt();
+		this.peak = in.readInt();
+		this.allocations = in.readLong();
+		this.merges = in.readLong();
+		this.size = 0;
+		for (int e = 0; e < entries; e++) {
+			Entry entry = new Entry();
+			entry.block = in.readInt();
+			entry.prefetch = in.readBoolean();
+			int waiters = in.readInt();
+			for (int i = 0; i < waiters; i++)
+				entry.addWaiter(requests.read(in));
+			this.table[find(entry.block)] = entry;
+			this.size++;
+			if (this.size * 2 > this.table.length)
+				grow();
+		}
+	}
+
+	/**
+	 * Slot holding a block, or the free slot where it would go.
+	 */
+	private int find(int block) {
+		int mask = this.table.length - 1;
+		int h = block * 0x9E3779B1;
+		int i = (h ^ (h >>> 16)) & mask;
+		while (this.table[i] != null && this.table[i].block != block)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private void grow() {
+		Entry[] old = this.table;
+		this.table = new Entry[old.length * 2];
+		for (Entry entry : old)
+			if (entry != null)
+				this.table[find(entry.block)] = entry;
+	}
+
+	/**
+	 * One block in flight and the misses merged into the one that was sent on.
+	 */
+	private static class Entry {
+		private int block; // Block address
+		private boolean prefetch; // True while only a prefetch wants the block
+		private List<Request> waiters; // Misses merged into this one, null until there is one
+		private Entry next; // Next spare entry, while this one is spare
+
+		void addWaiter(Request miss) {
+			if (this.waiters == null)
+				this.waiters = new ArrayList<>(2);
+			this.waiters.add(miss);
+		}
+	}
+}
@@ -4,11 +4,10 @@ import java.util.*;
 
 public class Main {
 	private static ParallelMemoryHierarchy pmh;
-	private static int iterID = 0;
-	private static int iterData = 0;
 	
 	public static void main(String[] args) {
 		Scanner scanner = new Scanner(System.in);
+		EventLog.configure();
 		
 		System.out.println("_____________________________\n| *   *   *   *   *   *   * |\n|   *   *   *   *   *   *   |\n| Cache Project for COE1541 |\n|\t Tyler Vogel\t    |\n| *   *   *   *   *   *   * |\n|   *   *   *   *   *   *   |\n-----------------------------");
 		
@@ -44,25 +43,69 @@ public class Main {
 			latencies[i] = Integer.parseInt(scanner.next());
 		}
 		
-		pmh = new ParallelMemoryHierarchy(cacheNumber, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies);
+		// Run with -Dcache.tagOnly=true to simulate tags only, without block data
+		boolean storeData = !Boolean.getBoolean("cache.tagOnly");
+		
+		// Run with -Dcache.replacement=<LRU, TREE_PLRU, BIT_PLRU, SRRIP, BRRIP, FIFO or RANDOM> to change every cache's replacement policy
+		ReplacementType[] replacements = new ReplacementType[cacheNumber];
+		Arrays.fill(replacements, ReplacementType.valueOf(System.getProperty("cache.replacement", "LRU")));
+		
+		pmh = new ParallelMemoryHierarchy(cacheNumber, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies, null, replacements, storeData);
+		
+		// Run with -Dcache.metrics=<file.csv or file.json> to snapshot every cache's counters every -Dcache.metricsInterval=<n> cycles
+		pmh.getMetrics().configure();
+		
+		// Run with -Dcache.classifyMisses=true to sort every cache's misses into compulsory, capacity and conflict
+		if (Boolean.getBoolean("cache.classifyMisses"))
+			for (Cache c : pmh.getCaches())
+				c.enableMissClassification();
+		
+		// Run with -Dcache.prefetcher=<NEXT_LINE, STRIDE or STREAM> to prefetch -Dcache.prefetchDegree=<n> blocks ahead into the first -Dcache.prefetchLevels=<n> caches
+		String prefetcher = System.getProperty("cache.prefetcher");
+		if (prefetcher != null)
+			for (int i = 0; i < Math.min(Integer.getInteger("cache.prefetchLevels", 1), cacheNumber); i++)
+				pmh.getCaches()[i].setPrefetcher(PrefetcherType.valueOf(prefetcher).create(Integer.getInteger("cache.prefetchDegree", 2)));
+
+		// Run with -Dcache.victimCache=<entries> to put a victim cache taking -Dcache.victimLatency=<n> cycles behind each cache in -Dcache.victimLevels=<i,j,...> (cache 0 by default)
+		int victimEntries = Integer.getInteger("cache.victimCache", 0);
+		if (victimEntries > 0)
+			for (String level : System.getProperty("cache.victimLevels", "0").split(","))
+				pmh.getCaches()[Integer.parseInt(level.trim())].enableVictimCache(victimEntries, Integer.getInteger("cache.victimLatency", 1));
+
+		// Run with -Dcache.inclusion=<NINE, INCLUSIVE or EXCLUSIVE> to set how the blocks of each cache relate to the caches below it
+		pmh.setInclusionPolicy(InclusionPolicy.valueOf(System.getProperty("cache.inclusion", "NINE")));
+		if (Boolean.getBoolean("cache.sample") && Long.getLong("cache.sampleWarmup", 20000) > 0
+				&& pmh.getInclusionPolicy() != InclusionPolicy.NINE) {
+			System.out.println("ERROR: Sampling warms the caches up functionally, which only keeps a NINE hierarchy. Run "
+					+ pmh.getInclusionPolicy() + " with -Dcache.sampleWarmup=0, or without -Dcache.sample.");
+			return;
+		}
+
+		// Run with -Dcache.restore=<file> to start from a checkpoint instead of cold caches
+		String restore = System.getProperty("cache.restore");
+		if (restore != null) {
+			try {
+				pmh.restore(restore, 0);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
 		
 		//pmh = new ParallelMemoryHierarchy(3, 1, 2, 5, new int[]{8, 16, 32}, new int[]{4, 4, 4}, new int[]{1, 5, 10});
 		
 		// Read File of Instructions
 		boolean nofile = false;
-		Queue<Request> requests = new LinkedList<>();
+		TraceSource requests = null;
 		do {
 			System.out.println("\nPlease Enter the filename for Cache Accesses: ");
 			String filename = scanner.next().trim();
 			try {
-				Scanner fs = new Scanner(new File(filename));
-				System.out.println("\nStarting Instruction List...\n--------------------------");
-				while (fs.hasNextLine()) {
-					nofile = false;
-					 requests.add(decode(fs.nextLine()));
-				}
-				fs.close();
-			} catch (FileNotFoundException e) {
+				// Requests are streamed from the file while the simulation runs
+				requests = new TraceSource(filename, pmh.getRequestPool());
+				nofile = false;
+				EventLog.log(LogLevel.SUMMARY, "\nStarting Instruction List...\n--------------------------");
+			} catch (IOException e) {
 				e.printStackTrace();
 				nofile = true;
 			}
@@ -75,12 +118,24 @@ public class Main {
 		boolean finished = false;
 		int status;
 		int time = 0;
+		boolean eventDriven = !Boolean.getBoolean("cache.cycleByCycle");
+		
+		// Run with -Dcache.sample=true to simulate only short units spread over the trace in detail, see Sampler
+		Sampler sampler = null;
+		if (Boolean.getBoolean("cache.sample")) {
+			sampler = new Sampler(pmh, requests, Long.getLong("cache.samplePeriod", 100000),
+					Long.getLong("cache.sampleWarmup", 20000), Long.getLong("cache.sampleDetailedWarmup", 2000),
+					Long.getLong("cache.sampleUnit", 1000));
+			time = sampler.run();
+			finished = true;
+		}
 		// Continue running until all caches are finished and there are no more requests in the file.
 		while(!(finished && requests.isEmpty())) {
 			// Only send a new request if the caches ask for one, there is one to give, and the request's arrivial time is here.
 			if(newRequest && !requests.isEmpty() && requests.peek().getTime() <= time) {
 				currRequest = requests.remove(); 
-				System.out.println("Request Sent! Request: " + currRequest);
+				if (EventLog.enabled(LogLevel.ACCESS))
+					EventLog.log(LogLevel.ACCESS, "Request Sent! Request: " + currRequest);
 				newRequest = false;
 			}
 			//The last request must be used before this can be set to null
@@ -88,6 +143,18 @@ public class Main {
 				currRequest = null;
 			}
 			
+			// Jump over cycles where the caches only count down, unless run with -Dcache.cycleByCycle=true
+			if(eventDriven) {
+				int arrival = newRequest && !requests.isEmpty() ? requests.peek().getTime() : -1;
+				int next = pmh.nextEvent(currRequest, time, arrival);
+				if(next > time) {
+					if(pmh.skip(time, next) == -1)
+						finished = true;
+					time = next;
+					continue;
+				}
+			}
+			
 			/**
 			 * THIS IS THE MAIN CYCLE
 			 */
@@ -107,52 +174,38 @@ public class Main {
 			
 			time++;
 		}
+		try {
+			requests.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		
+		// Run with -Dcache.checkpoint=<file> to save the state the trace left the hierarchy in
+		String checkpoint = System.getProperty("cache.checkpoint");
+		if (checkpoint != null) {
+			try {
+				pmh.checkpoint(checkpoint, time);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		
-		System.out.println("\nEnd of Instructions. Now Showing Memory Heirarchy Status.\n_______________________________________________________________\n");
-		System.out.println("\n* * * * * * * * * * * * * * * \nCache Access Report\n* * * * * * * * * * * * * * * ");
-		System.out.println("Total Latency: " + time);
-		System.out.print(pmh.getStatus());
+		
+		EventLog.log(LogLevel.SUMMARY, "\nEnd of Instructions. Now Showing Memory Heirarchy Status.\n_______________________________________________________________\n");
+		EventLog.log(LogLevel.SUMMARY, "\n* * * * * * * * * * * * * * * \nCache Access Report\n* * * * * * * * * * * * * * * ");
+		if (EventLog.enabled(LogLevel.SUMMARY))
+			EventLog.log(LogLevel.SUMMARY, "Total Latency: " + time);
+		if (EventLog.enabled(LogLevel.SUMMARY))
+			EventLog.print(LogLevel.SUMMARY, pmh.getStatus());
+		if (sampler != null && EventLog.enabled(LogLevel.SUMMARY))
+			EventLog.print(LogLevel.SUMMARY, "\n\n" + sampler.getReport());
+		pmh.getMetrics().close(time);
+		EventLog.close();
 		
 		
 	}
 
 	
-	/**
-	 * Form a request from a string. Incorrect formats won't be handled.
-	 * @param nextLine
-	 * @return
-	 */
-	private static Request decode(String nextLine) {
-		String[] instruction = nextLine.split(" ");
-		int id = -1000 + iterID;
-		int data = 100 - iterData;
-		int address = 0;
-		
-		if(Integer.parseInt(instruction[2]) == 10)
-			address = Integer.parseInt(instruction[1]);
-		else if(Integer.parseInt(instruction[2]) == 2)
-			address = Integer.parseInt(instruction[1], 2);
-		else if(Integer.parseInt(instruction[2]) == 16)
-			address = Integer.parseInt(instruction[1], 16);
-		else {
-			System.out.println("Incorrect Instruction Format.");
-			return null;
-		}
-
-		if(instruction[0].compareTo("r") == 0) {
-			iterID++;
-			return new Request(id, 0, address, 0, Integer.parseInt(instruction[3]), Integer.parseInt(instruction[3]));
-		}
-		else {
-			iterID++;
-			iterData++;
-			return new Request(id, 1, address, data, Integer.parseInt(instruction[3]), Integer.parseInt(instruction[3]));
-		}
-
-	}
-	
-	
 	/**
 	 * Helper function to check if inputs are feasible.
 	 * @param n
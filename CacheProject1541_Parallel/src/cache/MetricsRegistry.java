@@ -0,0 +1,258 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Counters of every cache of a hierarchy and of memory, written out as one
+ * line every interval of cycles so phases of a long run show up without
+ * logging every access. Counters are totals since the start, a later line
+ * minus an earlier one gives the interval. Queue depth and MSHR occupancy are
+ * taken as they are at the snapshot.
+ * 
+ * CSV: cycle,memoryReads,memoryWrites,cache0.reads,...
+ * 
+ * JSON: {"cycle":1000,"memoryReads":5,"memoryWrites":2,"caches":[{"reads":700,...},...]}
+ * 
+ * with reads, writes, hits, misses, evictions, writeBacks, queueDepth and
+ * mshrOccupancy for each cache.
+ * 
+ * Latencies are kept apart from the snapshots, in one histogram for each type
+ * of request and each level that serviced it, and reported as percentiles at
+ * the end of the run.
+ */
+public class MetricsRegistry {
+	private static final String[] TYPES = { "Read", "Write", "Evict" }; // Names of the request types
+
+	private static final String[] CACHE_FIELDS = { "reads", "writes", "hits", "misses", "evictions", "writeBacks",
+			"queueDepth", "mshrOccupancy" };
+
+	private Cache[] caches; // Caches of the hierarchy, read at every snapshot
+	private String unit; // What the snapshot interval counts, such as "cycle"
+	private long memoryReads; // # of blocks read from memory
+	private long memoryWrites; // # of writes to memory
+	private EventSink sink; // Where snapshots go, null when off
+	private boolean json; // True for JSON lines, false for CSV
+	private long interval; // # of units between snapshots
+	private long nextSnapshot; // Unit count of the next snapshot
+	private long lastSnapshot; // Unit count of the last snapshot, -1 if none yet
+	private long origin; // Unit count the registry started from, past 0 when restored
+	private LatencyHistogram[][] latencies; // Latencies by request type, then by servicing level, memory last
+
+	/**
+	 * Initialize a registry with snapshots off
+	 * 
+	 * @param caches -> Caches of the hierarchy. Kept, not copied, so caches
+	 *               swapped in later are seen.
+	 * @param unit   -> What advance() counts, the first column of every snapshot
+	 */
+	public MetricsRegistry(Cache[] caches, String unit) {
+		this.caches = caches;
+		this.unit = unit;
+		this.lastSnapshot = -1;
+		this.latencies = new LatencyHistogram[TYPES.length][caches.length + 1];
+		for (LatencyHistogram[] type : this.latencies)
+			for (int level = 0; level < type.length; level++)
+				type[level] = new LatencyHistogram();
+	}
+
+	/**
+	 * Count a block read from memory
+	 */
+	public void countMemoryRead() {
+		this.memoryReads++;
+	}
+
+	/**
+	 * Count a write to memory
+	 */
+	public void countMemoryWrite() {
+		this.memoryWrites++;
+	}
+
+	/**
+	 * Record the latency of one request
+	 * 
+	 * @param type    -> 0 for Read, 1 for Write, 2 for Evict
+	 * @param level   -> Cache that serviced the request, # of caches for memory
+	 * @param latency
+	 */
+	public void recordLatency(int type, int level, int latency) {
+		this.latencies[type][level].record(latency);
+	}
+
+	/**
+	 * Percentiles of every histogram with latencies in it, one line each
+	 */
+	public String getLatencyReport() {
+		StringBuilder sb = new StringBuilder();
+		for (int type = 0; type < this.latencies.length; type++)
+			for (int level = 0; level < this.latencies[type].length; level++)
+				if (this.latencies[type][level].getCount() > 0)
+					sb.append("\n" + TYPES[type] + " Latency at "
+							+ (level == this.caches.length ? "Memory" : "Cache " + level) + ": "
+							+ this.latencies[type][level]);
+		return sb.toString();
+	}
+
+	/**
+	 * Start writing snapshots
+	 * 
+	 * @param sink
+	 * @param json     -> True for JSON lines, false for CSV
+	 * @param interval -> # of units between snapshots
+	 * @throws IllegalArgumentException if the interval is not positive
+	 */
+	public void setOutput(EventSink sink, boolean json, long interval) {
+		if (interval <= 0)
+			throw new IllegalArgumentException("Metrics interval must be positive, got " + interval);
+		this.sink = sink;
+		this.json = json;
+		this.interval = interval;
+		this.nextSnapshot = (this.origin / interval + 1) * interval;
+		if (!json)
+			sink.write(header());
+	}
+
+	/**
+	 * Move the unit count forward, writing a snapshot at every interval passed.
+	 * Cheap when snapshots are off.
+	 */
+	public void advance(long now) {
+		if (this.sink == null)
+			return;
+		while (now >= this.nextSnapshot) {
+			snapshot(this.nextSnapshot);
+			this.nextSnapshot += this.interval;
+		}
+	}
+
+	/**
+	 * Write the memory counts and latencies to a checkpoint
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeLong(this.memoryReads);
+		out.writeLong(this.memoryWrites);
+		for (LatencyHistogram[] type : this.latencies)
+			for (LatencyHistogram histogram : type)
+				histogram.save(out);
+	}
+
+	/**
+	 * Read back what save() wrote. Snapshots carry on from the restored unit
+	 * count instead of writing every interval since 0.
+	 * 
+	 * @param in
+	 * @param now -> Unit count the hierarchy was restored at
+	 */
+	public void restore(CheckpointReader in, long now) throws IOException {
+		this.memoryReads = in.readLong();
+		this.memoryWrites = in.readLong();
+		for (LatencyHistogram[] type : this.latencies)
+			for (LatencyHistogram histogram : type)
+				histogram.restore(in);
+		this.origin = now;
+		if (this.sink != null)
+			this.nextSnapshot = (now / this.interval + 1) * this.interval;
+	}
+
+	/**
+	 * Write a last snapshot at the end of the run, unless one was just written,
+	 * and close the output
+	 */
+	public void close(long now) {
+		if (this.sink == null)
+			return;
+		if (now != this.lastSnapshot)
+			snapshot(now);
+		this.sink.close();
+		this.sink = null;
+	}
+
+	/**
+	 * Write the counters as they are now
+	 */
+	public void snapshot(long now) {
+		if (this.sink == null)
+			return;
+		this.lastSnapshot = now;
+		StringBuilder sb = new StringBuilder();
+		if (this.json) {
+			sb.append("{\"").append(this.unit).append("\":").append(now);
+			sb.append(",\"memoryReads\":").append(this.memoryReads);
+			sb.append(",\"memoryWrites\":").append(this.memoryWrites);
+			sb.append(",\"caches\":[");
+			for (int i = 0; i < this.caches.length; i++) {
+				long[] values = values(this.caches[i]);
+				sb.append(i == 0 ? "{" : ",{");
+				for (int f = 0; f < values.length; f++)
+					sb.append(f == 0 ? "\"" : ",\"").append(CACHE_FIELDS[f]).append("\":").append(values[f]);
+				sb.append("}");
+			}
+			sb.append("]}\n");
+		} else {
+			sb.append(now).append(',').append(this.memoryReads).append(',').append(this.memoryWrites);
+			for (Cache c : this.caches)
+				for (long value : values(c))
+					sb.append(',').append(value);
+			sb.append("\n");
+		}
+		this.sink.write(sb.toString());
+	}
+
+	/**
+	 * Values of one cache, in the order of CACHE_FIELDS
+	 */
+	private long[] values(Cache c) {
+		CacheMetrics m = c.getMetrics();
+		return new long[] { m.getReads(), m.getWrites(), m.getHits(), m.getMisses(), m.getEvictions(),
+				m.getWriteBacks(), c.getOutstandingRequestsSize(), c.getCurrMissesSize() };
+	}
+
+	private String header() {
+		StringBuilder sb = new StringBuilder(this.unit).append(",memoryReads,memoryWrites");
+		for (int i = 0; i < this.caches.length; i++)
+			for (String name : CACHE_FIELDS)
+				sb.append(",cache").append(i).append('.').append(name);
+		return sb.append("\n").toString();
+	}
+
+	/**
+	 * Set up snapshots from system properties:
+	 * 
+	 * -Dcache.metrics=<file> writes snapshots to the file, as JSON lines if it
+	 * ends in .json, CSV otherwise
+	 * 
+	 * -Dcache.metricsInterval=<n> units between snapshots (default 10000)
+	 */
+	public void configure() {
+		String filename = System.getProperty("cache.metrics");
+		if (filename == null)
+			return;
+		try {
+			setOutput(new AsyncFileSink(filename), filename.endsWith(".json"),
+					Long.getLong("cache.metricsInterval", 10000));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Getter Functions
+
+	public long getMemoryReads() {
+		return this.memoryReads;
+	}
+
+	public long getMemoryWrites() {
+		return this.memoryWrites;
+	}
+
+	/**
+	 * Get the latencies of one type of request serviced by one level
+	 * 
+	 * @param type  -> 0 for Read, 1 for Write, 2 for Evict
+	 * @param level -> Cache index, # of caches for memory
+	 */
+	public LatencyHistogram getLatency(int type, int level) {
+		return this.latencies[type][level];
+	}
+}
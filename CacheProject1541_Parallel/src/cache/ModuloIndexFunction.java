@@ -0,0 +1,15 @@
+package cache;
+
+/**
+ * Conventional indexing, the index is the low bits of the block address.
+ */
+public class ModuloIndexFunction implements IndexFunction {
+
+	public int hash(int tag, int way, int indexBits) {
+		return 0;
+	}
+
+	public boolean isSkewed() {
+		return false;
+	}
+}
@@ -0,0 +1,33 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Next-N-line prefetching. A miss, or the first use of a prefetched block,
+ * fetches the N blocks after it, so a sequential stream stays N blocks ahead
+ * once it has missed once.
+ */
+public class NextLinePrefetcher implements Prefetcher {
+	private int degree; // # of blocks fetched ahead
+
+	public NextLinePrefetcher(int degree) {
+		this.degree = degree;
+	}
+
+	public int access(int block, boolean hit, boolean prefetchHit, int[] prefetches) {
+		if (hit && !prefetchHit)
+			return 0;
+		int n = Math.min(this.degree, prefetches.length);
+		for (int i = 0; i < n; i++)
+			prefetches[i] = block + i + 1;
+		return n;
+	}
+
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeInt(this.degree);
+	}
+
+	public void restore(CheckpointReader in) throws IOException {
+		in.expect(this.degree, "prefetch degree");
+	}
+}
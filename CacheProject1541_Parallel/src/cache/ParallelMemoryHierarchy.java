@@ -1,11 +1,13 @@
 package cache;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.IntStream;
 
 public class ParallelMemoryHierarchy {
 	private int layers; // # of Layers/Caches in memory hierarchy
 	private int[] latencies; // Latencies of each cache layer
+	private int latencySum; // Sum of the latencies of every cache layer
 	private int policy; // Write/Allocate Policy of hierarchy: 0 for write-back and write-allocate; 1
 						// for write-through and non-write-allocate
 	private int blocksize; // Number of data locations within block
@@ -13,6 +15,14 @@ public class ParallelMemoryHierarchy {
 	private Cache[] caches; // Array of caches, larger the index, the deeper the cache in the hierarchy
 	private int memAccess; // Number of Memory Access performed by the MemoryHierarchy
 	private int requestIDs;
+	private boolean storeData; // False when the caches are tag-only and no block data is moved
+	private RequestPool pool; // Recycles the requests sent through the hierarchy
+	private RequestResult sendResult; // Reused result of sendRequest(), read before the next send
+	private MetricsRegistry metrics; // Counts of every cache and of memory, snapshotted every so many cycles
+	private int[] warmBlock; // Block being filled by warm(), null when the caches are tag-only
+	private int[] prefetchAddresses; // Reused addresses a prefetcher asked for, up to 16 per access
+	private InclusionPolicy inclusion; // How the blocks of each cache relate to the caches below it
+	private InclusionMetrics inclusionMetrics; // Back-invalidations and moves made to keep to the inclusion policy
 
 	/**
 	 * Initialize the Memory Hierarchy
@@ -26,6 +36,45 @@ public class ParallelMemoryHierarchy {
 	 */
 	public ParallelMemoryHierarchy(int layers, int policy, int blocksize, int outstandingMisses, int[] sizes,
 			int[] setAssociatives, int[] latencies) {
+		this(layers, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies, null);
+	}
+
+	/**
+	 * Initialize the Memory Hierarchy with custom index functions
+	 * 
+	 * @param indexFunctions  -> Array of index functions of the caches, null for
+	 *                        modulo indexing
+	 */
+	public ParallelMemoryHierarchy(int layers, int policy, int blocksize, int outstandingMisses, int[] sizes,
+			int[] setAssociatives, int[] latencies, IndexFunction[] indexFunctions) {
+		this(layers, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies, indexFunctions, true);
+	}
+
+	/**
+	 * Initialize the Memory Hierarchy with custom index functions and data mode
+	 * 
+	 * @param indexFunctions  -> Array of index functions of the caches, null for
+	 *                        modulo indexing
+	 * @param storeData       -> False to simulate tags only. Hits, misses, dirty
+	 *                        bits and latency are the same, but no block data is
+	 *                        stored or copied.
+	 */
+	public ParallelMemoryHierarchy(int layers, int policy, int blocksize, int outstandingMisses, int[] sizes,
+			int[] setAssociatives, int[] latencies, IndexFunction[] indexFunctions, boolean storeData) {
+		this(layers, policy, blocksize, outstandingMisses, sizes, setAssociatives, latencies, indexFunctions, null,
+				storeData);
+	}
+
+	/**
+	 * Initialize the Memory Hierarchy with custom index functions, replacement
+	 * policies and data mode
+	 * 
+	 * @param replacements    -> Array of replacement policies of the caches, null
+	 *                        for LRU
+	 */
+	public ParallelMemoryHierarchy(int layers, int policy, int blocksize, int outstandingMisses, int[] sizes,
+			int[] setAssociatives, int[] latencies, IndexFunction[] indexFunctions, ReplacementType[] replacements,
+			boolean storeData) {
 		this.layers = layers;
 		this.latencies = latencies;
 		this.policy = policy;
@@ -34,11 +83,35 @@ public class ParallelMemoryHierarchy {
 		this.caches = new Cache[this.layers];
 		this.memAccess = 1;
 		this.requestIDs = 0;
+		this.storeData = storeData;
+		this.latencySum = 0;
+		for (int latency : latencies)
+			this.latencySum += latency;
+		this.pool = new RequestPool(1024 + layers * outstandingMisses * 4, blocksize, storeData);
+		this.sendResult = new RequestResult(null, null, 0);
+		this.warmBlock = storeData ? new int[blocksize] : null;
+		this.prefetchAddresses = new int[16];
 
 		// Initialize each cache
 		for (int i = 0; i < this.layers; i++) {
-			this.caches[i] = new Cache(sizes[i], setAssociatives[i], latencies[i], blocksize, outstandingMisses);
+			IndexFunction indexFunction = indexFunctions == null ? null : indexFunctions[i];
+			ReplacementPolicy replacement = null;
+			if (replacements != null && replacements[i] != null)
+				replacement = replacements[i].create(sizes[i] / setAssociatives[i], setAssociatives[i]);
+			this.caches[i] = new Cache(sizes[i], setAssociatives[i], latencies[i], blocksize, outstandingMisses,
+					indexFunction, replacement, storeData);
 		}
+		this.metrics = new MetricsRegistry(this.caches, "cycle");
+		this.inclusion = InclusionPolicy.NINE;
+		this.inclusionMetrics = new InclusionMetrics(this.layers);
+	}
+
+	/**
+	 * Set how the blocks of each cache relate to the caches below it. NINE unless
+	 * set. Must be set before the first request.
+	 */
+	public void setInclusionPolicy(InclusionPolicy inclusion) {
+		this.inclusion = inclusion;
 	}
 
 	/**
@@ -56,9 +129,8 @@ public class ParallelMemoryHierarchy {
 	public int cycle(Request request, int time) {
 		Request outstandingRequest = null;
 		boolean usedRequest = false;
-		boolean[] finished = new boolean[this.layers];
-		for (int f = 0; f < this.layers; f++)
-			finished[f] = false;
+		int finished = 0; // # of caches with nothing to do
+		this.metrics.advance(time);
 
 		// System.out.println("Current Time: " + time + ", Cache Statuses: " +
 		// this.caches[0].getStatus() + " | " + this.caches[1].getStatus() + " | " +
@@ -82,7 +154,7 @@ public class ParallelMemoryHierarchy {
 						|| currCache.peekOutstandingRequest().getTime() >= time)) {
 					// System.out.println("New Request ID: " + request.getID());
 					request.setStartTime(time);
-					result = sendRequest(request, currCache);
+					result = sendRequest(request, currCache, c, time);
 					usedRequest = true;
 				}
 				// Otherwise, run outstanding requests.
@@ -92,18 +164,19 @@ public class ParallelMemoryHierarchy {
 						// Check if any outstanding misses have been fulfilled.
 						Request oldMiss = currCache.selectOldMiss();
 						if (oldMiss != null) {
-							result = sendRequest(oldMiss, currCache);
+							result = sendRequest(oldMiss, currCache, c, time);
 						} else if(!currCache.getNotifyAtMaxMisses()){
-							System.out.println("Cache " + c + " at max outstanding misses. Not fulfilling anymore requests til below max misses.");
+							if (EventLog.enabled(LogLevel.ACCESS))
+								EventLog.log(LogLevel.ACCESS, "Cache " + c + " at max outstanding misses. Not fulfilling anymore requests til below max misses.");
 							currCache.setNotifyAtMaxMisses(true);
 						}
 					} else {
-						result = sendRequest(currCache.getOutstandingRequest(), currCache);
+						result = sendRequest(currCache.getOutstandingRequest(), currCache, c, time);
 					}
 
 					// Remove request from current misses.
 					if (result != null && currCache.containsMiss(result.getRequest())) {
-						currCache.removeCurrMiss(result.getRequest());
+						completeMerged(currCache.removeCurrMiss(result.getRequest()), c, time);
 						currCache.setNotifyAtMaxMisses(false);
 					}
 					// If outstanding misses is at max, then wait until they are handled.
@@ -115,21 +188,32 @@ public class ParallelMemoryHierarchy {
 					if (result.getResult() == 1) {
 						// Update Upper Caches
 						// Not needed for this cache
-						int readTime = (time - request.getStartTime() + currCache.getLatency());
-						System.out.println("Read Access complete in: " + readTime + " cycles. Request: "
-								+ request.toString() + "\n");
+						int readTime = (time - request.getStartTime() + currCache.getAccessLatency());
+						if (EventLog.enabled(LogLevel.ACCESS))
+							EventLog.log(LogLevel.ACCESS, "Read Access complete in: " + readTime + " cycles. Request: " + request.toString() + "\n");
+						this.metrics.recordLatency(0, c, readTime);
+						this.pool.release(request);
 					}
 					// Unsuccessful Read
+					// Only the first miss to a block goes on, later ones wait for its fill
 					else if (result.getResult() == -1) {
-						outstandingRequest = result.getRequest();
-						outstandingRequest.setTime(time + currCache.getLatency());
-						currCache.addCurrMiss(outstandingRequest);
+						if (currCache.addCurrMiss(result.getRequest())) {
+							outstandingRequest = result.getRequest();
+							outstandingRequest.setTime(time + currCache.getAccessLatency());
+						}
+					}
+					// An exclusive write-back hierarchy writes the first cache only, its victim moves down
+					else if (this.inclusion == InclusionPolicy.EXCLUSIVE && this.policy == 0 && result.getResult() != 0) {
+						if (result.getResult() == -2)
+							outstandingRequest = moveDown(c, result.getData(), time);
+						recordServiced(result.getRequest(), c, time);
+						this.pool.release(result.getRequest());
 					}
 					// Successful Write
 					else if (result.getResult() == 2) {
 						// Need to Write to Lower Levels
 						outstandingRequest = result.getRequest();
-						outstandingRequest.setTime(time + currCache.getLatency());
+						outstandingRequest.setTime(time + currCache.getAccessLatency());
 					}
 					// Successful Write with Eviction
 					else if (result.getResult() == -2) {
@@ -138,17 +222,24 @@ public class ParallelMemoryHierarchy {
 
 						// Need to Write to Lower Levels
 						outstandingRequest = result.getRequest();
-						outstandingRequest.setTime(time + currCache.getLatency());
+						outstandingRequest.setTime(time + currCache.getAccessLatency());
 					}
 					// Successful Eviction
 					else {
 						// Take Evicted Row and return it to a lower cache.
 						CacheRow evicted = result.getData();
-						if (evicted.getDirty()) {
-							int evictAddress = (evicted.getTag() << (int) Math.floor(currCache.getIndexSize() / 2) | evicted.getIndex());
-							outstandingRequest = new Request(this.requestIDs++, 2, evictAddress, result.getRequest().getData(), time + currCache.getLatency(), time);
+						if (this.inclusion == InclusionPolicy.EXCLUSIVE) {
+							outstandingRequest = moveDown(c, evicted, time);
+						} else if (evicted != null && evicted.getDirty()) {
+							int evictAddress = currCache.getRowAddress(evicted);
+							outstandingRequest = this.pool.acquireFill(this.requestIDs++, evictAddress, evicted.getBlockData(), time + currCache.getAccessLatency(), time);
+							// The cache below has the block under inclusion, so it is written in place
+							outstandingRequest.setDirty(this.inclusion == InclusionPolicy.INCLUSIVE);
 						}
 						// Do Nothing if the evicted row is not dirty.
+						if (!result.getRequest().isPrefetch())
+							recordServiced(result.getRequest(), c, time);
+						this.pool.release(result.getRequest());
 					}
 				}
 			}
@@ -161,17 +252,22 @@ public class ParallelMemoryHierarchy {
 					// Check if any outstanding misses have been fulfilled.
 					Request oldMiss = currCache.selectOldMiss();
 					if (oldMiss != null) {
-						result = sendRequest(oldMiss, currCache);
+						result = sendRequest(oldMiss, currCache, c, time);
 					} else if(!currCache.getNotifyAtMaxMisses()){
-						System.out.println("Cache " + c + " at max outstanding misses. Not fulfilling anymore requests til below max misses.");
+						if (EventLog.enabled(LogLevel.ACCESS))
+							EventLog.log(LogLevel.ACCESS, "Cache " + c + " at max outstanding misses. Not fulfilling anymore requests til below max misses.");
 						currCache.setNotifyAtMaxMisses(true);	//Blocks all repeat alerts
 					}
 				} else {
-					result = sendRequest(currCache.getOutstandingRequest(), currCache);
+					result = sendRequest(currCache.getOutstandingRequest(), currCache, c, time);
 				}
 				// Remove request from current misses.
 				if (result != null && currCache.containsMiss(result.getRequest())) {
-					currCache.removeCurrMiss(result.getRequest());
+					List<Request> merged = currCache.removeCurrMiss(result.getRequest());
+					// Misses from above that merged into a prefetch need the block sent up, as a hit would
+					if (result.getRequest().isPrefetch() && !merged.isEmpty())
+						fillAbove(result.getRequest(), c, time);
+					completeMerged(merged, c, time);
 					currCache.setNotifyAtMaxMisses(false);
 				}
 				// If outstanding misses is at max, then wait until they are handled.
@@ -180,28 +276,40 @@ public class ParallelMemoryHierarchy {
 					// Successful Read
 					if (result.getResult() == 1) {
 						// Update Upper Caches
-						int readTime = (time - result.getRequest().getStartTime() + currCache.getLatency()) + currCache.getLatency();
-						System.out.println("Read Access complete in: " + readTime + " cycles. Request: " + result.getRequest().toString() + "\n");
-						Request update = new Request(result.getRequest().getID(), 2, result.getRequest().getAddress(), result.getData().getBlockData(), time + currCache.getLatency(), time);
+						int readTime = (time - result.getRequest().getStartTime() + currCache.getAccessLatency()) + currCache.getAccessLatency();
+						if (EventLog.enabled(LogLevel.ACCESS))
+							EventLog.log(LogLevel.ACCESS, "Read Access complete in: " + readTime + " cycles. Request: " + result.getRequest().toString() + "\n");
+						this.metrics.recordLatency(0, c, readTime);
+						Request update = this.pool.acquireFill(result.getRequest().getID(), result.getRequest().getAddress(), result.getData().getBlockData(), time + currCache.getAccessLatency(), time);
+						moveUp(c, update);
+						this.pool.share(update, c);
 						for (int i = 0; i < c; i++) {
 							this.caches[i].addOutstandingRequest(update);
 						}
+						this.pool.release(result.getRequest());
 					}
 					// Unsuccessful Read
+					// Only the first miss to a block goes on, later ones wait for its fill
 					else if (result.getResult() == -1) {
-						outstandingRequest = result.getRequest();
-						outstandingRequest.setTime(time + currCache.getLatency());
-						currCache.addCurrMiss(outstandingRequest);
+						if (currCache.addCurrMiss(result.getRequest())) {
+							outstandingRequest = result.getRequest();
+							outstandingRequest.setTime(time + currCache.getAccessLatency());
+						}
 					}
 					// Successful Write
 					else if (result.getResult() == 2) {
 						// Need to Write to Lower Levels
 						if (c != this.caches.length - 1) {
 							outstandingRequest = result.getRequest();
-							outstandingRequest.setTime(time + currCache.getLatency());
-						} else if (policy == 1) {
-							// Fake memory Write
-							System.out.println("MEMORY WRITE!");
+							outstandingRequest.setTime(time + currCache.getAccessLatency());
+						} else {
+							if (policy == 1) {
+								// Fake memory Write
+								EventLog.log(LogLevel.ACCESS, "MEMORY WRITE!");
+								this.metrics.countMemoryWrite();
+							}
+							recordServiced(result.getRequest(), c, time);
+							this.pool.release(result.getRequest());
 						}
 
 					}
@@ -210,37 +318,60 @@ public class ParallelMemoryHierarchy {
 						// Need to Write to Lower Levels, don't send outstanding request if last layer.
 						if(c != this.layers-1) {
 							outstandingRequest = result.getRequest();
-							outstandingRequest.setTime(time + currCache.getLatency());
+							outstandingRequest.setTime(time + currCache.getAccessLatency());
+						} else {
+							recordServiced(result.getRequest(), c, time);
+							this.pool.release(result.getRequest());
 						}
 
 						// Row was Evicted, and needs to be sent to memory if lowest cache.
 						// If not lowest Cache, do nothing
 						CacheRow evicted = result.getData();
+						backInvalidate(c, evicted);
 						if (evicted.getDirty() && c == this.layers - 1) {
 							// Fake memory Write
-							System.out.println("MEMORY WRITE!");
+							EventLog.log(LogLevel.ACCESS, "MEMORY WRITE!");
+							this.metrics.countMemoryWrite();
 						}
 					}
 					// Successful Eviction
 					else {
 						// Take Evicted Row and return it to a lower cache.
 						CacheRow evicted = result.getData();
-						if (evicted.getDirty() && c < this.layers - 1) {
-							int evictAddress = (evicted.getTag() << (int) Math.floor(currCache.getIndexSize() / 2) | evicted.getIndex());
-							outstandingRequest = new Request(this.requestIDs++, 2, evictAddress, evicted.getBlockData(), time + currCache.getLatency(), time);
+						backInvalidate(c, evicted);
+						if (evicted == null) {
+							// A prefetched block that was already here, or a block an exclusive
+							// hierarchy only fills into the first cache, evicts nothing
+						} else if (this.inclusion == InclusionPolicy.EXCLUSIVE) {
+							outstandingRequest = moveDown(c, evicted, time);
+						} else if (evicted.getDirty() && c < this.layers - 1) {
+							int evictAddress = currCache.getRowAddress(evicted);
+							outstandingRequest = this.pool.acquireFill(this.requestIDs++, evictAddress, evicted.getBlockData(), time + currCache.getLatency(), time);
+							// The cache below has the block under inclusion, so it is written in place
+							outstandingRequest.setDirty(this.inclusion == InclusionPolicy.INCLUSIVE);
 						} else if (evicted.getDirty() && c == this.layers - 1) {
 							// Fake memory Write
-							System.out.println("MEMORY WRITE!");
+							EventLog.log(LogLevel.ACCESS, "MEMORY WRITE!");
+							this.metrics.countMemoryWrite();
 						}
 						// Do Nothing if the evicted row is not dirty.
+						if (!result.getRequest().isPrefetch())
+							recordServiced(result.getRequest(), c, time);
+						this.pool.release(result.getRequest());
 					}
 				}
 			}
 
+			// Prefetches are only looked up when the cache has nothing else to do
+			else if (currCache.getStatus() == 0 && currCache.peekPrefetch() != null) {
+				if (currCache.peekPrefetch().getTime() <= time)
+					lookUpPrefetch(c, time);
+			}
+
 			// No requests/outstandingMisses atm.
 			else if (currCache.getStatus() == 0) {
 				// The cache is waiting for a request.
-				finished[c] = true;
+				finished++;
 			}
 
 			// Current Cache is busy, must let its latency timer tick down
@@ -253,35 +384,33 @@ public class ParallelMemoryHierarchy {
 
 		// Want to resolve any leftover outstandingMisses from the last cache (AKA memory accesses)
 		if (outstandingRequest != null) {
-			System.out.println("MEMORY READ ACCESS!");
+			EventLog.log(LogLevel.ACCESS, "MEMORY READ ACCESS!");
+			this.metrics.countMemoryRead();
 			// Send timing of read access.
-			int readTime = (time - outstandingRequest.getStartTime()) + (IntStream.of(this.latencies).sum() + 100 + this.caches[this.layers - 1].getLatency());
-			System.out.println("Read Access complete in: " + (readTime) + " cycles. Request: " + outstandingRequest.toString() + "\n");
+			int readTime = (time - outstandingRequest.getStartTime()) + (this.latencySum + 100 + this.caches[this.layers - 1].getLatency());
+			if (EventLog.enabled(LogLevel.ACCESS))
+				EventLog.log(LogLevel.ACCESS, "Read Access complete in: " + (readTime) + " cycles. Request: " + outstandingRequest.toString() + "\n");
+			this.metrics.recordLatency(outstandingRequest.getReadWriteEvict(), this.layers, readTime);
+
+			// Send an update request to lowest cache to write in the data from memory.
+			Request evictRequest = this.pool.acquireFill(outstandingRequest.getID(), outstandingRequest.getAddress(), null, (time + 100 + this.caches[this.caches.length - 1].getLatency()), time);
+			this.pool.release(outstandingRequest);
 
 			// False Read Data
-			int[] data = new int[this.blocksize];
-			int block = (outstandingRequest.getAddress() % this.blocksize);
-			for (int i = 0; i < this.blocksize; i++) {
-				if (i == block)
-					data[i] = this.memAccess;
-				else
-					data[i] = 0;
+			if (this.storeData) {
+				int block = (evictRequest.getAddress() % this.blocksize);
+				evictRequest.getBlockData()[block] = this.memAccess;
 			}
 			this.memAccess++;
 
-			// Send an update request to lowest cache to write in the data from memory.
-			Request evictRequest = new Request(outstandingRequest.getID(), 2, outstandingRequest.getAddress(), data, (time + 100 + this.caches[this.caches.length - 1].getLatency()), time);
+			this.pool.share(evictRequest, this.layers);
 			for (int i = 0; i < this.layers; i++) {
 				this.caches[i].addOutstandingRequest(evictRequest);
 			}
 		}
 
 		// Boolean check to see if the system is done with requests.
-		boolean complete = true;
-		for (int f = 0; f < this.layers; f++) {
-			if (finished[f] == false)
-				complete = false;
-		}
+		boolean complete = finished == this.layers;
 
 		// Return Statements
 		if (usedRequest)
@@ -292,53 +421,517 @@ public class ParallelMemoryHierarchy {
 			return 1;
 	}
 
+	/**
+	 * Apply one request to the caches at once, without timing, queues or MSHRs.
+	 * Every cache sees the same lookups, writes, fills and write-backs cycle()
+	 * would give it for the request, one after another instead of interleaved
+	 * with other requests, and no latency is recorded. Used to warm the caches
+	 * up quickly between detailed runs, so it must only be called while no
+	 * requests are in flight.
+	 * 
+	 * @param readWrite -> 0 for Read, 1 for Write
+	 * @param address
+	 * @param data      -> Data of a write
+	 * @throws IllegalStateException if the hierarchy is not NINE
+	 */
+	public void warm(int readWrite, int address, int data) {
+		if (this.inclusion != InclusionPolicy.NINE)
+			throw new IllegalStateException("Only a NINE hierarchy can be warmed up, " + this.inclusion + " is kept in cycle() only");
+		if (readWrite == 1) {
+			for (int c = 0; c < this.layers; c++) {
+				if (this.policy == 1) {
+					this.caches[c].writeThroughData(address, data);
+					if (c == this.layers - 1)
+						this.metrics.countMemoryWrite();
+					continue;
+				}
+				// As in cycle(), only the last cache writes back the row it evicts
+				CacheRow evicted = this.caches[c].writeBackData(address, data);
+				if (evicted != null && evicted.getDirty() && c == this.layers - 1)
+					this.metrics.countMemoryWrite();
+			}
+			return;
+		}
+
+		int c;
+		for (c = 0; c < this.layers; c++) {
+			ValidData result = this.caches[c].readDataFromCache(address);
+			if (result.getValid()) {
+				// Copy the block out, the fills below may replace the row it came from
+				if (this.storeData)
+					System.arraycopy(result.getData().getBlockData(), 0, this.warmBlock, 0, this.blocksize);
+				break;
+			}
+		}
+		if (c == this.layers) {
+			this.metrics.countMemoryRead();
+			if (this.storeData) {
+				Arrays.fill(this.warmBlock, 0);
+				this.warmBlock[address % this.blocksize] = this.memAccess;
+			}
+			this.memAccess++;
+		}
+
+		// Fill every cache that missed, sending dirty rows they evict down a level
+		for (int i = 0; i < c; i++) {
+			CacheRow evicted = this.caches[i].evictRow(address, this.warmBlock);
+			for (int j = i + 1; evicted.getDirty(); j++) {
+				if (j == this.layers) {
+					this.metrics.countMemoryWrite();
+					break;
+				}
+				evicted = this.caches[j].evictRow(this.caches[j - 1].getRowAddress(evicted), evicted.getBlockData());
+			}
+		}
+	}
+
+	/**
+	 * Let the prefetcher of cache c see a demand access it just ran, and send the
+	 * blocks it asks for down the hierarchy. Blocks already in the cache or in
+	 * flight are left alone. A prefetch takes an MSHR like a miss does, but only
+	 * while another stays free for demand misses, and is dropped otherwise.
+	 */
+	private void issuePrefetches(int c, int address, boolean hit, int time) {
+		Cache cache = this.caches[c];
+		int n = cache.train(address, hit, this.prefetchAddresses);
+		for (int i = 0; i < n; i++) {
+			int target = this.prefetchAddresses[i];
+			if (cache.contains(target) || cache.getMSHR().containsAddress(target))
+				continue;
+			if (cache.getCurrMissesSize() + 1 >= this.outstandingMisses) {
+				cache.getPrefetchMetrics().countDropped();
+				continue;
+			}
+			Request prefetch = this.pool.acquire(this.requestIDs++, 0, target, 0, time + cache.getLatency(), time);
+			prefetch.setPrefetcher(c);
+			cache.addCurrMiss(prefetch);
+			cache.getPrefetchMetrics().countIssued();
+			if (EventLog.enabled(LogLevel.ACCESS))
+				EventLog.log(LogLevel.ACCESS, "Cache " + c + " prefetching address " + target);
+			if (c < this.layers - 1)
+				this.caches[c + 1].addPrefetch(prefetch);
+			else
+				prefetchFromMemory(prefetch, time);
+		}
+	}
+
+	/**
+	 * Look up the next prefetch waiting at cache c. A hit sends the block back
+	 * to the cache that prefetched it, a miss passes the prefetch down. Only the
+	 * time of the cache is taken, nothing is counted as an access of it.
+	 */
+	private void lookUpPrefetch(int c, int time) {
+		Cache cache = this.caches[c];
+		Request prefetch = cache.pollPrefetch();
+		cache.setStatus(cache.getLatency() - 1);
+		CacheRow row = cache.probe(prefetch.getAddress());
+		if (row != null) {
+			Request fill = this.pool.acquireFill(prefetch.getID(), prefetch.getAddress(), row.getBlockData(), time + cache.getLatency(), prefetch.getStartTime());
+			fill.setPrefetcher(prefetch.getPrefetcher());
+			this.caches[prefetch.getPrefetcher()].addOutstandingRequest(fill);
+			this.pool.release(prefetch);
+		} else if (c < this.layers - 1) {
+			prefetch.setTime(time + cache.getLatency());
+			this.caches[c + 1].addPrefetch(prefetch);
+		} else {
+			prefetchFromMemory(prefetch, time);
+		}
+	}
+
+	/**
+	 * Read a prefetch's block from memory, after a miss in the last cache at
+	 * time, and send it to the cache that prefetched it.
+	 */
+	private void prefetchFromMemory(Request prefetch, int time) {
+		this.metrics.countMemoryRead();
+		Request fill = this.pool.acquireFill(prefetch.getID(), prefetch.getAddress(), null, time + 100 + this.caches[this.layers - 1].getLatency(), prefetch.getStartTime());
+		fill.setPrefetcher(prefetch.getPrefetcher());
+		if (this.storeData)
+			fill.getBlockData()[fill.getAddress() % this.blocksize] = this.memAccess;
+		this.memAccess++;
+		this.caches[prefetch.getPrefetcher()].addOutstandingRequest(fill);
+		this.pool.release(prefetch);
+	}
+
+	/**
+	 * Send the block of a prefetch's fill at cache c on to every cache above it,
+	 * for the misses from above that merged into the prefetch.
+	 */
+	private void fillAbove(Request fill, int c, int time) {
+		Request update = this.pool.acquireFill(fill.getID(), fill.getAddress(), fill.getBlockData(), time + this.caches[c].getLatency(), time);
+		moveUp(c, update);
+		this.pool.share(update, c);
+		for (int i = 0; i < c; i++)
+			this.caches[i].addOutstandingRequest(update);
+	}
+
+	/**
+	 * Take the block of a row cache c evicted out of every cache above it, if
+	 * the hierarchy is inclusive. The newest dirty copy among them replaces the
+	 * row's block and makes the row dirty, so it is written back in their place.
+	 * 
+	 * @param evicted -> Row evicted, nothing is done if null or invalid
+	 */
+	private void backInvalidate(int c, CacheRow evicted) {
+		if (this.inclusion != InclusionPolicy.INCLUSIVE || evicted == null || !evicted.getValid())
+			return;
+		int address = this.caches[c].getRowAddress(evicted);
+		// Closest to the first cache last, so its copy wins if several are dirty
+		for (int i = c - 1; i >= 0; i--) {
+			CacheRow copy = this.caches[i].invalidate(address);
+			if (copy == null)
+				continue;
+			this.inclusionMetrics.countBackInvalidation(i, copy.getDirty());
+			if (copy.getDirty()) {
+				if (this.storeData)
+					System.arraycopy(copy.getBlockData(), 0, evicted.getBlockData(), 0, this.blocksize);
+				evicted.setDirty(true);
+			}
+		}
+	}
+
+	/**
+	 * Take a block cache c hit on out of it, if the hierarchy is exclusive, for
+	 * the fill taking it up to the first cache. The fill carries its dirty bit.
+	 */
+	private void moveUp(int c, Request update) {
+		if (this.inclusion != InclusionPolicy.EXCLUSIVE)
+			return;
+		CacheRow moved = this.caches[c].invalidate(update.getAddress());
+		if (moved != null) {
+			update.setDirty(moved.getDirty());
+			this.inclusionMetrics.countMovedUp(c);
+		}
+	}
+
+	/**
+	 * Move a row cache c evicted down into the next cache, clean or not, for an
+	 * exclusive hierarchy. Below the last cache only a dirty row goes on, to
+	 * memory.
+	 * 
+	 * @param evicted -> Row evicted, nothing is done if null or invalid
+	 * @return Fill for the next cache, null if none
+	 */
+	private Request moveDown(int c, CacheRow evicted, int time) {
+		if (evicted == null || !evicted.getValid())
+			return null;
+		if (c == this.layers - 1) {
+			// Memory is already up to date under write-through
+			if (evicted.getDirty() && this.policy == 0) {
+				// Fake memory Write
+				EventLog.log(LogLevel.ACCESS, "MEMORY WRITE!");
+				this.metrics.countMemoryWrite();
+			}
+			return null;
+		}
+		this.inclusionMetrics.countMovedDown(c);
+		Request fill = this.pool.acquireFill(this.requestIDs++, this.caches[c].getRowAddress(evicted), evicted.getBlockData(), time + this.caches[c].getLatency(), time);
+		fill.setDirty(evicted.getDirty());
+		return fill;
+	}
+
+	/**
+	 * Take the block of a write-back write out of the cache below the first that
+	 * holds it, if the first cache misses and the hierarchy is exclusive. The
+	 * first cache takes the block over.
+	 * 
+	 * @return Copy of the row taken out, null if none. Reused by the next call on
+	 *         that cache.
+	 */
+	private CacheRow pullUp(int address) {
+		if (this.caches[0].contains(address))
+			return null;
+		for (int c = 1; c < this.layers; c++) {
+			CacheRow moved = this.caches[c].invalidate(address);
+			if (moved != null) {
+				this.inclusionMetrics.countMovedUp(c);
+				return moved;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Report reads that were merged into a miss as complete, now that the fill
+	 * for their block has reached the cache they missed in.
+	 */
+	private void completeMerged(List<Request> merged, int c, int time) {
+		for (int i = 0; i < merged.size(); i++) {
+			Request r = merged.get(i);
+			int readTime = time - r.getStartTime() + this.caches[c].getLatency();
+			if (EventLog.enabled(LogLevel.ACCESS))
+				EventLog.log(LogLevel.ACCESS, "Read Access complete in: " + readTime + " cycles. Request: " + r.toString() + "\n");
+			this.metrics.recordLatency(0, c, readTime);
+			this.pool.release(r);
+		}
+	}
+
+	/**
+	 * Record the latency of a write or eviction that went no further than cache c
+	 */
+	private void recordServiced(Request r, int c, int time) {
+		this.metrics.recordLatency(r.getReadWriteEvict(), c, time - r.getStartTime() + this.caches[c].getAccessLatency());
+	}
+
+	/**
+	 * Find the next cycle in which cycle() does any work. In every cycle before
+	 * it, each busy cache only counts its status down, so those cycles can be
+	 * skipped with skip().
+	 * 
+	 * The pending events are read straight from the hierarchy: a busy cache
+	 * frees up when its status runs out, the first cache waits on the time of
+	 * the head of its queue (requests coming back from memory and later
+	 * levels), an idle cache with no requests waits on the time of its first
+	 * prefetch, and Main knows when the next request arrives. With a handful of
+	 * caches this is the same as keeping them in a priority queue, without
+	 * stale events to clear.
+	 * 
+	 * @param request -> Request that would be given to cycle(), null if none
+	 * @param time    -> Current cycle
+	 * @param arrival -> Arrival time of the next request Main has yet to send, -1
+	 *                if none
+	 * @return The next busy cycle, time itself if cycle() has work now, or -1 if
+	 *         nothing is pending at all
+	 */
+	public int nextEvent(Request request, int time, int arrival) {
+		int next = arrival > time ? arrival : -1;
+		if (arrival >= 0 && arrival <= time)
+			return time;
+
+		for (int c = 0; c < this.layers; c++) {
+			Cache currCache = this.caches[c];
+			Request head = currCache.peekOutstandingRequest();
+			int event = -1;
+			if (currCache.getStatus() > 0)
+				event = time + currCache.getStatus();
+			else if (c == 0 && request != null)
+				return time;
+			else if (head != null && (c != 0 || head.getTime() <= time))
+				return time;
+			else if (head != null)
+				event = head.getTime();
+			else if (currCache.peekPrefetch() != null && currCache.peekPrefetch().getTime() <= time)
+				return time;
+			else if (currCache.peekPrefetch() != null)
+				event = currCache.peekPrefetch().getTime();
+
+			if (event >= 0 && (next < 0 || event < next))
+				next = event;
+		}
+		return next;
+	}
+
+	/**
+	 * Run the idle cycles from time up to target in one step. Only valid when
+	 * target is no later than nextEvent().
+	 * 
+	 * @param time   -> Current cycle
+	 * @param target -> Cycle to resume cycle() at
+	 * @return What cycle() would have returned for each skipped cycle: -1 if
+	 *         every cache is done, 1 if some are busy
+	 */
+	public int skip(int time, int target) {
+		this.metrics.advance(target);
+		boolean complete = true;
+		for (Cache c : this.caches) {
+			if (c.getStatus() > 0) {
+				c.setStatus(c.getStatus() - (target - time));
+				complete = false;
+			} else if (c.peekOutstandingRequest() != null || c.peekPrefetch() != null) {
+				complete = false;
+			}
+		}
+		return complete ? -1 : 1;
+	}
+
 	/**
 	 * Send request to cache. The request type is determined by inner parameters.
-	 * The result depends if there was a hit or not in the cache.
+	 * The result depends if there was a hit or not in the cache. The result
+	 * object is reused by the next send.
 	 * 
 	 * @param request
 	 * @param c
+	 * @param level   -> Index of the cache, for its prefetcher
+	 * @param time    -> Current cycle, for its prefetcher
 	 * @return
 	 */
-	private RequestResult sendRequest(Request request, Cache c) {
+	private RequestResult sendRequest(Request request, Cache c, int level, int time) {
 		// Set cache to busy. Subtract 1 for the current cycle
 		c.setStatus(c.getLatency() - 1);
 
 		// Read request
 		if (request.getReadWriteEvict() == 0) {
 			ValidData cacheResult = c.readDataFromCache(request.getAddress());
+			// A miss that looked in the victim cache keeps the cache busy for that too
+			c.setStatus(c.getAccessLatency() - 1);
+			if (c.getPrefetcher() != null)
+				issuePrefetches(level, request.getAddress(), cacheResult.getValid(), time);
 			if (cacheResult.getValid()) {
-				return new RequestResult(request, cacheResult.getData(), 1);
+				return this.sendResult.set(request, cacheResult.getData(), 1);
 			}
 			// Outstanding Miss to the next cache
 			else {
-				return new RequestResult(request, null, -1);
+				return this.sendResult.set(request, null, -1);
 			}
 		}
 		// Write request
 		else if (request.getReadWriteEvict() == 1) {
 			// Write Back Policy
 			if (this.policy == 0) {
+				CacheRow moved = this.inclusion == InclusionPolicy.EXCLUSIVE && level == 0 ? pullUp(request.getAddress()) : null;
 				CacheRow evicted = c.writeBackData(request.getAddress(), request.getData());
+				c.setStatus(c.getAccessLatency() - 1);
+				if (moved != null) {
+					// The rest of the block comes up with it
+					int[] block = moved.getBlockData();
+					if (this.storeData)
+						block[request.getAddress() % this.blocksize] = request.getData();
+					c.writeBackBlock(request.getAddress(), block);
+				}
+				if (c.getPrefetcher() != null)
+					issuePrefetches(level, request.getAddress(), evicted == null, time);
 
 				if (evicted == null)
-					return new RequestResult(request, evicted, 2);
+					return this.sendResult.set(request, evicted, 2);
 				else
-					return new RequestResult(request, evicted, -2);
+					return this.sendResult.set(request, evicted, -2);
 			}
 			// Write Trough Policy
 			else {
 				c.writeThroughData(request.getAddress(), request.getData());
-				return new RequestResult(request, null, 2);
+				// Write-through does not allocate, so the block is there only if the write hit
+				if (c.getPrefetcher() != null)
+					issuePrefetches(level, request.getAddress(), c.contains(request.getAddress()), time);
+				return this.sendResult.set(request, null, 2);
 			}
 		}
 		// Evict Request
 		else {
-			CacheRow evicted = c.evictRow(request.getAddress(), request.getBlockData());
-			return new RequestResult(request, evicted, 0);
+			CacheRow evicted;
+			if (request.isPrefetch())
+				evicted = c.fillPrefetch(request.getAddress(), request.getBlockData());
+			// An exclusive hierarchy fills a missed block into the first cache only, the
+			// caches between only see their misses complete
+			else if (this.inclusion == InclusionPolicy.EXCLUSIVE && level > 0 && c.containsMiss(request))
+				evicted = null;
+			// A dirty block written back to a cache that has it is written in place
+			else if (request.isDirty() && c.writeBackBlock(request.getAddress(), request.getBlockData()))
+				evicted = null;
+			else
+				evicted = c.evictRow(request.getAddress(), request.getBlockData(), request.isDirty());
+			return this.sendResult.set(request, evicted, 0);
+		}
+	}
+
+	/**
+	 * True if no cache has a request or prefetch queued or a miss outstanding
+	 */
+	public boolean isIdle() {
+		for (Cache c : this.caches)
+			if (c.getOutstandingRequestsSize() > 0 || c.getCurrMissesSize() > 0 || c.getPrefetchesSize() > 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Get Caches
+	 */
+	public Cache[] getCaches() {
+		return this.caches;
+	}
+
+	/**
+	 * Write the whole state of the hierarchy to a checkpoint file, requests in
+	 * flight included, so later runs can start from it with restore() instead of
+	 * running the same warm-up. A request not yet taken by cycle() is not part
+	 * of the hierarchy and is not saved. Nothing is left in the file's place if
+	 * writing fails.
+	 * 
+	 * @param filename
+	 * @param now      -> Current cycle
+	 * @throws IOException
+	 */
+	public void checkpoint(String filename, int now) throws IOException {
+		try (CheckpointWriter out = new CheckpointWriter(filename, CheckpointFormat.PARALLEL_MEMORY_HIERARCHY)) {
+			out.writeInt(this.layers);
+			out.writeInt(this.policy);
+			out.writeInt(this.blocksize);
+			out.writeInt(this.outstandingMisses);
+			out.writeInt(now);
+			out.writeInt(this.memAccess);
+			out.writeInt(this.requestIDs);
+			this.metrics.save(out);
+			out.writeString(this.inclusion.name());
+			this.inclusionMetrics.save(out);
+			RequestTable requests = new RequestTable();
+			for (Cache c : this.caches)
+				c.save(out, requests);
+		} catch (IOException | RuntimeException e) {
+			// A partial checkpoint would only fail later, on restore
+			new File(filename).delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Load a checkpoint written by a hierarchy of the same shape, replacing the
+	 * whole state of this one. Every time in the checkpoint moves by the same
+	 * amount, so from cycle now the hierarchy does what the saved one would have
+	 * done from the cycle it was saved in.
+	 * 
+	 * @param filename
+	 * @param now      -> Cycle to carry on from, such as 0 for a new trace
+	 * @throws IOException           if the file is not a checkpoint of this shape
+	 * @throws IllegalStateException if the hierarchy has requests in flight
+	 */
+	public void restore(String filename, int now) throws IOException {
+		if (!isIdle())
+			throw new IllegalStateException("Only a hierarchy with no requests in flight can be restored");
+		try (CheckpointReader in = new CheckpointReader(filename, CheckpointFormat.PARALLEL_MEMORY_HIERARCHY)) {
+			in.expect(this.layers, "# of caches");
+			in.expect(this.policy, "policy");
+			in.expect(this.blocksize, "blocksize");
+			in.expect(this.outstandingMisses, "# of outstanding misses");
+			int saved = in.readInt();
+			this.memAccess = in.readInt();
+			this.requestIDs = in.readInt();
+			this.metrics.restore(in, now);
+			in.expect(this.inclusion.name(), "inclusion policy");
+			this.inclusionMetrics.restore(in);
+			RequestTable requests = new RequestTable(this.pool, now - saved);
+			for (Cache c : this.caches)
+				c.restore(in, requests);
 		}
 	}
 
+	/**
+	 * Get the inclusion policy
+	 */
+	public InclusionPolicy getInclusionPolicy() {
+		return this.inclusion;
+	}
+
+	/**
+	 * Get the counts of back-invalidations and moves between caches
+	 */
+	public InclusionMetrics getInclusionMetrics() {
+		return this.inclusionMetrics;
+	}
+
+	/**
+	 * Get the counters of the caches and memory, and their snapshots
+	 */
+	public MetricsRegistry getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Get the pool requests sent to this hierarchy must be taken from
+	 */
+	public RequestPool getRequestPool() {
+		return this.pool;
+	}
+
 	/**
 	 * Return the status of the Memory Hierarchy
 	 */
@@ -351,9 +944,20 @@ public class ParallelMemoryHierarchy {
 			sb.append("\nCache " + i + " Total Latency: " + c.getTotalLatency());
 			sb.append("\nCache " + i + " Hit Rate: " + c.getHitRate());
 			sb.append("\nCache " + i + " Miss Rate: " + c.getMissRate());
+			if (c.getMissClassifier() != null)
+				sb.append("\nCache " + i + " " + c.getMissClassifier());
+			if (c.getPrefetcher() != null)
+				sb.append("\nCache " + i + " " + c.getPrefetchMetrics().report(c.getMetrics().getMisses()));
+			if (c.getVictimCache() != null)
+				sb.append("\nCache " + i + " " + c.getVictimCache());
+			sb.append("\nCache " + i + " MSHR Peak Occupancy: " + c.getMSHR().getPeak() + ", Allocated: "
+					+ c.getMSHR().getAllocations() + ", Merged: " + c.getMSHR().getMerges());
 			sb.append("\n" + c.toString());
 			i++;
 		}
+		sb.append("\n\n" + this.inclusionMetrics.report(this.inclusion, this.caches));
+		sb.append("\n\nLatency Percentiles (cycles)");
+		sb.append(this.metrics.getLatencyReport());
 		return sb.toString();
 	}
 
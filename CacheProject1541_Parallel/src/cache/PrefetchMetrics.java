@@ -0,0 +1,139 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Running counts of what the prefetcher of one cache has done, and how much
+ * it helped:
+ *
+ * Accuracy -> share of the prefetches sent whose block was used
+ *
+ * Coverage -> share of the misses the cache would have had without
+ * prefetching that a prefetch took care of
+ *
+ * Timeliness -> share of the used prefetches whose block arrived before it
+ * was wanted, the rest were late and only shortened a miss
+ */
+public class PrefetchMetrics {
+	private long issued; // # of prefetches sent down
+	private long dropped; // # of prefetches not sent because too few MSHRs were free
+	private long useful; // # of prefetched blocks a demand access used
+	private long late; // # of those still in flight when the demand access missed
+	private long useless; // # of prefetched blocks evicted without being used
+
+	/**
+	 * Count a prefetch sent down
+	 */
+	public void countIssued() {
+		this.issued++;
+	}
+
+	/**
+	 * Count a prefetch not sent because too few MSHRs were free
+	 */
+	public void countDropped() {
+		this.dropped++;
+	}
+
+	/**
+	 * Count the first use of a prefetched block
+	 */
+	public void countUseful() {
+		this.useful++;
+	}
+
+	/**
+	 * Count a demand miss to a block a prefetch is still fetching
+	 */
+	public void countLate() {
+		this.useful++;
+		this.late++;
+	}
+
+	/**
+	 * Count a prefetched block evicted without being used
+	 */
+	public void countUseless() {
+		this.useless++;
+	}
+
+	// Getter Functions
+
+	public long getIssued() {
+		return this.issued;
+	}
+
+	public long getDropped() {
+		return this.dropped;
+	}
+
+	public long getUseful() {
+		return this.useful;
+	}
+
+	public long getLate() {
+		return this.late;
+	}
+
+	public long getUseless() {
+		return this.useless;
+	}
+
+	/**
+	 * Get the share of the prefetches sent whose block was used
+	 */
+	public double getAccuracy() {
+		return this.issued == 0 ? 0 : (double) this.useful / this.issued;
+	}
+
+	/**
+	 * Get the share of the misses there would have been without prefetching that
+	 * a prefetch took care of. Late prefetches are still counted as misses of
+	 * the cache, so they are taken out of misses before adding every useful
+	 * prefetch back in.
+	 *
+	 * @param misses -> Misses of the cache
+	 */
+	public double getCoverage(long misses) {
+		long without = misses - this.late + this.useful;
+		return without == 0 ? 0 : (double) this.useful / without;
+	}
+
+	/**
+	 * Get the share of the used prefetches that were not late
+	 */
+	public double getTimeliness() {
+		return this.useful == 0 ? 0 : (double) (this.useful - this.late) / this.useful;
+	}
+
+	/**
+	 * Counts, then accuracy, coverage and timeliness
+	 *
+	 * @param misses -> Misses of the cache, for the coverage
+	 */
+	public String report(long misses) {
+		return String.format(
+				"Prefetches Issued: %d, Dropped: %d, Useful: %d, Late: %d, Useless: %d, Accuracy: %.4f, Coverage: %.4f, Timeliness: %.4f",
+				this.issued, this.dropped, this.useful, this.late, this.useless, getAccuracy(), getCoverage(misses),
+				getTimeliness());
+	}
+
+	/**
+	 * Write every count to a checkpoint
+	 */
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeLongs(new long[] { this.issued, this.dropped, this.useful, this.late, this.useless });
+	}
+
+	/**
+	 * Read back the counts save() wrote
+	 */
+	public void restore(CheckpointReader in) throws IOException {
+		long[] counts = in.readLongs(new long[5]);
+		this.issued = counts[0];
+		this.dropped = counts[1];
+		this.useful = counts[2];
+		this.late = counts[3];
+		this.useless = counts[4];
+	}
+}
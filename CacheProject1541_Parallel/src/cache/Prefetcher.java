@@ -0,0 +1,36 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Guesses which blocks a cache will want next from the demand accesses it
+ * sees. A cache owns at most one prefetcher, which the hierarchy tells about
+ * every demand read and write the cache runs. The blocks it names are looked
+ * up in the levels below and filled into that cache alone.
+ */
+public interface Prefetcher {
+
+	/**
+	 * A demand access ran in the cache.
+	 * 
+	 * @param block       -> Block address, the address without its block offset
+	 * @param hit         -> True if the cache hit
+	 * @param prefetchHit -> True if the hit was the first use of a prefetched
+	 *                    block
+	 * @param prefetches  -> Where to write the blocks to prefetch
+	 * @return # of blocks written, no more than the length of prefetches
+	 */
+	int access(int block, boolean hit, boolean prefetchHit, int[] prefetches);
+
+	/**
+	 * Write the state of the prefetcher to a checkpoint.
+	 */
+	void save(CheckpointWriter out) throws IOException;
+
+	/**
+	 * Read back what save() wrote, into a prefetcher of the same shape.
+	 * 
+	 * @throws IOException if the checkpoint holds state of another shape
+	 */
+	void restore(CheckpointReader in) throws IOException;
+}
@@ -0,0 +1,26 @@
+package cache;
+
+/**
+ * The built-in prefetchers.
+ */
+public enum PrefetcherType {
+	NEXT_LINE, STRIDE, STREAM;
+
+	private static final int STREAMS = 4; // # of streams of a stream prefetcher
+
+	/**
+	 * Build a prefetcher of this type for a cache.
+	 * 
+	 * @param degree -> # of blocks fetched ahead
+	 */
+	public Prefetcher create(int degree) {
+		switch (this) {
+		case STRIDE:
+			return new StridePrefetcher(degree);
+		case STREAM:
+			return new StreamPrefetcher(STREAMS, degree);
+		default:
+			return new NextLinePrefetcher(degree);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Decides which way of an index is evicted. A cache owns one policy, and the
+ * policy keeps its own state for every (index, way) location.
+ */
+public interface ReplacementPolicy {
+
+	/**
+	 * A valid row was hit.
+	 */
+	void touch(int index, int way);
+
+	/**
+	 * A new block was placed into a row.
+	 */
+	void fill(int index, int way);
+
+	/**
+	 * A row was invalidated and should be the next to go.
+	 */
+	void invalidate(int index, int way);
+
+	/**
+	 * Way to evict from an index.
+	 */
+	int victim(int index);
+
+	/**
+	 * How close a row is to eviction, 0 being the furthest. Shown as the LRU
+	 * column of the cache, and compared between ways when the cache is skewed.
+	 */
+	int rank(int index, int way);
+
+	/**
+	 * Write the state of every location to a checkpoint.
+	 */
+	void save(CheckpointWriter out) throws IOException;
+
+	/**
+	 * Read back what save() wrote, into a policy of the same shape.
+	 * 
+	 * @throws IOException if the checkpoint holds state of another shape
+	 */
+	void restore(CheckpointReader in) throws IOException;
+}
@@ -0,0 +1,33 @@
+package cache;
+
+/**
+ * The built-in replacement policies.
+ */
+public enum ReplacementType {
+	LRU, TREE_PLRU, BIT_PLRU, SRRIP, BRRIP, FIFO, RANDOM;
+
+	/**
+	 * Build a policy of this type for a cache.
+	 * 
+	 * @param indexSize -> # of index locations in one set
+	 * @param ways      -> # of sets (ways) in the cache
+	 */
+	public ReplacementPolicy create(int indexSize, int ways) {
+		switch (this) {
+		case TREE_PLRU:
+			return new TreePLRUPolicy(indexSize, ways);
+		case BIT_PLRU:
+			return new BitPLRUPolicy(indexSize, ways);
+		case SRRIP:
+			return new RRIPPolicy(indexSize, ways, false);
+		case BRRIP:
+			return new RRIPPolicy(indexSize, ways, true);
+		case FIFO:
+			return new FIFOPolicy(indexSize, ways);
+		case RANDOM:
+			return new RandomPolicy(indexSize, ways, 1541);
+		default:
+			return new LRUPolicy(indexSize, ways);
+		}
+	}
+}
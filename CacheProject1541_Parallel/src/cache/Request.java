@@ -8,6 +8,9 @@ public class Request {
 	private int[] block;
 	private int time;
 	private int startTime;
+	private int holders; // # of queues or owners still using a pooled request, 0 once free, -1 if not pooled
+	private int prefetcher; // Cache whose prefetcher made this request, -1 for demand requests
+	private boolean dirty; // True for a fill whose block still has to be written back
 
 	public Request(int id, int readWriteEvict, int address, int data, int time, int startTime) {
 		this.id = id;
@@ -16,6 +19,9 @@ public class Request {
 		this.data = data;
 		this.time = time;
 		this.startTime = startTime;
+		this.holders = -1;
+		this.prefetcher = -1;
+		this.dirty = false;
 	}
 
 	public Request(int id, int readWriteEvict, int evictAddress, int[] blockData, int time, int startTime) {
@@ -25,6 +31,38 @@ public class Request {
 		this.block = blockData;
 		this.time = time;
 		this.startTime = startTime;
+		this.holders = -1;
+		this.prefetcher = -1;
+		this.dirty = false;
+	}
+
+	/**
+	 * Reuse a pooled request for a read or write.
+	 */
+	void set(int id, int readWriteEvict, int address, int data, int time, int startTime) {
+		this.id = id;
+		this.readWriteEvict = readWriteEvict;
+		this.address = address;
+		this.data = data;
+		this.time = time;
+		this.startTime = startTime;
+		this.prefetcher = -1;
+		this.dirty = false;
+	}
+
+	/**
+	 * Give a pooled request its own block buffer, which set() leaves in place.
+	 */
+	void setBlockBuffer(int[] block) {
+		this.block = block;
+	}
+
+	int getHolders() {
+		return this.holders;
+	}
+
+	void setHolders(int holders) {
+		this.holders = holders;
 	}
 
 	public int getID() {
@@ -63,6 +101,33 @@ public class Request {
 		this.startTime = t;
 	}
 
+	/**
+	 * Get the cache whose prefetcher made this request, -1 for demand requests
+	 */
+	public int getPrefetcher() {
+		return this.prefetcher;
+	}
+
+	public void setPrefetcher(int c) {
+		this.prefetcher = c;
+	}
+
+	public boolean isPrefetch() {
+		return this.prefetcher >= 0;
+	}
+
+	/**
+	 * True for a fill whose block still has to be written back, such as a dirty
+	 * block written back or moved between caches
+	 */
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	public void setDirty(boolean d) {
+		this.dirty = d;
+	}
+
 	public String toString() {
 		return String.format("ID: %d\t| Read(0)/Write(1)/Evict(2) %d | Address: %d\t| Data: %d\t| Time: %d |", id, readWriteEvict, address,
 				data, time);
@@ -0,0 +1,113 @@
+package cache;
+
+import java.util.Arrays;
+
+/**
+ * Recycles the requests of one hierarchy, so a running simulation stops
+ * allocating once the pool has grown to the most requests ever in flight.
+ * 
+ * Each request counts its holders: the owner of a read or write, or each
+ * cache queue a fill was handed to. Holders give the request back with
+ * release() when they are done with it, and the last one returns it to the
+ * pool. In data mode every pooled request keeps its own block buffer, so
+ * fills copy block data into it instead of holding on to a cache's rows.
+ */
+public class RequestPool {
+	private Request[] free; // Requests ready to be reused
+	private int freeCount; // # of requests in free
+	private int blocksize; // Number of data locations within block
+	private boolean storeData; // False when requests carry no block data
+	private int created; // # of requests the pool has ever made
+
+	/**
+	 * Initialize a pool.
+	 * 
+	 * @param capacity  -> # of requests made up front
+	 * @param blocksize -> Number of data locations within block
+	 * @param storeData -> False for tag-only hierarchies, whose fills carry no
+	 *                  block data
+	 */
+	public RequestPool(int capacity, int blocksize, boolean storeData) {
+		this.free = new Request[Math.max(capacity, 16)];
+		this.blocksize = blocksize;
+		this.storeData = storeData;
+		for (int i = 0; i < capacity; i++)
+			this.free[this.freeCount++] = create();
+	}
+
+	/**
+	 * Take a read or write request with one holder.
+	 */
+	public Request acquire(int id, int readWrite, int address, int data, int time, int startTime) {
+		Request r = this.freeCount > 0 ? this.free[--this.freeCount] : create();
+		r.set(id, readWrite, address, data, time, startTime);
+		r.setHolders(1);
+		return r;
+	}
+
+	/**
+	 * Take a fill request with one holder.
+	 * 
+	 * @param block -> Block data copied into the request, null for an empty block
+	 */
+	public Request acquireFill(int id, int address, int[] block, int time, int startTime) {
+		Request r = acquire(id, 2, address, 0, time, startTime);
+		if (this.storeData) {
+			if (block == null)
+				Arrays.fill(r.getBlockData(), 0);
+			else
+				System.arraycopy(block, 0, r.getBlockData(), 0, this.blocksize);
+		}
+		return r;
+	}
+
+	/**
+	 * Set how many holders share a request, such as every queue a fill is handed
+	 * to. Each of them must release it.
+	 */
+	public void share(Request r, int holders) {
+		r.setHolders(holders);
+	}
+
+	/**
+	 * Give a request back. It returns to the pool once its last holder is done.
+	 * Requests made outside a pool are left alone.
+	 * 
+	 * @throws IllegalStateException if the request is already free
+	 */
+	public void release(Request r) {
+		if (r.getHolders() < 0)
+			return;
+		if (r.getHolders() == 0)
+			throw new IllegalStateException("Request released more often than it was held: " + r);
+		r.setHolders(r.getHolders() - 1);
+		if (r.getHolders() > 0)
+			return;
+		if (this.freeCount == this.free.length)
+			this.free = Arrays.copyOf(this.free, this.free.length * 2);
+		this.free[this.freeCount++] = r;
+	}
+
+	/**
+	 * Get # of requests handed out and not yet returned
+	 */
+	public int getInUse() {
+		return this.created - this.freeCount;
+	}
+
+	/**
+	 * Get # of requests the pool has ever made
+	 */
+	public int getCreated() {
+		return this.created;
+	}
+
+	private Request create() {
+		Request r = new Request(0, 0, 0, 0, 0, 0);
+		r.setHolders(0);
+		if (this.storeData)
+			r.setBlockBuffer(new int[this.blocksize]);
+		this.created++;
+		return r;
+	}
+}
@@ -0,0 +1,200 @@
+package cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Outstanding requests of one cache, ordered by the time they are ready.
+ * 
+ * Reads, writes, and evictions/fills each have their own array-backed binary
+ * min-heap. The head of the queue is the earliest-ready head of the three, so
+ * a request that is ready is never stuck behind one that is not. Requests
+ * ready at the same time come out in the order they were added.
+ * 
+ * A request's ready time is read once when it is added. Changing it afterwards
+ * does not move it in the queue.
+ */
+public class RequestQueue {
+	private static final int TYPES = 3; // Read(0), Write(1), Evict(2)
+
+	private Request[][] heaps; // One heap of requests per type
+	private int[][] times; // Ready time of each heap slot, when it was added
+	private long[][] orders; // Order each heap slot was added in, for ties
+	private int[] sizes; // # of requests in each heap
+	private long added; // # of requests ever added
+
+	/**
+	 * Initialize an empty queue.
+	 */
+	public RequestQueue() {
+		this.heaps = new Request[TYPES][16];
+		this.times = new int[TYPES][16];
+		this.orders = new long[TYPES][16];
+		this.sizes = new int[TYPES];
+	}
+
+	/**
+	 * Add a request to the heap of its type.
+	 */
+	public void add(Request r) {
+		int type = r.getReadWriteEvict();
+		if (this.sizes[type] == this.heaps[type].length) {
+			int capacity = this.sizes[type] * 2;
+			this.heaps[type] = Arrays.copyOf(this.heaps[type], capacity);
+			this.times[type] = Arrays.copyOf(this.times[type], capacity);
+			this.orders[type] = Arrays.copyOf(this.orders[type], capacity);
+		}
+		int i = this.sizes[type]++;
+		set(type, i, r, r.getTime(), this.added++);
+		siftUp(type, i);
+	}
+
+	/**
+	 * Get the earliest-ready request without removing it, null if empty.
+	 */
+	public Request peek() {
+		int type = headType();
+		return type < 0 ? null : this.heaps[type][0];
+	}
+
+	/**
+	 * Remove the earliest-ready request, null if empty.
+	 */
+	public Request poll() {
+		int type = headType();
+		return type < 0 ? null : removeAt(type, 0);
+	}
+
+	/**
+	 * Remove the earliest-ready request of one type that passes a test.
+	 * 
+	 * @return Null if none pass
+	 */
+	public Request pollMatching(int type, Predicate<Request> test) {
+		int best = -1;
+		for (int i = 0; i < this.sizes[type]; i++)
+			if ((best < 0 || before(type, i, type, best)) && test.test(this.heaps[type][i]))
+				best = i;
+		return best < 0 ? null : removeAt(type, best);
+	}
+
+	/**
+	 * Get # of requests waiting
+	 */
+	public int size() {
+		return this.sizes[0] + this.sizes[1] + this.sizes[2];
+	}
+
+	/**
+	 * True if no requests are waiting
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Write every waiting request to a checkpoint, in heap order with the ready
+	 * time it was added with.
+	 */
+	void save(CheckpointWriter out, RequestTable requests) throws IOException {
+		out.writeLong(this.added);
+		for (int type = 0; type < TYPES; type++) {
+			out.writeInt(this.sizes[type]);
+			for (int i = 0; i < this.sizes[type]; i++) {
+				requests.write(out, this.heaps[type][i]);
+				out.writeInt(this.times[type][i]);
+				out.writeLong(this.orders[type][i]);
+			}
+		}
+	}
+
+	/**
+	 * Replace the waiting requests with the ones save() wrote. Every ready time
+	 * moves by the same shift, so the heaps keep their order.
+	 */
+	void restore(CheckpointReader in, RequestTable requests) throws IOException {
+		this.added = in.readLong();
+		for (int type = 0; type < TYPES; type++) {
+			int size = in.readInt();
+			int capacity = Math.max(16, size * 2);
+			this.heaps[type] = new Request[capacity];
+			this.times[type] = new int[capacity];
+			this.orders[type] = new long[capacity];
+			for (int i = 0; i < size; i++)
+				set(type, i, requests.read(in), requests.shift(in.readInt()), in.readLong());
+			this.sizes[type] = size;
+		}
+	}
+
+	/**
+	 * Type whose heap head is ready first, -1 if all are empty.
+	 */
+	private int headType() {
+		int type = -1;
+		for (int t = 0; t < TYPES; t++)
+			if (this.sizes[t] > 0 && (type < 0 || before(t, 0, type, 0)))
+				type = t;
+		return type;
+	}
+
+	private Request removeAt(int type, int i) {
+		Request removed = this.heaps[type][i];
+		int last = --this.sizes[type];
+		if (i != last) {
+			set(type, i, this.heaps[type][last], this.times[type][last], this.orders[type][last]);
+			siftDown(type, i);
+			siftUp(type, i);
+		}
+		this.heaps[type][last] = null;
+		return removed;
+	}
+
+	private void siftUp(int type, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(type, i, type, parent))
+				return;
+			swap(type, i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int type, int i) {
+		int size = this.sizes[type];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				return;
+			if (child + 1 < size && before(type, child + 1, type, child))
+				child++;
+			if (!before(type, child, type, i))
+				return;
+			swap(type, i, child);
+			i = child;
+		}
+	}
+
+	/**
+	 * True if slot i of heap a is ready before slot j of heap b.
+	 */
+	private boolean before(int a, int i, int b, int j) {
+		if (this.times[a][i] != this.times[b][j])
+			return this.times[a][i] < this.times[b][j];
+		return this.orders[a][i] < this.orders[b][j];
+	}
+
+	private void swap(int type, int i, int j) {
+		Request r = this.heaps[type][i];
+		int time = this.times[type][i];
+		long order = this.orders[type][i];
+		set(type, i, this.heaps[type][j], this.times[type][j], this.orders[type][j]);
+		set(type, j, r, time, order);
+	}
+
+	private void set(int type, int i, Request r, int time, long order) {
+		this.heaps[type][i] = r;
+		this.times[type][i] = time;
+		this.orders[type][i] = order;
+	}
+}
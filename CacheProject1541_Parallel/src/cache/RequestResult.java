@@ -11,6 +11,16 @@ public class RequestResult {
 		this.result = result;
 	}
 
+	/**
+	 * Reuse this result for the next request sent to a cache.
+	 */
+	RequestResult set(Request request, CacheRow data, int result) {
+		this.request = request;
+		this.data = data;
+		this.result = result;
+		return this;
+	}
+
 	public Request getRequest() {
 		return this.request;
 	}
@@ -0,0 +1,101 @@
+package cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Requests in flight while a hierarchy is checkpointed. One request can wait
+ * in several places at once, such as a fill handed to every cache's queue, so
+ * each is written in full the first time it is met and as its number after
+ * that. Restoring takes the requests from the hierarchy's pool and moves every
+ * time by the same shift, so the hierarchy can carry on at any cycle.
+ */
+class RequestTable {
+	private Map<Request, Integer> numbers; // Number of every request written so far
+	private List<Request> requests; // Every request read so far, by number
+	private RequestPool pool; // Where restored requests come from
+	private int shift; // Added to every time read
+
+	/**
+	 * Initialize a table for writing a checkpoint.
+	 */
+	RequestTable() {
+		this.numbers = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Initialize a table for restoring a checkpoint.
+	 * 
+	 * @param pool
+	 * @param shift -> Added to every time read
+	 */
+	RequestTable(RequestPool pool, int shift) {
+		this.requests = new ArrayList<>();
+		this.pool = pool;
+		this.shift = shift;
+	}
+
+	/**
+	 * Write a request, in full if it has not been written yet.
+	 */
+	void write(CheckpointWriter out, Request r) throws IOException {
+		Integer number = this.numbers.get(r);
+		if (number != null) {
+			out.writeInt(number);
+			return;
+		}
+		this.numbers.put(r, this.numbers.size());
+		out.writeInt(-1);
+		out.writeInt(r.getID());
+		out.writeInt(r.getReadWriteEvict());
+		out.writeInt(r.getAddress());
+		out.writeInt(r.getData());
+		out.writeInt(r.getTime());
+		out.writeInt(r.getStartTime());
+		out.writeInt(r.getHolders());
+		out.writeInt(r.getPrefetcher());
+		out.writeBoolean(r.isDirty());
+		out.writeInts(r.getBlockData());
+	}
+
+	/**
+	 * Read a request written by write(), the same object every time it is
+	 * referred to.
+	 * 
+	 * @throws IOException if the checkpoint refers to a request it has not
+	 *                     written
+	 */
+	Request read(CheckpointReader in) throws IOException {
+		int number = in.readInt();
+		if (number >= 0) {
+			if (number >= this.requests.size())
+				throw new IOException("Checkpoint refers to request " + number + " before writing it");
+			return this.requests.get(number);
+		}
+		int id = in.readInt();
+		int readWriteEvict = in.readInt();
+		int address = in.readInt();
+		int data = in.readInt();
+		int time = in.readInt();
+		int startTime = in.readInt();
+		Request r = this.pool.acquire(id, readWriteEvict, address, data, shift(time), shift(startTime));
+		r.setHolders(in.readInt());
+		r.setPrefetcher(in.readInt());
+		r.setDirty(in.readBoolean());
+		int[] block = in.readInts();
+		if (block != null && r.getBlockData() != null)
+			System.arraycopy(block, 0, r.getBlockData(), 0, Math.min(block.length, r.getBlockData().length));
+		this.requests.add(r);
+		return r;
+	}
+
+	/**
+	 * Move a time read from the checkpoint to the cycle being restored at.
+	 */
+	int shift(int time) {
+		return time + this.shift;
+	}
+}
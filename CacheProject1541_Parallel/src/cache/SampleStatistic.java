@@ -0,0 +1,66 @@
+package cache;
+
+/**
+ * Mean of one quantity measured once per sampling unit, with a confidence
+ * interval from the spread of the units. By the central limit theorem the
+ * mean of enough independent units is close to normal, so the interval is the
+ * mean plus or minus z standard errors. The variance is kept with Welford's
+ * update, which stays accurate however many units are added.
+ */
+public class SampleStatistic {
+	private static final double Z_95 = 1.96; // Standard normal quantile of a two-sided 95% interval
+
+	private long count; // # of units measured
+	private double mean; // Mean of the units so far
+	private double m2; // Sum of squared distances from the mean
+
+	/**
+	 * Add the value measured in one unit
+	 * 
+	 * @param value
+	 */
+	public void add(double value) {
+		this.count++;
+		double delta = value - this.mean;
+		this.mean += delta / this.count;
+		this.m2 += delta * (value - this.mean);
+	}
+
+	// Getter Functions
+
+	public long getCount() {
+		return this.count;
+	}
+
+	public double getMean() {
+		return this.mean;
+	}
+
+	/**
+	 * Get the sample standard deviation of the units, 0 with fewer than two
+	 */
+	public double getStandardDeviation() {
+		return this.count < 2 ? 0 : Math.sqrt(this.m2 / (this.count - 1));
+	}
+
+	/**
+	 * Get the half width of the 95% confidence interval of the mean, infinite
+	 * with fewer than two units since their spread is unknown
+	 */
+	public double getHalfWidth() {
+		if (this.count < 2)
+			return Double.POSITIVE_INFINITY;
+		return Z_95 * getStandardDeviation() / Math.sqrt(this.count);
+	}
+
+	/**
+	 * Mean and 95% confidence interval, with the given format for both
+	 * 
+	 * @param format -> Such as "%.4f"
+	 */
+	public String format(String format) {
+		if (this.count == 0)
+			return "no samples";
+		return String.format(format + " +/- " + format + " (n = %d)", this.mean, getHalfWidth(), this.count);
+	}
+}
@@ -0,0 +1,253 @@
+package cache;
+
+/**
+ * Runs a trace through a hierarchy by systematic sampling, in the manner of
+ * SMARTS, for traces too long to simulate cycle by cycle. The trace is cut
+ * into periods of the same # of requests, and each period is run in phases:
+ * 
+ * Fast-forward -> requests are skipped, touching nothing
+ * 
+ * Functional warm-up -> requests go through warm(), which updates the tags,
+ * replacement state and data of the caches without timing
+ * 
+ * Detailed warm-up -> requests run through cycle(), filling the queues and
+ * MSHRs, and are not measured
+ * 
+ * Unit -> requests run through cycle() and are measured
+ * 
+ * The hierarchy is drained after each detailed phase, so warm() never runs
+ * with requests in flight and every latency recorded in a unit belongs to a
+ * request of that unit. Each unit gives one value of each estimate, and the
+ * spread of the units gives its confidence interval.
+ */
+public class Sampler {
+	private ParallelMemoryHierarchy pmh; // Hierarchy the trace runs through
+	private TraceSource requests; // Trace, taken from in file order
+	private long fastForward; // # of requests skipped at the start of each period
+	private long functional; // # of requests given to warm() in each period
+	private long detailedWarmup; // # of requests simulated in detail before each unit, not measured
+	private long unit; // # of requests simulated in detail and measured in each period
+	private long skipped; // # of requests fast-forwarded over
+	private long warmed; // # of requests given to warm()
+	private long simulated; // # of requests simulated in detail
+	private SampleStatistic[] hitRates; // Hit rate of each cache in each unit
+	private SampleStatistic readLatency; // Mean read latency in each unit
+	private SampleStatistic writeLatency; // Mean write latency in each unit
+	private double[] accesses; // Accesses of each cache at the start of the unit
+	private double[] misses; // Misses of each cache at the start of the unit
+	private long[] latencyCounts; // # of read and write latencies at the start of the unit
+	private long[] latencySums; // Sum of read and write latencies at the start of the unit
+
+	/**
+	 * Set up sampling of a trace
+	 * 
+	 * @param pmh            -> Hierarchy to run the trace through
+	 * @param requests       -> Trace, taking its requests from the hierarchy's
+	 *                       pool
+	 * @param period         -> # of requests in each period
+	 * @param functional     -> # of requests given to warm() in each period
+	 * @param detailedWarmup -> # of requests simulated in detail before each
+	 *                       unit
+	 * @param unit           -> # of requests measured in each period
+	 * @throws IllegalArgumentException if the unit is empty, the phases do not
+	 *                                  fit in the period, or there is a
+	 *                                  functional warm-up and the hierarchy is
+	 *                                  not NINE
+	 */
+	public Sampler(ParallelMemoryHierarchy pmh, TraceSource requests, long period, long functional,
+			long detailedWarmup, long unit) {
+		if (unit <= 0 || functional < 0 || detailedWarmup < 0 || functional + detailedWarmup + unit > period)
+			throw new IllegalArgumentException("Sampling needs a unit of at least 1 request, and warm-up and unit within the period, got period "
+					+ period + ", functional warm-up " + functional + ", detailed warm-up " + detailedWarmup + ", unit " + unit);
+		if (functional > 0 && pmh.getInclusionPolicy() != InclusionPolicy.NINE)
+			throw new IllegalArgumentException("Functional warm-up only keeps a NINE hierarchy, not " + pmh.getInclusionPolicy()
+					+ ", so it needs a functional warm-up of 0 requests");
+		this.pmh = pmh;
+		this.requests = requests;
+		this.fastForward = period - functional - detailedWarmup - unit;
+		this.functional = functional;
+		this.detailedWarmup = detailedWarmup;
+		this.unit = unit;
+
+		int layers = pmh.getCaches().length;
+		this.hitRates = new SampleStatistic[layers];
+		for (int c = 0; c < layers; c++)
+			this.hitRates[c] = new SampleStatistic();
+		this.readLatency = new SampleStatistic();
+		this.writeLatency = new SampleStatistic();
+		this.accesses = new double[layers];
+		this.misses = new double[layers];
+		this.latencyCounts = new long[2];
+		this.latencySums = new long[2];
+	}
+
+	/**
+	 * Run the whole trace, period after period. A unit cut short by the end of
+	 * the trace is not measured.
+	 * 
+	 * @return Cycle the last detailed phase ended in
+	 */
+	public int run() {
+		RequestPool pool = this.pmh.getRequestPool();
+		int time = 0;
+		// A restored hierarchy may have requests in flight, which warm() cannot see
+		if (!this.pmh.isIdle())
+			time = simulate(0, time);
+
+		while (!this.requests.isEmpty()) {
+			this.skipped += this.requests.skip(this.fastForward);
+
+			for (long i = 0; i < this.functional && !this.requests.isEmpty(); i++) {
+				Request r = this.requests.remove();
+				this.pmh.warm(r.getReadWriteEvict(), r.getAddress(), r.getData());
+				pool.release(r);
+				this.warmed++;
+			}
+
+			time = simulate(this.detailedWarmup, time);
+			startUnit();
+			long before = this.simulated;
+			time = simulate(this.unit, time);
+			if (this.simulated - before == this.unit)
+				endUnit();
+		}
+		return time;
+	}
+
+	/**
+	 * Run requests through cycle() the way Main does, then keep cycling until
+	 * every request is done.
+	 * 
+	 * @param n    -> # of requests to send
+	 * @param time -> Cycle to start in
+	 * @return Cycle the hierarchy went idle in
+	 */
+	private int simulate(long n, int time) {
+		if (n == 0 && this.pmh.isIdle())
+			return time;
+		Request currRequest = null;
+		boolean newRequest = true;
+		boolean finished = false;
+		long sent = 0;
+		while (!(finished && (sent == n || this.requests.isEmpty()))) {
+			boolean more = sent < n && !this.requests.isEmpty();
+			if (newRequest && more && this.requests.peek().getTime() <= time) {
+				currRequest = this.requests.remove();
+				newRequest = false;
+				sent++;
+			} else if (newRequest) {
+				currRequest = null;
+			}
+
+			int arrival = newRequest && more ? this.requests.peek().getTime() : -1;
+			int next = this.pmh.nextEvent(currRequest, time, arrival);
+			if (next > time) {
+				if (this.pmh.skip(time, next) == -1)
+					finished = true;
+				time = next;
+				continue;
+			}
+
+			int status = this.pmh.cycle(currRequest, time);
+			if (status == 0) {
+				finished = false;
+				newRequest = true;
+			} else if (status == -1) {
+				finished = true;
+			}
+			time++;
+		}
+		this.simulated += sent;
+		return time;
+	}
+
+	/**
+	 * Note the counters at the start of a unit
+	 */
+	private void startUnit() {
+		Cache[] caches = this.pmh.getCaches();
+		for (int c = 0; c < caches.length; c++) {
+			this.accesses[c] = caches[c].getAccesses();
+			this.misses[c] = caches[c].getMisses();
+		}
+		for (int type = 0; type < 2; type++) {
+			this.latencyCounts[type] = latencyCount(type);
+			this.latencySums[type] = latencySum(type);
+		}
+	}
+
+	/**
+	 * Add what the counters moved by since the start of the unit to the
+	 * estimates. Hit rates are counted as getHitRate() counts them, so they can
+	 * be held against a full run. A cache the unit never reached adds nothing
+	 * to its hit rate.
+	 */
+	private void endUnit() {
+		Cache[] caches = this.pmh.getCaches();
+		for (int c = 0; c < caches.length; c++) {
+			double accesses = caches[c].getAccesses() - this.accesses[c];
+			if (accesses > 0)
+				this.hitRates[c].add(1 - (caches[c].getMisses() - this.misses[c]) / accesses);
+		}
+		SampleStatistic[] latencies = { this.readLatency, this.writeLatency };
+		for (int type = 0; type < 2; type++) {
+			long count = latencyCount(type) - this.latencyCounts[type];
+			if (count > 0)
+				latencies[type].add((double) (latencySum(type) - this.latencySums[type]) / count);
+		}
+	}
+
+	/**
+	 * Get # of latencies of a type recorded at every level
+	 */
+	private long latencyCount(int type) {
+		long count = 0;
+		for (int level = 0; level <= this.pmh.getCaches().length; level++)
+			count += this.pmh.getMetrics().getLatency(type, level).getCount();
+		return count;
+	}
+
+	/**
+	 * Get the sum of the latencies of a type recorded at every level
+	 */
+	private long latencySum(int type) {
+		long sum = 0;
+		for (int level = 0; level <= this.pmh.getCaches().length; level++)
+			sum += this.pmh.getMetrics().getLatency(type, level).getSum();
+		return sum;
+	}
+
+	// Getter Functions
+
+	/**
+	 * Get the hit rate estimate of one cache
+	 */
+	public SampleStatistic getHitRate(int cache) {
+		return this.hitRates[cache];
+	}
+
+	public SampleStatistic getReadLatency() {
+		return this.readLatency;
+	}
+
+	public SampleStatistic getWriteLatency() {
+		return this.writeLatency;
+	}
+
+	/**
+	 * Estimates with their 95% confidence intervals, and how the trace was split
+	 * between the phases. The status of the hierarchy counts every access
+	 * including the warm-ups, so these are the numbers to read when sampling.
+	 */
+	public String getReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Sampled Simulation (95% confidence intervals)");
+		sb.append("\nRequests Fast-Forwarded: " + this.skipped + ", Functionally Warmed: " + this.warmed
+				+ ", Simulated in Detail: " + this.simulated);
+		for (int c = 0; c < this.hitRates.length; c++)
+			sb.append("\nCache " + c + " Hit Rate: " + this.hitRates[c].format("%.5f"));
+		sb.append("\nRead Latency (cycles): " + this.readLatency.format("%.2f"));
+		sb.append("\nWrite Latency (cycles): " + this.writeLatency.format("%.2f"));
+		return sb.toString();
+	}
+}
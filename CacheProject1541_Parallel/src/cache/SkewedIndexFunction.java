@@ -0,0 +1,17 @@
+package cache;
+
+/**
+ * Skewed-associative indexing. Each way hashes the tag with a different odd
+ * multiplier, so blocks that conflict in one way rarely conflict in the others.
+ */
+public class SkewedIndexFunction implements IndexFunction {
+	private static final int GOLDEN = 0x9E3779B1;
+
+	public int hash(int tag, int way, int indexBits) {
+		return XorIndexFunction.fold(tag * (GOLDEN + 2 * way), indexBits);
+	}
+
+	public boolean isSkewed() {
+		return true;
+	}
+}
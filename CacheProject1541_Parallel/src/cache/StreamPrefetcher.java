@@ -0,0 +1,84 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Stream buffer prefetching, after Jouppi's stream buffers. A few streams
+ * each cover a run of blocks fetched ahead of the demand accesses. A miss
+ * outside every stream takes over the least recently used one and fetches
+ * the N blocks after it. An access inside a stream moves the stream along,
+ * fetching enough blocks to stay N ahead of it.
+ * 
+ * Instead of holding the blocks in buffers of their own, the streams fill
+ * them into the cache, whose prefetched bits then track their use.
+ */
+public class StreamPrefetcher implements Prefetcher {
+	private int depth; // # of blocks each stream stays ahead
+	private boolean[] valid; // True for streams in use
+	private int[] heads; // First block of each stream not yet accessed
+	private int[] tails; // Last block each stream has fetched
+	private long[] lastUse; // When each stream was last accessed, for LRU
+	private long accesses; // # of accesses seen, the clock of lastUse
+
+	public StreamPrefetcher(int streams, int depth) {
+		this.depth = depth;
+		this.valid = new boolean[streams];
+		this.heads = new int[streams];
+		this.tails = new int[streams];
+		this.lastUse = new long[streams];
+	}
+
+	public int access(int block, boolean hit, boolean prefetchHit, int[] prefetches) {
+		this.accesses++;
+		int stream = -1;
+		for (int s = 0; s < this.valid.length; s++)
+			if (this.valid[s] && block >= this.heads[s] && block <= this.tails[s])
+				stream = s;
+
+		if (stream < 0) {
+			if (hit)
+				return 0;
+			// Take an unused stream, or else the least recently used one
+			stream = 0;
+			for (int s = 0; s < this.valid.length; s++) {
+				if (!this.valid[s]) {
+					stream = s;
+					break;
+				}
+				if (this.lastUse[s] < this.lastUse[stream])
+					stream = s;
+			}
+			this.valid[stream] = true;
+			this.tails[stream] = block;
+		}
+
+		this.lastUse[stream] = this.accesses;
+		this.heads[stream] = block + 1;
+		int n = 0;
+		while (this.tails[stream] < block + this.depth && n < prefetches.length)
+			prefetches[n++] = ++this.tails[stream];
+		return n;
+	}
+
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeInt(this.valid.length);
+		out.writeInt(this.depth);
+		for (boolean v : this.valid)
+			out.writeBoolean(v);
+		out.writeInts(this.heads);
+		out.writeInts(this.tails);
+		out.writeLongs(this.lastUse);
+		out.writeLong(this.accesses);
+	}
+
+	public void restore(CheckpointReader in) throws IOException {
+		in.expect(this.valid.length, "# of streams");
+		in.expect(this.depth, "prefetch depth");
+		for (int s = 0; s < this.valid.length; s++)
+			this.valid[s] = in.readBoolean();
+		in.readInts(this.heads);
+		in.readInts(this.tails);
+		in.readLongs(this.lastUse);
+		this.accesses = in.readLong();
+	}
+}
@@ -0,0 +1,83 @@
+package cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Stride prefetching without program counters. Traces carry no PC, so
+ * accesses are grouped by the region of memory they fall in instead of the
+ * instruction that made them. Each region remembers its last block and the
+ * stride between its last two blocks. Once the same stride shows up twice in
+ * a row, a miss or the first use of a prefetched block fetches the next N
+ * blocks along it.
+ * 
+ * Regions share a direct-mapped table, a region taking the slot of another
+ * starts over.
+ */
+public class StridePrefetcher implements Prefetcher {
+	private static final int REGION_BITS = 6; // log2 of the # of blocks in a region
+	private static final int TABLE_SIZE = 64; // # of regions tracked, a power of 2
+	private static final int MAX_CONFIDENCE = 3; // Saturation of the confidence counters
+	private static final int THRESHOLD = 2; // Confidence needed to prefetch
+
+	private int degree; // # of strides fetched ahead
+	private int[] regions; // Region held by each slot, -1 if none
+	private int[] lastBlocks; // Last block accessed in each region
+	private int[] strides; // Last stride seen in each region
+	private int[] confidence; // Times in a row each region's stride repeated
+
+	public StridePrefetcher(int degree) {
+		this.degree = degree;
+		this.regions = new int[TABLE_SIZE];
+		this.lastBlocks = new int[TABLE_SIZE];
+		this.strides = new int[TABLE_SIZE];
+		this.confidence = new int[TABLE_SIZE];
+		Arrays.fill(this.regions, -1);
+	}
+
+	public int access(int block, boolean hit, boolean prefetchHit, int[] prefetches) {
+		int region = block >> REGION_BITS;
+		int slot = region & (TABLE_SIZE - 1);
+		if (this.regions[slot] != region) {
+			this.regions[slot] = region;
+			this.lastBlocks[slot] = block;
+			this.strides[slot] = 0;
+			this.confidence[slot] = 0;
+			return 0;
+		}
+
+		int stride = block - this.lastBlocks[slot];
+		if (stride == 0)
+			return 0;
+		this.lastBlocks[slot] = block;
+		if (stride == this.strides[slot]) {
+			this.confidence[slot] = Math.min(this.confidence[slot] + 1, MAX_CONFIDENCE);
+		} else {
+			this.strides[slot] = stride;
+			this.confidence[slot] = 0;
+		}
+
+		if (this.confidence[slot] < THRESHOLD || (hit && !prefetchHit))
+			return 0;
+		int n = Math.min(this.degree, prefetches.length);
+		for (int i = 0; i < n; i++)
+			prefetches[i] = block + stride * (i + 1);
+		return n;
+	}
+
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeInt(this.degree);
+		out.writeInts(this.regions);
+		out.writeInts(this.lastBlocks);
+		out.writeInts(this.strides);
+		out.writeInts(this.confidence);
+	}
+
+	public void restore(CheckpointReader in) throws IOException {
+		in.expect(this.degree, "prefetch degree");
+		in.readInts(this.regions);
+		in.readInts(this.lastBlocks);
+		in.readInts(this.strides);
+		in.readInts(this.confidence);
+	}
+}
@@ -0,0 +1,230 @@
+package cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses a text trace on a fork-join pool.
+ * 
+ * The file is cut into chunks that end on a line break, and each chunk is
+ * decoded from a memory-mapped view of its bytes into a TraceChunk.
+ * A bounded number of chunks are parsed ahead of the reader, and nextChunk()
+ * hands them back in file order.
+ * 
+ * Lines look like "r <address> <radix> <time>", where the operation is r for
+ * read and anything else for write, and the radix is 2, 10, or 16. A missing
+ * time is taken as 0. Blank lines are skipped, and any other line that does
+ * not fit comes back as a TraceChunk.BAD_LINE record.
+ */
+public class TextTraceParser implements AutoCloseable {
+	private static final int CHUNK_SIZE = 1 << 22; // Bytes per chunk, before moving to a line break
+	private static final int AVERAGE_LINE = 16; // Guess of bytes per line, to size chunk arrays
+
+	private FileChannel channel; // Trace file
+	private long fileSize; // Length of the file in bytes
+	private long nextStart; // File position of the first chunk not yet submitted
+	private ForkJoinPool pool; // Runs the parse tasks
+	private int inFlight; // Max # of chunks parsed ahead of the reader
+	private ArrayDeque<ForkJoinTask<TraceChunk>> pending; // Submitted chunks, in file order
+
+	/**
+	 * Open a text trace, parsing on the common pool.
+	 * 
+	 * @param filename
+	 * @throws IOException if the file cannot be opened
+	 */
+	public TextTraceParser(String filename) throws IOException {
+		this(filename, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Open a text trace, parsing on the given pool.
+	 * 
+	 * @param filename
+	 * @param pool
+	 * @throws IOException if the file cannot be opened
+	 */
+	public TextTraceParser(String filename, ForkJoinPool pool) throws IOException {
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		this.fileSize = this.channel.size();
+		this.pool = pool;
+		this.inFlight = 2 * pool.getParallelism();
+		this.pending = new ArrayDeque<>(this.inFlight);
+	}
+
+	/**
+	 * Get the next chunk of records in file order.
+	 * 
+	 * @return Null once the whole file has been returned
+	 * @throws IOException
+	 */
+	public TraceChunk nextChunk() throws IOException {
+		while (this.pending.size() < this.inFlight && this.nextStart < this.fileSize) {
+			long start = this.nextStart;
+			long end = lineEnd(start + CHUNK_SIZE);
+			this.pending.add(this.pool.submit(new ParseTask(this.channel.map(FileChannel.MapMode.READ_ONLY, start, end - start))));
+			this.nextStart = end;
+		}
+		ForkJoinTask<TraceChunk> next = this.pending.poll();
+		return next == null ? null : next.join();
+	}
+
+	public void close() throws IOException {
+		for (ForkJoinTask<TraceChunk> task : this.pending)
+			task.cancel(false);
+		this.pending.clear();
+		this.channel.close();
+	}
+
+	/**
+	 * Find the file position just past the first line break at or after a
+	 * position, or the end of the file.
+	 */
+	private long lineEnd(long position) throws IOException {
+		ByteBuffer scan = ByteBuffer.allocate(256);
+		while (position < this.fileSize) {
+			scan.clear();
+			int read = this.channel.read(scan, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++)
+				if (scan.get(i) == '\n')
+					return position + i + 1;
+			position += read;
+		}
+		return this.fileSize;
+	}
+
+	/**
+	 * Decodes one chunk of whole lines.
+	 */
+	private static class ParseTask extends RecursiveTask<TraceChunk> {
+		private static final long serialVersionUID = 1L;
+
+		private MappedByteBuffer mapped; // The chunk's bytes in the file
+		private byte[] bytes; // The chunk's bytes, copied out for parsing
+		private int pos; // Read position within the chunk
+
+		ParseTask(MappedByteBuffer mapped) {
+			this.mapped = mapped;
+		}
+
+		protected TraceChunk compute() {
+			int limit = this.mapped.limit();
+			this.bytes = new byte[limit];
+			this.mapped.get(this.bytes);
+			this.mapped = null;
+			TraceChunk chunk = new TraceChunk(limit / AVERAGE_LINE);
+			while (this.pos < limit) {
+				int lineEnd = this.pos;
+				while (lineEnd < limit && this.bytes[lineEnd] != '\n')
+					lineEnd++;
+				parseLine(chunk, lineEnd);
+				this.pos = lineEnd + 1;
+			}
+			return chunk;
+		}
+
+		/**
+		 * Decode the line from pos to lineEnd into the chunk.
+		 */
+		private void parseLine(TraceChunk chunk, int lineEnd) {
+			skipSpaces(lineEnd);
+			if (this.pos == lineEnd)
+				return;
+
+			// Op is r for read, any other word for write
+			int opStart = this.pos;
+			skipWord(lineEnd);
+			int op = this.pos - opStart == 1 && this.bytes[opStart] == 'r' ? TraceFormat.READ : TraceFormat.WRITE;
+
+			skipSpaces(lineEnd);
+			int addressStart = this.pos;
+			skipWord(lineEnd);
+			int addressEnd = this.pos;
+
+			skipSpaces(lineEnd);
+			long radix = parseNumber(this.pos, skipWord(lineEnd), 10);
+			if (radix != 2 && radix != 10 && radix != 16) {
+				chunk.add(TraceChunk.BAD_LINE, 0, 0);
+				return;
+			}
+			long address = parseNumber(addressStart, addressEnd, (int) radix);
+
+			skipSpaces(lineEnd);
+			long time = this.pos == lineEnd ? 0 : parseNumber(this.pos, skipWord(lineEnd), 10);
+
+			if (address == Long.MIN_VALUE || time == Long.MIN_VALUE)
+				chunk.add(TraceChunk.BAD_LINE, 0, 0);
+			else
+				chunk.add(op, (int) address, (int) time);
+		}
+
+		private void skipSpaces(int lineEnd) {
+			while (this.pos < lineEnd && isSpace(this.bytes[this.pos]))
+				this.pos++;
+		}
+
+		/**
+		 * Move past a word.
+		 * 
+		 * @return The position just past the word
+		 */
+		private int skipWord(int lineEnd) {
+			while (this.pos < lineEnd && !isSpace(this.bytes[this.pos]))
+				this.pos++;
+			return this.pos;
+		}
+
+		/**
+		 * Value of a digit or letter, or Integer.MAX_VALUE for anything else.
+		 */
+		private static int digit(byte b) {
+			if (b >= '0' && b <= '9')
+				return b - '0';
+			if (b >= 'a' && b <= 'z')
+				return b - 'a' + 10;
+			if (b >= 'A' && b <= 'Z')
+				return b - 'A' + 10;
+			return Integer.MAX_VALUE;
+		}
+
+		private static boolean isSpace(byte b) {
+			return b == ' ' || b == '\t' || b == '\r';
+		}
+
+		/**
+		 * Parse an int from bytes, the way Integer.parseInt would.
+		 * 
+		 * @return Long.MIN_VALUE if the bytes are not an int in the radix
+		 */
+		private long parseNumber(int start, int end, int radix) {
+			boolean negative = start < end && this.bytes[start] == '-';
+			if (negative || (start < end && this.bytes[start] == '+'))
+				start++;
+			if (start == end)
+				return Long.MIN_VALUE;
+
+			long value = 0;
+			for (int i = start; i < end; i++) {
+				int digit = digit(this.bytes[i]);
+				if (digit >= radix)
+					return Long.MIN_VALUE;
+				value = value * radix + digit;
+				if (value > (long) Integer.MAX_VALUE + 1)
+					return Long.MIN_VALUE;
+			}
+			if (negative)
+				value = -value;
+			return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package cache;
+
+import java.util.Arrays;
+
+/**
+ * A run of decoded trace records held in primitive arrays, in file order.
+ */
+public class TraceChunk {
+	public static final int BAD_LINE = -1; // Op of a line that was not in the text format
+
+	private int[] ops; // TraceFormat.READ, TraceFormat.WRITE, or BAD_LINE
+	private int[] addresses;
+	private int[] times; // Arrival times
+	private int count; // # of records used
+
+	/**
+	 * Initialize an empty chunk.
+	 * 
+	 * @param capacity -> Expected # of records, the arrays grow past it
+	 */
+	public TraceChunk(int capacity) {
+		capacity = Math.max(capacity, 16);
+		this.ops = new int[capacity];
+		this.addresses = new int[capacity];
+		this.times = new int[capacity];
+	}
+
+	/**
+	 * Add a record to the end of the chunk.
+	 */
+	public void add(int op, int address, int time) {
+		if (this.count == this.ops.length) {
+			int capacity = this.count * 2;
+			this.ops = Arrays.copyOf(this.ops, capacity);
+			this.addresses = Arrays.copyOf(this.addresses, capacity);
+			this.times = Arrays.copyOf(this.times, capacity);
+		}
+		this.ops[this.count] = op;
+		this.addresses[this.count] = address;
+		this.times[this.count] = time;
+		this.count++;
+	}
+
+	/**
+	 * Get # of records
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Get op of a record, TraceFormat.READ, TraceFormat.WRITE, or BAD_LINE
+	 */
+	public int getOp(int i) {
+		return this.ops[i];
+	}
+
+	/**
+	 * Get address of a record
+	 */
+	public int getAddress(int i) {
+		return this.addresses[i];
+	}
+
+	/**
+	 * Get arrival time of a record
+	 */
+	public int getTime(int i) {
+		return this.times[i];
+	}
+}
@@ -0,0 +1,36 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Converts a text trace into a binary trace.
+ * 
+ * Text lines look like "r <address> <radix> <time>", where the operation is r
+ * for read and anything else for write, and the radix is 2, 10, or 16. A
+ * missing time is taken as 0. Large traces are parsed on every core.
+ * 
+ * Usage: java cache.TraceConverter <text trace> <binary trace>
+ */
+public class TraceConverter {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: java cache.TraceConverter <text trace> <binary trace>");
+			return;
+		}
+
+		long skipped = 0;
+		try (TextTraceParser in = new TextTraceParser(args[0]); TraceWriter out = new TraceWriter(args[1])) {
+			TraceChunk chunk;
+			while ((chunk = in.nextChunk()) != null) {
+				for (int i = 0; i < chunk.getCount(); i++) {
+					if (chunk.getOp(i) == TraceChunk.BAD_LINE)
+						skipped++;
+					else
+						out.write(chunk.getOp(i), chunk.getAddress(i), chunk.getTime(i));
+				}
+			}
+			System.out.println("Wrote " + out.getCount() + " records to " + args[1] + ", skipped " + skipped + " lines.");
+		}
+	}
+}
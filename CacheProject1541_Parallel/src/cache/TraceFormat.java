@@ -0,0 +1,49 @@
+package cache;
+
+/**
+ * Layout of binary trace files.
+ * 
+ * A trace starts with a 16 byte header: the magic number, a version byte,
+ * three reserved bytes, and the record count as a long. Records follow back to
+ * back. Each record is one tag byte followed by varints:
+ * 
+ * tag -> bits 0-1 hold the operation (0 for read, 1 for write), bit 2 is set
+ * when the record carries data
+ * 
+ * address -> zigzag varint of the change from the last record's address
+ * 
+ * time -> zigzag varint of the change from the last record's arrival time
+ * 
+ * data -> zigzag varint of the written value, only when the tag says so
+ * 
+ * Nearby addresses and steady arrival times take one or two bytes each.
+ */
+public final class TraceFormat {
+	public static final int MAGIC = 0x43545243; // "CTRC"
+	public static final byte VERSION = 1;
+	public static final int HEADER_SIZE = 16; // Bytes before the first record
+	public static final int COUNT_OFFSET = 8; // Position of the record count within the header
+	public static final int MAX_RECORD_SIZE = 16; // Tag byte and three 5 byte varints
+
+	public static final int READ = 0;
+	public static final int WRITE = 1;
+	public static final int OP_MASK = 3; // Operation bits of the tag
+	public static final int HAS_DATA = 4; // Tag bit for records that carry data
+
+	private TraceFormat() {
+	}
+
+	/**
+	 * Map a signed value to an unsigned one so small negatives stay short.
+	 */
+	public static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	/**
+	 * Undo zigzag().
+	 */
+	public static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
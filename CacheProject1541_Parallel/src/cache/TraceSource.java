@@ -0,0 +1,208 @@
+package cache;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Streams requests out of a text or binary trace as the simulation asks for
+ * them. Only a bounded lookahead of decoded requests is held at once, so
+ * traces of any length run in the same memory and the first request is ready
+ * as soon as the file is open.
+ * 
+ * Requests come out in file order, which Main relies on when it compares the
+ * next arrival time against the current cycle.
+ */
+public class TraceSource implements AutoCloseable {
+	private static final int LOOKAHEAD = 1024; // Max # of decoded requests waiting
+
+	private TextTraceParser text; // Text trace, null when binary
+	private TraceChunk chunk; // Parsed text records not yet made into requests
+	private int chunkPos; // Next record within the chunk
+	private TraceReader binary; // Binary trace, null when text
+	private ArrayDeque<Request> lookahead; // Decoded requests not yet taken
+	private RequestPool pool; // Where requests are taken from
+	private boolean ended; // True once the file has nothing left
+	private int iterID = 0; // # of requests made, for their IDs
+	private int iterData = 0; // # of writes made, for their made-up data
+
+	/**
+	 * Open a trace. Binary traces from TraceConverter are recognized by their
+	 * header, anything else is read as text.
+	 * 
+	 * @param filename
+	 * @throws IOException if the file cannot be opened
+	 */
+	public TraceSource(String filename) throws IOException {
+		this(filename, new RequestPool(LOOKAHEAD, 1, false));
+	}
+
+	/**
+	 * Open a trace whose requests are taken from a hierarchy's pool, so the
+	 * hierarchy can hand them back when they are done.
+	 * 
+	 * @param filename
+	 * @param pool     -> Pool of the hierarchy the requests are sent to
+	 * @throws IOException if the file cannot be opened
+	 */
+	public TraceSource(String filename, RequestPool pool) throws IOException {
+		this.pool = pool;
+		if (TraceReader.isTrace(filename))
+			this.binary = new TraceReader(filename);
+		else
+			this.text = new TextTraceParser(filename);
+		this.lookahead = new ArrayDeque<>(LOOKAHEAD);
+	}
+
+	/**
+	 * True if every request has been taken.
+	 */
+	public boolean isEmpty() {
+		fill();
+		return this.lookahead.isEmpty();
+	}
+
+	/**
+	 * Get the next request without taking it, null if there are none left.
+	 */
+	public Request peek() {
+		fill();
+		return this.lookahead.peek();
+	}
+
+	/**
+	 * Take the next request, null if there are none left.
+	 */
+	public Request remove() {
+		fill();
+		return this.lookahead.poll();
+	}
+
+	/**
+	 * Pass over the next requests without making them, for fast-forwarding
+	 * through a trace. Skipped requests still use up their IDs and made-up data,
+	 * so the requests after them are the same as if they had been taken.
+	 * 
+	 * @param n -> # of requests to skip
+	 * @return # of requests skipped, less than n only at the end of the trace
+	 */
+	public long skip(long n) {
+		long skipped = 0;
+		while (skipped < n && !this.lookahead.isEmpty()) {
+			this.pool.release(this.lookahead.poll());
+			skipped++;
+		}
+		try {
+			while (skipped < n && !this.ended) {
+				int op;
+				if (this.binary != null) {
+					if (!this.binary.next()) {
+						this.ended = true;
+						break;
+					}
+					op = this.binary.getOp();
+				} else {
+					if (this.chunk == null || this.chunkPos == this.chunk.getCount()) {
+						this.chunk = this.text.nextChunk();
+						this.chunkPos = 0;
+						if (this.chunk == null)
+							this.ended = true;
+						continue;
+					}
+					op = this.chunk.getOp(this.chunkPos++);
+					if (op == TraceChunk.BAD_LINE) {
+						EventLog.log(LogLevel.SUMMARY, "Incorrect Instruction Format.");
+						continue;
+					}
+				}
+				if (op != TraceFormat.READ)
+					this.iterData++;
+				this.iterID++;
+				skipped++;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			this.ended = true;
+		}
+		return skipped;
+	}
+
+	public void close() throws IOException {
+		if (this.text != null)
+			this.text.close();
+		if (this.binary != null)
+			this.binary.close();
+	}
+
+	/**
+	 * Decode the next batch of requests once the lookahead runs dry. A read
+	 * error ends the trace early.
+	 */
+	private void fill() {
+		if (!this.lookahead.isEmpty() || this.ended)
+			return;
+		try {
+			while (this.lookahead.size() < LOOKAHEAD) {
+				Request request = this.binary != null ? readBinary() : readText();
+				if (request == null) {
+					this.ended = true;
+					return;
+				}
+				this.lookahead.add(request);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			this.ended = true;
+		}
+	}
+
+	/**
+	 * Form a request from the next record of a binary trace. Writes without data
+	 * in the trace get the same made-up data as text traces.
+	 * 
+	 * @return Null at the end of the trace
+	 */
+	private Request readBinary() throws IOException {
+		if (!this.binary.next())
+			return null;
+		if (this.binary.getOp() == TraceFormat.READ)
+			return makeRequest(0, this.binary.getAddress(), 0, this.binary.getTime());
+		int data = this.binary.hasData() ? this.binary.getData() : 100 - this.iterData;
+		return makeRequest(1, this.binary.getAddress(), data, this.binary.getTime());
+	}
+
+	/**
+	 * Form a request from the next record of a text trace. Lines in the wrong
+	 * format are reported and skipped.
+	 * 
+	 * @return Null at the end of the trace
+	 */
+	private Request readText() throws IOException {
+		while (true) {
+			if (this.chunk == null || this.chunkPos == this.chunk.getCount()) {
+				this.chunk = this.text.nextChunk();
+				this.chunkPos = 0;
+				if (this.chunk == null)
+					return null;
+				continue;
+			}
+
+			int i = this.chunkPos++;
+			int op = this.chunk.getOp(i);
+			if (op == TraceChunk.BAD_LINE) {
+				EventLog.log(LogLevel.SUMMARY, "Incorrect Instruction Format.");
+				continue;
+			}
+			if (op == TraceFormat.READ)
+				return makeRequest(0, this.chunk.getAddress(i), 0, this.chunk.getTime(i));
+			return makeRequest(1, this.chunk.getAddress(i), 100 - this.iterData, this.chunk.getTime(i));
+		}
+	}
+
+	private Request makeRequest(int readWrite, int address, int data, int time) {
+		int id = -1000 + this.iterID;
+		this.iterID++;
+		if (readWrite == 1)
+			this.iterData++;
+		return this.pool.acquire(id, readWrite, address, data, time, time);
+	}
+}
@@ -0,0 +1,79 @@
+package cache;
+
+import java.io.IOException;
+
+/**
+ * Tree pseudo-LRU. Each index keeps a binary tree of ways-1 bits, each bit
+ * pointing to the half that should be evicted next. Hits, fills, and victim
+ * selection walk one root to leaf path, O(log ways).
+ */
+public class TreePLRUPolicy implements ReplacementPolicy {
+	private int ways; // # of ways in one index
+	private int levels; // Depth of the tree
+	private byte[] tree; // Tree bits of every index, node 1 is the root, 0 is unused
+
+	public TreePLRUPolicy(int indexSize, int ways) {
+		if (Integer.bitCount(ways) != 1)
+			throw new IllegalArgumentException("Tree PLRU needs a power of 2 number of sets, got " + ways);
+		this.ways = ways;
+		this.levels = Integer.numberOfTrailingZeros(ways);
+		this.tree = new byte[indexSize * ways];
+	}
+
+	public void touch(int index, int way) {
+		pointPath(index, way, true);
+	}
+
+	public void fill(int index, int way) {
+		pointPath(index, way, true);
+	}
+
+	public void invalidate(int index, int way) {
+		pointPath(index, way, false);
+	}
+
+	public int victim(int index) {
+		int base = index * this.ways;
+		int node = 1;
+		while (node < this.ways)
+			node = node * 2 + this.tree[base + node];
+		return node - this.ways;
+	}
+
+	/**
+	 * Read the path to the way as a binary number, 1 for every bit that points
+	 * at it. The victim reads as ways-1.
+	 */
+	public int rank(int index, int way) {
+		int base = index * this.ways;
+		int node = 1;
+		int rank = 0;
+		for (int level = this.levels - 1; level >= 0; level--) {
+			int dir = (way >> level) & 1;
+			rank = rank * 2 + (this.tree[base + node] == dir ? 1 : 0);
+			node = node * 2 + dir;
+		}
+		return rank;
+	}
+
+	public void save(CheckpointWriter out) throws IOException {
+		out.writeBytes(this.tree);
+	}
+
+	public void restore(CheckpointReader in) throws IOException {
+		in.readBytes(this.tree);
+	}
+
+	/**
+	 * Set every bit on the way's path to point away from it, or towards it.
+	 */
+	private void pointPath(int index, int way, boolean away) {
+		int base = index * this.ways;
+		int node = 1;
+		for (int level = this.levels - 1; level >= 0; level--) {
+			int dir = (way >> level) & 1;
+			this.tree[base + node] = (byte) (away ? 1 - dir : dir);
+			node = node * 2 + dir;
+		}
+	}
+}
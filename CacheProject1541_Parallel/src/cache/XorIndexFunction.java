@@ -0,0 +1,30 @@
+package cache;
+
+/**
+ * XOR-folded indexing. Every indexBits wide chunk of the tag is folded into the
+ * index, which spreads strided accesses that would otherwise share one set.
+ */
+public class XorIndexFunction implements IndexFunction {
+
+	public int hash(int tag, int way, int indexBits) {
+		return fold(tag, indexBits);
+	}
+
+	public boolean isSkewed() {
+		return false;
+	}
+
+	/**
+	 * XOR together every indexBits wide chunk of the value.
+	 */
+	static int fold(int value, int indexBits) {
+		if (indexBits == 0)
+			return 0;
+		int h = 0;
+		while (value != 0) {
+			h ^= value;
+			value >>>= indexBits;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,72 @@
+package cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The table must find every block still in flight after others are removed
+ * around it, and an entry it reuses must start without the misses merged
+ * into it before.
+ */
+public class MSHRTableTest {
+	private static final int BLOCK_BITS = 2; // Bits of the block offset, a block of 4
+	private static final int BLOCKS = 64; // # of different blocks in play
+	private static final int STEPS = 20000; // # of adds and removes
+
+	@Test
+	public void probeChainsSurviveRemoval() {
+		// Few blocks in a small table, so probe chains form and get cut often
+		MSHRTable table = new MSHRTable(4, BLOCK_BITS);
+		Map<Integer, List<Request>> inFlight = new HashMap<>(); // Misses merged into each block's entry
+		Random random = new Random(1541);
+		for (int step = 0; step < STEPS; step++) {
+			int block = random.nextInt(BLOCKS);
+			Request request = new Request(step, 0, (block << BLOCK_BITS) | random.nextInt(1 << BLOCK_BITS), 0, step,
+					step);
+			if (inFlight.containsKey(block) && random.nextBoolean()) {
+				assertEquals(inFlight.remove(block), table.remove(request), "waiters of block " + block);
+			} else if (inFlight.containsKey(block)) {
+				assertFalse(table.add(request), "step " + step + " merges into block " + block);
+				inFlight.get(block).add(request);
+			} else {
+				assertTrue(table.add(request), "step " + step + " takes an entry for block " + block);
+				inFlight.put(block, new ArrayList<Request>());
+			}
+
+			assertEquals(inFlight.size(), table.size());
+			for (int b = 0; b < BLOCKS; b++)
+				assertEquals(inFlight.containsKey(b), table.containsAddress(b << BLOCK_BITS),
+						"step " + step + ", block " + b);
+		}
+	}
+
+	@Test
+	public void reusedEntryStartsWithoutWaiters() {
+		MSHRTable table = new MSHRTable(4, BLOCK_BITS);
+		Request first = new Request(0, 0, 0x10, 0, 0, 0);
+		Request merged = new Request(1, 0, 0x11, 0, 1, 1);
+		assertTrue(table.add(first));
+		assertFalse(table.add(merged));
+		assertEquals(Arrays.asList(merged), table.remove(first));
+
+		// The freed entry is taken again, by a different block
+		Request other = new Request(2, 0, 0x20, 0, 2, 2);
+		Request otherMerged = new Request(3, 0, 0x22, 0, 3, 3);
+		assertTrue(table.add(other));
+		assertTrue(table.remove(new Request(4, 0, 0x20, 0, 4, 4)).isEmpty());
+
+		assertTrue(table.add(other));
+		assertFalse(table.add(otherMerged));
+		assertEquals(Arrays.asList(otherMerged), table.remove(other));
+	}
+}
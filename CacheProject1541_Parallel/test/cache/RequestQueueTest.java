@@ -0,0 +1,71 @@
+package cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The queue must give requests back by ready time, in the order they were
+ * added when ready at the same time, both from poll() and pollMatching(), and
+ * keep that order for what is left after either.
+ */
+public class RequestQueueTest {
+	private static final int REQUESTS = 2000; // # of requests added per test
+
+	@Test
+	public void equalReadyTimesComeOutInOrderAdded() {
+		RequestQueue queue = new RequestQueue();
+		List<Request> added = new ArrayList<>();
+		for (int id = 0; id < REQUESTS; id++) {
+			Request r = new Request(id, id % 3, id, 0, 7, 0);
+			queue.add(r);
+			added.add(r);
+		}
+
+		for (Request r : added)
+			assertSame(r, queue.poll(), "request " + r.getID());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void pollMatchingTakesEarliestMatch() {
+		RequestQueue queue = new RequestQueue();
+		List<Request> expected = new ArrayList<>(); // Waiting requests, earliest ready first
+		Random random = new Random(1541);
+		for (int id = 0; id < REQUESTS; id++) {
+			// Few ready times and types, so many requests tie
+			Request r = new Request(id, random.nextInt(3), random.nextInt(1 << 10), 0, random.nextInt(16), 0);
+			queue.add(r);
+			int at = expected.size();
+			while (at > 0 && expected.get(at - 1).getTime() > r.getTime())
+				at--;
+			expected.add(at, r);
+
+			// Take a matching read every so often, from anywhere in its heap
+			if (random.nextInt(4) == 0) {
+				int mod = 2 + random.nextInt(3);
+				Request match = null;
+				for (Request e : expected) {
+					if (e.getReadWriteEvict() == 0 && e.getAddress() % mod == 0) {
+						match = e;
+						break;
+					}
+				}
+				assertSame(match, queue.pollMatching(0, q -> q.getAddress() % mod == 0), "after request " + id);
+				expected.remove(match);
+			}
+			assertEquals(expected.size(), queue.size());
+		}
+
+		// What is left still comes out in order
+		for (Request r : expected)
+			assertSame(r, queue.poll(), "request " + r.getID());
+		assertNull(queue.poll());
+	}
+}